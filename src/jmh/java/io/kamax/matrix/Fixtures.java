@@ -0,0 +1,271 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.json.GsonUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate deterministic Matrix data shaped like what a homeserver sends, for the benchmarks.
+ *
+ * Fixtures are built in memory so the large ones do not have to be stored in the repository.
+ */
+public class Fixtures {
+
+    public static final String domain = "example.org";
+
+    private final Random random = new Random(42);
+    private long eventCounter = 0;
+
+    public static String sync(String size) {
+        Fixtures fixtures = new Fixtures();
+        switch (size) {
+            case "small":
+                return fixtures.sync(1, 20, 10);
+            case "medium":
+                return fixtures.sync(25, 50, 100);
+            case "large":
+                // About 50 MB, like an initial sync of a busy account
+                return fixtures.sync(250, 100, 400);
+            default:
+                throw new IllegalArgumentException("Unknown sync fixture size: " + size);
+        }
+    }
+
+    public String userId(int i) {
+        return "@user" + i + ":" + domain;
+    }
+
+    public String roomId(int i) {
+        return "!room" + i + "abcdefghij:" + domain;
+    }
+
+    private String text(int minLength) {
+        StringBuilder b = new StringBuilder();
+        while (b.length() < minLength) {
+            b.append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36)).append(' ');
+        }
+        return b.toString().trim();
+    }
+
+    private JsonObject event(String type, String roomId, String sender, JsonObject content) {
+        long id = eventCounter++;
+        JsonObject ev = new JsonObject();
+        ev.addProperty("type", type);
+        ev.addProperty("room_id", roomId);
+        ev.addProperty("sender", sender);
+        ev.addProperty("event_id", "$" + (1500000000000L + id) + "abcdefgh:" + domain);
+        ev.addProperty("origin_server_ts", 1500000000000L + id * 1000);
+        ev.add("content", content);
+        ev.add("unsigned", GsonUtil.makeObj("age", random.nextInt(1000000)));
+        return ev;
+    }
+
+    private JsonObject stateEvent(String type, String roomId, String sender, String stateKey, JsonObject content) {
+        JsonObject ev = event(type, roomId, sender, content);
+        ev.addProperty("state_key", stateKey);
+        return ev;
+    }
+
+    public JsonObject message(String roomId, String sender) {
+        JsonObject content = new JsonObject();
+        content.addProperty("msgtype", "m.text");
+        content.addProperty("body", text(20 + random.nextInt(200)));
+        return event("m.room.message", roomId, sender, content);
+    }
+
+    public JsonObject member(String roomId, String userId) {
+        JsonObject content = new JsonObject();
+        content.addProperty("membership", "join");
+        content.addProperty("displayname", "User " + text(8));
+        content.addProperty("avatar_url", "mxc://" + domain + "/" + text(24).replace(" ", ""));
+        return stateEvent("m.room.member", roomId, userId, userId, content);
+    }
+
+    /**
+     * Build a power levels event with many users and event types, like in large public rooms.
+     *
+     * @param roomId
+     *            The room of the event
+     * @param users
+     *            The number of users with a power level
+     * @return The event.
+     */
+    public JsonObject powerLevels(String roomId, int users) {
+        JsonObject usersObj = new JsonObject();
+        for (int i = 0; i < users; i++) {
+            usersObj.addProperty(userId(i), i == 0 ? 100 : (i % 10 == 0 ? 50 : 0));
+        }
+
+        JsonObject events = new JsonObject();
+        events.addProperty("m.room.name", 50);
+        events.addProperty("m.room.power_levels", 100);
+        events.addProperty("m.room.history_visibility", 100);
+        events.addProperty("m.room.canonical_alias", 50);
+        events.addProperty("m.room.avatar", 50);
+        events.addProperty("m.room.topic", 50);
+        events.addProperty("m.room.encryption", 100);
+        events.addProperty("m.room.server_acl", 100);
+
+        JsonObject content = new JsonObject();
+        content.addProperty("ban", 50);
+        content.addProperty("events_default", 0);
+        content.addProperty("invite", 0);
+        content.addProperty("kick", 50);
+        content.addProperty("redact", 50);
+        content.addProperty("state_default", 50);
+        content.addProperty("users_default", 0);
+        content.add("events", events);
+        content.add("users", usersObj);
+        content.add("notifications", GsonUtil.makeObj("room", 50));
+        return stateEvent("m.room.power_levels", roomId, userId(0), "", content);
+    }
+
+    /**
+     * Build a list of events of all the types the SDK knows about, and some it does not.
+     *
+     * @param count
+     *            The number of events
+     * @return The events.
+     */
+    public List<JsonObject> mixedEvents(int count) {
+        String roomId = roomId(0);
+        List<JsonObject> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String sender = userId(random.nextInt(100));
+            switch (i % 10) {
+                case 0:
+                    events.add(member(roomId, sender));
+                    break;
+                case 1:
+                    events.add(powerLevels(roomId, 10));
+                    break;
+                case 2:
+                    events.add(stateEvent("m.room.name", roomId, sender, "", GsonUtil.makeObj("name", text(10))));
+                    break;
+                case 3:
+                    events.add(stateEvent("m.room.topic", roomId, sender, "", GsonUtil.makeObj("topic", text(40))));
+                    break;
+                case 4:
+                    events.add(event("com.example.custom", roomId, sender, GsonUtil.makeObj("data", text(20))));
+                    break;
+                default:
+                    events.add(message(roomId, sender));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Build a list of events of types the SDK does not know about, as bridges and other integrations send.
+     *
+     * @param count
+     *            The number of events
+     * @return The events.
+     */
+    public List<JsonObject> customEvents(int count) {
+        String[] types = { "m.bridge", "uk.half-shot.bridge", "m.room.bot.options", "im.vector.modular.widgets",
+                "m.typing", "org.matrix.dummy_event" };
+        String roomId = roomId(0);
+        List<JsonObject> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(event(types[i % types.length], roomId, userId(random.nextInt(100)), new JsonObject()));
+        }
+        return events;
+    }
+
+    private JsonObject array(List<JsonObject> events) {
+        JsonArray array = new JsonArray();
+        events.forEach(array::add);
+        return GsonUtil.makeObj("events", array);
+    }
+
+    private JsonObject joinedRoom(String roomId, int timelineEvents, int members) {
+        List<JsonObject> state = new ArrayList<>();
+        state.add(powerLevels(roomId, members));
+        state.add(stateEvent("m.room.name", roomId, userId(0), "", GsonUtil.makeObj("name", text(10))));
+        for (int i = 0; i < members; i++) {
+            state.add(member(roomId, userId(i)));
+        }
+
+        List<JsonObject> timeline = new ArrayList<>();
+        for (int i = 0; i < timelineEvents; i++) {
+            timeline.add(message(roomId, userId(random.nextInt(members))));
+        }
+        JsonObject timelineObj = array(timeline);
+        timelineObj.addProperty("limited", true);
+        timelineObj.addProperty("prev_batch", "t" + random.nextInt(100000) + "-" + random.nextInt(100000));
+
+        JsonObject receipt = new JsonObject();
+        receipt.addProperty("type", "m.receipt");
+        receipt.add("content", new JsonObject());
+        List<JsonObject> ephemeral = new ArrayList<>();
+        ephemeral.add(receipt);
+
+        JsonObject notifications = new JsonObject();
+        notifications.addProperty("highlight_count", 0);
+        notifications.addProperty("notification_count", random.nextInt(10));
+
+        JsonObject room = new JsonObject();
+        room.add("state", array(state));
+        room.add("timeline", timelineObj);
+        room.add("ephemeral", array(ephemeral));
+        room.add("unread_notifications", notifications);
+        return room;
+    }
+
+    /**
+     * Build the body of a sync response with joined rooms only.
+     *
+     * @param rooms
+     *            The number of joined rooms
+     * @param timelineEvents
+     *            The number of timeline events per room
+     * @param members
+     *            The number of members per room, all in the room state
+     * @return The body, as sent by a homeserver.
+     */
+    public String sync(int rooms, int timelineEvents, int members) {
+        JsonObject joined = new JsonObject();
+        for (int i = 0; i < rooms; i++) {
+            joined.add(roomId(i), joinedRoom(roomId(i), timelineEvents, members));
+        }
+
+        JsonObject roomsObj = new JsonObject();
+        roomsObj.add("join", joined);
+        roomsObj.add("invite", new JsonObject());
+        roomsObj.add("leave", new JsonObject());
+
+        JsonObject sync = new JsonObject();
+        sync.addProperty("next_batch", "s" + random.nextInt(1000000) + "_" + random.nextInt(1000000));
+        sync.add("rooms", roomsObj);
+        sync.add("presence", array(new ArrayList<>()));
+        sync.add("account_data", array(new ArrayList<>()));
+        return GsonUtil.get().toJson(sync);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MatrixIDBenchmark {
+
+    private static final int count = 1024;
+
+    private String[] ids = new String[count];
+    private String[] localparts = new String[count];
+    private String[] encoded = new String[count];
+    private int i = 0;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        for (int j = 0; j < count; j++) {
+            ids[j] = fixtures.userId(j);
+            // Mix of plain ASCII, upper case and non-ASCII, as seen from bridges
+            if (j % 3 == 0) {
+                localparts[j] = "Bridged User " + j;
+            } else if (j % 3 == 1) {
+                localparts[j] = "user" + j;
+            } else {
+                localparts[j] = "\u30e6\u30fc\u30b6\u30fc" + j;
+            }
+            encoded[j] = MatrixIdCodec.encode(localparts[j]);
+        }
+    }
+
+    private int next() {
+        i = (i + 1) & (count - 1);
+        return i;
+    }
+
+    @Benchmark
+    public _MatrixID parse() {
+        return MatrixID.asAcceptable(ids[next()]);
+    }
+
+    @Benchmark
+    public boolean parseAndValidate() {
+        return MatrixID.asAcceptable(ids[next()]).isValid();
+    }
+
+    @Benchmark
+    public String encode() {
+        return MatrixIdCodec.encode(localparts[next()]);
+    }
+
+    @Benchmark
+    public String decode() {
+        return MatrixIdCodec.decode(encoded[next()]);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.Fixtures;
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SyncDataJsonBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    public String size;
+
+    private String body;
+
+    @Setup
+    public void setup() {
+        body = Fixtures.sync(size);
+    }
+
+    @Benchmark
+    public _SyncData parse() {
+        return new SyncDataJson(GsonUtil.parseObj(body));
+    }
+
+    @Benchmark
+    public void parseAndRead(Blackhole bh) {
+        _SyncData data = new SyncDataJson(GsonUtil.parseObj(body));
+        for (_SyncData.JoinedRoom room : data.getRooms().getJoined()) {
+            room.getState().getEvents().forEach(ev -> bh.consume(ev.getStateKey()));
+            for (_MatrixPersistentEvent ev : room.getTimeline().getEvents()) {
+                bh.consume(ev.getType());
+                bh.consume(ev.getSender());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.crypto;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.Fixtures;
+import io.kamax.matrix.json.MatrixJsonBenchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignatureManagerBenchmark {
+
+    @Param({ "message", "powerLevels" })
+    public String fixture;
+
+    private SignatureManager signMgr;
+    private JsonObject event;
+
+    @Setup
+    public void setup() {
+        signMgr = new SignatureManager(KeyManager.fromMemory(), Fixtures.domain);
+        event = MatrixJsonBenchmark.getFixture(fixture);
+    }
+
+    @Benchmark
+    public String sign() {
+        return signMgr.sign(event);
+    }
+
+}
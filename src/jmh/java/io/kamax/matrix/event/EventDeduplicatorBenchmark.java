@@ -0,0 +1,94 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.event;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Deduplication of a stream of event IDs where a fifth are seen again shortly after, compared to an LRU set of
+ * strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EventDeduplicatorBenchmark {
+
+    private static final int streamSize = 1 << 20;
+
+    @Param({ "hashes", "bloom", "linkedHashMap" })
+    public String impl;
+
+    @Param({ "100000", "1000000" })
+    public int capacity;
+
+    private char[][] stream;
+    private int index;
+    private Predicate<String> dedup;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        stream = new char[streamSize][];
+        int created = 0;
+        for (int i = 0; i < streamSize; i++) {
+            boolean again = created > 1000 && random.nextInt(5) == 0;
+            int id = again ? created - 1 - random.nextInt(1000) : created++;
+            stream[i] = ("$" + Long.toString(id * 0x9E3779B97F4A7C15L, 36) + ":example.org").toCharArray();
+        }
+
+        if ("linkedHashMap".equals(impl)) {
+            Set<String> set = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > capacity;
+                }
+
+            });
+            dedup = id -> {
+                synchronized (set) {
+                    return set.add(id);
+                }
+            };
+        } else {
+            dedup = new EventDeduplicator(capacity, "bloom".equals(impl))::add;
+        }
+    }
+
+    @Benchmark
+    public boolean add() {
+        // A new string each time, like the IDs of parsed events, so no hash code is cached
+        String id = new String(stream[index]);
+        index = (index + 1) & (streamSize - 1);
+        return dedup.test(id);
+    }
+
+}
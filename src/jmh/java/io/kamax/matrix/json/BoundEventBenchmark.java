@@ -0,0 +1,91 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.Fixtures;
+import io.kamax.matrix.event._RoomEvent;
+import io.kamax.matrix.json.event.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Typed events read from their JSON text, through a tree then copied into the MatrixJson classes, or bound while
+ * reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BoundEventBenchmark {
+
+    @Param({ "member", "message", "powerLevels" })
+    public String type;
+
+    private String json;
+    private Function<JsonObject, _RoomEvent> tree;
+    private Class<? extends BoundRoomEvent> bound;
+    private Gson gson;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        String roomId = fixtures.roomId(0);
+        switch (type) {
+            case "member":
+                json = fixtures.member(roomId, fixtures.userId(0)).toString();
+                tree = MatrixJsonRoomMembershipEvent::new;
+                bound = BoundRoomMembershipEvent.class;
+                break;
+            case "message":
+                json = fixtures.message(roomId, fixtures.userId(0)).toString();
+                tree = MatrixJsonRoomMessageEvent::new;
+                bound = BoundRoomMessageEvent.class;
+                break;
+            case "powerLevels":
+                json = fixtures.powerLevels(roomId, 1000).toString();
+                tree = MatrixJsonRoomPowerLevelsEvent::new;
+                bound = BoundRoomPowerLevelsEvent.class;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        gson = BoundEventAdapterFactory.get();
+    }
+
+    @Benchmark
+    public _RoomEvent tree() {
+        return tree.apply(GsonUtil.parseObj(json));
+    }
+
+    @Benchmark
+    public _RoomEvent bound() {
+        return gson.fromJson(json, bound);
+    }
+
+}
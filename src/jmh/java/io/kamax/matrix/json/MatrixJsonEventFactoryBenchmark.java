@@ -0,0 +1,70 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.Fixtures;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MatrixJsonEventFactoryBenchmark {
+
+    private static final int eventCount = 1000;
+
+    private List<JsonObject> events;
+    private List<JsonObject> customEvents;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        events = fixtures.mixedEvents(eventCount);
+        customEvents = fixtures.customEvents(eventCount);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(eventCount)
+    public void get(Blackhole bh) {
+        for (JsonObject event : events) {
+            bh.consume(MatrixJsonEventFactory.get(event));
+        }
+    }
+
+    // Types the SDK has no class for, like the ones of bridges, so mostly the cost of finding the decoder
+    @Benchmark
+    @OperationsPerInvocation(eventCount)
+    public void getCustom(Blackhole bh) {
+        for (JsonObject event : customEvents) {
+            bh.consume(MatrixJsonEventFactory.get(event));
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.load;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client.MatrixClientRequestException;
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.client.metrics.EndpointMetrics;
+import io.kamax.matrix.client.metrics.Histogram;
+import io.kamax.matrix.client.metrics.InMemoryMatrixHttpMetrics;
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+import io.kamax.matrix.client.regular.SyncOptions;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.hs._MatrixRoom;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drive a {@link MatrixHttpClient} against a {@link StubHomeserver}, to measure sustained sends per second, the
+ * latency of sends and the time for sent events to come back through sync.
+ *
+ * Options are given as <code>name=value</code> arguments, see {@link #main(String[])}. Results are printed as JSON,
+ * including the metrics of every endpoint called.
+ */
+public class LoadDriver {
+
+    private int senders = 4;
+    private int duration = 10;
+    private int latency = 0;
+    private int rateLimitEvery = 0;
+    private int syncPadding = 0;
+    private int messageSize = 100;
+
+    private final InMemoryMatrixHttpMetrics metrics = new InMemoryMatrixHttpMetrics();
+    private final Histogram syncLag = new Histogram();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sendRateLimited = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Run a load test.
+     *
+     * @param args
+     *            Options as <code>name=value</code>: <code>senders</code> (threads sending messages, 4),
+     *            <code>duration</code> (seconds, 10), <code>latency</code> (stub latency in ms, 0),
+     *            <code>rateLimitEvery</code> (one request out of N is rate limited, 0 to disable),
+     *            <code>syncPadding</code> (extra events per sync, 0) and <code>messageSize</code> (characters per
+     *            message, 100)
+     * @throws Exception
+     *             if the stub homeserver cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Options must be given as name=value: " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+
+        LoadDriver driver = new LoadDriver();
+        driver.senders = Integer.parseInt(options.getOrDefault("senders", "4"));
+        driver.duration = Integer.parseInt(options.getOrDefault("duration", "10"));
+        driver.latency = Integer.parseInt(options.getOrDefault("latency", "0"));
+        driver.rateLimitEvery = Integer.parseInt(options.getOrDefault("rateLimitEvery", "0"));
+        driver.syncPadding = Integer.parseInt(options.getOrDefault("syncPadding", "0"));
+        driver.messageSize = Integer.parseInt(options.getOrDefault("messageSize", "100"));
+        System.out.println(GsonUtil.buildPretty().toJson(driver.run()));
+    }
+
+    private void send(_MatrixRoom room) {
+        String message = StringUtils.repeat('m', messageSize);
+        while (running) {
+            try {
+                room.sendText(message);
+                sent.incrementAndGet();
+            } catch (MatrixClientRequestException e) {
+                if (e.getError().map(info -> "M_LIMIT_EXCEEDED".equals(info.getErrcode())).orElse(false)) {
+                    sendRateLimited.incrementAndGet();
+                } else {
+                    sendErrors.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void sync(MatrixHttpClient client, String since) {
+        while (running) {
+            _SyncData data = client.sync(SyncOptions.build().setSince(since).setTimeout(1000).get());
+            long now = System.currentTimeMillis();
+            for (_SyncData.JoinedRoom room : data.getRooms().getJoined()) {
+                for (_MatrixPersistentEvent event : room.getTimeline().getEvents()) {
+                    if (StubHomeserver.userId.equals(event.getSender().getId())) {
+                        syncLag.record(now - event.getTime().getTime());
+                        received.incrementAndGet();
+                    }
+                }
+            }
+            since = data.nextBatchToken();
+        }
+    }
+
+    private JsonObject percentiles(Histogram histogram, double divider) {
+        JsonObject json = new JsonObject();
+        json.addProperty("p50", histogram.getValueAtPercentile(50) / divider);
+        json.addProperty("p99", histogram.getValueAtPercentile(99) / divider);
+        json.addProperty("max", histogram.getMax() / divider);
+        return json;
+    }
+
+    public JsonObject run() throws Exception {
+        try (StubHomeserver hs = new StubHomeserver()
+                .setLatency(latency)
+                .setRateLimitEvery(rateLimitEvery)
+                .setSyncPadding(syncPadding)
+                .setMessageSize(messageSize)
+                .setThreads(senders + 8)
+                .start()) {
+            MatrixHomeserver homeserver = new MatrixHomeserver(StubHomeserver.domain, hs.getBaseUrl());
+            _MatrixID user = MatrixID.asAcceptable(StubHomeserver.userId);
+            MatrixClientContext context = new MatrixClientContext(homeserver, user, "load");
+            MatrixHttpClient client = new MatrixHttpClient(context, new MatrixClientDefaults().setMetrics(metrics));
+            _MatrixRoom room = client.getRoom(StubHomeserver.roomId);
+
+            String since = client.sync(SyncOptions.build().get()).nextBatchToken();
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> sync(client, since), "load-sync"));
+            for (int i = 0; i < senders; i++) {
+                threads.add(new Thread(() -> send(room), "load-send-" + i));
+            }
+
+            long start = System.nanoTime();
+            threads.forEach(Thread::start);
+            TimeUnit.SECONDS.sleep(duration);
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            JsonObject sends = new JsonObject();
+            sends.addProperty("count", sent.get());
+            sends.addProperty("per_second", sent.get() / seconds);
+            sends.addProperty("rate_limited", sendRateLimited.get());
+            sends.addProperty("errors", sendErrors.get());
+            metrics.getEndpoints().stream()
+                    .filter(m -> m.getEndpoint().contains("/send/"))
+                    .findFirst()
+                    .map(EndpointMetrics::getLatency)
+                    .ifPresent(h -> sends.add("latency_ms", percentiles(h, TimeUnit.MILLISECONDS.toNanos(1))));
+
+            JsonObject sync = new JsonObject();
+            sync.addProperty("received", received.get());
+            sync.addProperty("stub_timeline_size", hs.getTimelineSize());
+            sync.add("lag_ms", percentiles(syncLag, 1));
+
+            JsonObject config = new JsonObject();
+            config.addProperty("senders", senders);
+            config.addProperty("duration", duration);
+            config.addProperty("latency", latency);
+            config.addProperty("rate_limit_every", rateLimitEvery);
+            config.addProperty("sync_padding", syncPadding);
+            config.addProperty("message_size", messageSize);
+
+            JsonObject result = new JsonObject();
+            result.add("config", config);
+            result.add("sends", sends);
+            result.add("sync", sync);
+            result.add("metrics", metrics.toJson());
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,496 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.load;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.kamax.matrix.json.GsonUtil;
+import okhttp3.HttpUrl;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process fake homeserver for load tests, serving scripted responses instead of doing any Matrix logic.
+ *
+ * Sent events are kept in a single timeline shared by all rooms and served back by <code>/sync</code> (with long
+ * polling) and <code>/messages</code>, so the time for an event to go through can be measured. Transaction IDs are
+ * deduplicated per access token like a real homeserver does.
+ *
+ * Latency, rate limiting, payload sizes, response compression and bandwidth can be configured before starting it.
+ * Supported endpoints:
+ * <ul>
+ * <li><code>GET /sync</code></li>
+ * <li><code>PUT /rooms/{roomId}/send/{eventType}/{txnId}</code></li>
+ * <li><code>GET|PUT /rooms/{roomId}/state/{eventType}[/{stateKey}]</code></li>
+ * <li><code>GET /rooms/{roomId}/messages</code></li>
+ * <li><code>GET /joined_rooms</code> and <code>GET /account/whoami</code></li>
+ * <li><code>GET /_matrix/media/v1/download/{serverName}/{mediaId}</code></li>
+ * </ul>
+ */
+public class StubHomeserver implements AutoCloseable {
+
+    public static final String domain = "localhost";
+    public static final String userId = "@load:" + domain;
+    public static final String roomId = "!load:" + domain;
+
+    private static final String clientPrefix = "/_matrix/client/r0/";
+    private static final String mediaPrefix = "/_matrix/media/v1/download/";
+    private static final int maxSyncEvents = 100;
+    private static final int minGzipSize = 1024;
+    private static final int chunkSize = 16 * 1024;
+
+    static {
+        // Without it, responses are delayed by Nagle's algorithm and TCP delayed ACKs, about 40 ms each
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private int latency = 0;
+    private int rateLimitEvery = 0;
+    private int rateLimitRetryAfter = 100;
+    private int syncPadding = 0;
+    private int messageSize = 100;
+    private int mediaSize = 64 * 1024;
+    private int threads = 64;
+    private boolean gzip = false;
+    private int bandwidth = 0;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final List<JsonObject> timeline = new ArrayList<>();
+    private final Map<String, String> transactions = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> state = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    /**
+     * @param latency
+     *            Time in milliseconds to wait before answering each request, 0 by default
+     * @return This homeserver.
+     */
+    public StubHomeserver setLatency(int latency) {
+        this.latency = latency;
+
+        return this;
+    }
+
+    /**
+     * @param rateLimitEvery
+     *            Answer one request out of this many with a rate limiting error, except syncs. 0 (default) to never
+     *            rate limit.
+     * @return This homeserver.
+     */
+    public StubHomeserver setRateLimitEvery(int rateLimitEvery) {
+        this.rateLimitEvery = rateLimitEvery;
+
+        return this;
+    }
+
+    public StubHomeserver setRateLimitRetryAfter(int rateLimitRetryAfter) {
+        this.rateLimitRetryAfter = rateLimitRetryAfter;
+
+        return this;
+    }
+
+    /**
+     * @param syncPadding
+     *            Number of generated events added to each sync response, on top of the sent ones
+     * @return This homeserver.
+     */
+    public StubHomeserver setSyncPadding(int syncPadding) {
+        this.syncPadding = syncPadding;
+
+        return this;
+    }
+
+    /**
+     * @param messageSize
+     *            Size of the body of generated events
+     * @return This homeserver.
+     */
+    public StubHomeserver setMessageSize(int messageSize) {
+        this.messageSize = messageSize;
+
+        return this;
+    }
+
+    public StubHomeserver setMediaSize(int mediaSize) {
+        this.mediaSize = mediaSize;
+
+        return this;
+    }
+
+    /**
+     * @param threads
+     *            Number of requests served at once, long polling syncs included
+     * @return This homeserver.
+     */
+    public StubHomeserver setThreads(int threads) {
+        this.threads = threads;
+
+        return this;
+    }
+
+    /**
+     * @param gzip
+     *            Compress responses bigger than 1 KiB when the client accepts gzip, false by default
+     * @return This homeserver.
+     */
+    public StubHomeserver setGzip(boolean gzip) {
+        this.gzip = gzip;
+
+        return this;
+    }
+
+    /**
+     * @param bandwidth
+     *            Bytes written per millisecond for each response body, to emulate a slow link. 0 (default) for no
+     *            limit, 1250 is about 10 Mbit/s.
+     * @return This homeserver.
+     */
+    public StubHomeserver setBandwidth(int bandwidth) {
+        this.bandwidth = bandwidth;
+
+        return this;
+    }
+
+    public StubHomeserver start() throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public int getTimelineSize() {
+        synchronized (timeline) {
+            return timeline.size();
+        }
+    }
+
+    private static class Response {
+
+        private int status;
+        private String contentType;
+        private byte[] body;
+
+        Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response json(int status, JsonObject body) {
+            byte[] bytes = GsonUtil.get().toJson(body).getBytes(StandardCharsets.UTF_8);
+            return new Response(status, "application/json", bytes);
+        }
+
+        static Response error(int status, String errcode, String error) {
+            JsonObject body = new JsonObject();
+            body.addProperty("errcode", errcode);
+            body.addProperty("error", error);
+            return json(status, body);
+        }
+
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Response response = route(exchange);
+            byte[] body = response.body;
+            String acceptEncoding = StringUtils.defaultString(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            if (gzip && body.length >= minGzipSize && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                write(os, body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzOut = new GZIPOutputStream(out)) {
+            gzOut.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private void write(OutputStream os, byte[] data) throws IOException, InterruptedException {
+        if (bandwidth <= 0) {
+            os.write(data);
+            return;
+        }
+
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, data.length - offset);
+            os.write(data, offset, length);
+            os.flush();
+            TimeUnit.MICROSECONDS.sleep(length * 1000L / bandwidth);
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException, InterruptedException {
+        long count = requests.incrementAndGet();
+        HttpUrl url = HttpUrl.get("http://" + domain + exchange.getRequestURI());
+        String path = url.encodedPath();
+        String method = exchange.getRequestMethod();
+        boolean hasBody = "PUT".equals(method) || "POST".equals(method);
+        String rawBody = hasBody ? IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8) : null;
+        JsonObject body = hasBody ? GsonUtil.parseObj(rawBody) : null;
+
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+
+        if (path.startsWith(mediaPrefix) && "GET".equals(method)) {
+            return new Response(200, "application/octet-stream", new byte[mediaSize]);
+        }
+
+        if (!path.startsWith(clientPrefix)) {
+            return Response.error(404, "M_UNRECOGNIZED", "Unrecognized request");
+        }
+
+        List<String> segments = url.pathSegments().subList(3, url.pathSegments().size());
+        if (segments.size() == 1 && "sync".equals(segments.get(0)) && "GET".equals(method)) {
+            return sync(url);
+        }
+
+        if (rateLimitEvery > 0 && count % rateLimitEvery == 0) {
+            rateLimited.incrementAndGet();
+            JsonObject info = new JsonObject();
+            info.addProperty("errcode", "M_LIMIT_EXCEEDED");
+            info.addProperty("error", "Too many requests");
+            info.addProperty("retry_after_ms", rateLimitRetryAfter);
+            return Response.json(429, info);
+        }
+
+        if (segments.size() == 1 && "joined_rooms".equals(segments.get(0))) {
+            JsonArray rooms = new JsonArray();
+            rooms.add(roomId);
+            return Response.json(200, GsonUtil.makeObj("joined_rooms", rooms));
+        }
+
+        if (segments.size() == 2 && "account".equals(segments.get(0)) && "whoami".equals(segments.get(1))) {
+            return Response.json(200, GsonUtil.makeObj("user_id", userId));
+        }
+
+        if (segments.size() >= 3 && "rooms".equals(segments.get(0))) {
+            String room = segments.get(1);
+            String action = segments.get(2);
+            if ("send".equals(action) && segments.size() == 5 && "PUT".equals(method)) {
+                String token = StringUtils.defaultString(exchange.getRequestHeaders().getFirst("Authorization"));
+                String eventId = transactions.computeIfAbsent(token + "/" + segments.get(4),
+                        txnId -> append(room, segments.get(3), null, body));
+                return Response.json(200, GsonUtil.makeObj("event_id", eventId));
+            }
+
+            if ("state".equals(action) && (segments.size() == 4 || segments.size() == 5)) {
+                String stateKey = segments.size() == 5 ? segments.get(4) : "";
+                String key = room + "/" + segments.get(3) + "/" + stateKey;
+                if ("PUT".equals(method)) {
+                    state.put(key, body);
+                    String eventId = append(room, segments.get(3), stateKey, body);
+                    return Response.json(200, GsonUtil.makeObj("event_id", eventId));
+                }
+
+                JsonObject content = state.get(key);
+                if (content == null) {
+                    return Response.error(404, "M_NOT_FOUND", "Event not found.");
+                }
+                return Response.json(200, content);
+            }
+
+            if ("messages".equals(action) && segments.size() == 3 && "GET".equals(method)) {
+                return messages(url);
+            }
+        }
+
+        return Response.error(404, "M_UNRECOGNIZED", "Unrecognized request");
+    }
+
+    private String append(String room, String type, String stateKey, JsonObject content) {
+        synchronized (timeline) {
+            JsonObject event = new JsonObject();
+            event.addProperty("type", type);
+            event.addProperty("room_id", room);
+            event.addProperty("sender", userId);
+            event.addProperty("event_id", "$" + timeline.size() + ":" + domain);
+            event.addProperty("origin_server_ts", System.currentTimeMillis());
+            if (stateKey != null) {
+                event.addProperty("state_key", stateKey);
+            }
+            event.add("content", content);
+            timeline.add(event);
+            timeline.notifyAll();
+            return event.get("event_id").getAsString();
+        }
+    }
+
+    private int parseToken(String token, int defaultValue) {
+        if (StringUtils.isBlank(token) || !token.startsWith("s")) {
+            return defaultValue;
+        }
+
+        return Integer.parseInt(token.substring(1));
+    }
+
+    private JsonObject padding(int index) {
+        JsonObject content = new JsonObject();
+        content.addProperty("msgtype", "m.text");
+        content.addProperty("body", StringUtils.repeat('x', messageSize));
+
+        JsonObject event = new JsonObject();
+        event.addProperty("type", "m.room.message");
+        event.addProperty("sender", "@padding:" + domain);
+        event.addProperty("event_id", "$padding" + index + ":" + domain);
+        event.addProperty("origin_server_ts", System.currentTimeMillis());
+        event.add("content", content);
+        return event;
+    }
+
+    private Response sync(HttpUrl url) throws InterruptedException {
+        // Like a homeserver, an initial sync returns right away
+        String since = url.queryParameter("since");
+        long timeout = Long.parseLong(StringUtils.defaultIfBlank(url.queryParameter("timeout"), "0"));
+        long deadline = since == null ? 0 : System.currentTimeMillis() + timeout;
+
+        List<JsonObject> events;
+        int from;
+        int to;
+        synchronized (timeline) {
+            from = parseToken(since, Math.max(0, timeline.size() - maxSyncEvents));
+            long wait = deadline - System.currentTimeMillis();
+            while (timeline.size() <= from && wait > 0) {
+                timeline.wait(wait);
+                wait = deadline - System.currentTimeMillis();
+            }
+
+            to = Math.min(timeline.size(), from + maxSyncEvents);
+            events = new ArrayList<>(timeline.subList(from, to));
+        }
+
+        Map<String, JsonArray> byRoom = new LinkedHashMap<>();
+        events.forEach(ev -> byRoom.computeIfAbsent(ev.get("room_id").getAsString(), r -> new JsonArray()).add(ev));
+        if (syncPadding > 0) {
+            JsonArray padded = byRoom.computeIfAbsent(roomId, r -> new JsonArray());
+            for (int i = 0; i < syncPadding; i++) {
+                padded.add(padding(i));
+            }
+        }
+
+        JsonObject join = new JsonObject();
+        byRoom.forEach((room, roomEvents) -> {
+            JsonObject timelineObj = new JsonObject();
+            timelineObj.add("events", roomEvents);
+            timelineObj.addProperty("limited", false);
+            timelineObj.addProperty("prev_batch", "s" + from);
+            join.add(room, GsonUtil.makeObj("timeline", timelineObj));
+        });
+
+        JsonObject rooms = new JsonObject();
+        rooms.add("join", join);
+
+        JsonObject response = new JsonObject();
+        response.addProperty("next_batch", "s" + to);
+        response.add("rooms", rooms);
+        return Response.json(200, response);
+    }
+
+    private Response messages(HttpUrl url) {
+        int limit = Integer.parseInt(StringUtils.defaultIfBlank(url.queryParameter("limit"), "10"));
+        boolean backward = !"f".equals(url.queryParameter("dir"));
+
+        JsonArray chunk = new JsonArray();
+        int start;
+        int end;
+        synchronized (timeline) {
+            start = parseToken(url.queryParameter("from"), backward ? timeline.size() : 0);
+            start = Math.min(start, timeline.size());
+            if (backward) {
+                end = Math.max(0, start - limit);
+                for (int i = start - 1; i >= end; i--) {
+                    chunk.add(timeline.get(i));
+                }
+            } else {
+                end = Math.min(timeline.size(), start + limit);
+                for (int i = start; i < end; i++) {
+                    chunk.add(timeline.get(i));
+                }
+            }
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("start", "s" + start);
+        response.addProperty("end", "s" + end);
+        response.add("chunk", chunk);
+        return Response.json(200, response);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.load;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+import io.kamax.matrix.client.regular.SyncOptions;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.hs._MatrixRoom;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer time of a big sync response over a slow link with and without compression, and latency of concurrent
+ * sends depending on the connection pool size and the per-host concurrency limit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransportBenchmark {
+
+    private static MatrixHttpClient client(StubHomeserver hs, MatrixClientDefaults defaults) {
+        MatrixHomeserver homeserver = new MatrixHomeserver(StubHomeserver.domain, hs.getBaseUrl());
+        _MatrixID user = MatrixID.asAcceptable(StubHomeserver.userId);
+        return new MatrixHttpClient(new MatrixClientContext(homeserver, user, "transport"), defaults);
+    }
+
+    @State(Scope.Benchmark)
+    public static class SyncState {
+
+        @Param({ "true", "false" })
+        public boolean compression;
+
+        // Bytes per millisecond, about 20 Mbit/s
+        @Param({ "2500" })
+        public int bandwidth;
+
+        private StubHomeserver hs;
+        private MatrixHttpClient client;
+
+        @Setup
+        public void setup() throws IOException {
+            hs = new StubHomeserver().setSyncPadding(2000).setMessageSize(50).setGzip(true).setBandwidth(bandwidth)
+                    .start();
+            client = client(hs, new MatrixClientDefaults().setCompression(compression));
+        }
+
+        @TearDown
+        public void tearDown() {
+            hs.close();
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class SendState {
+
+        @Param({ "1", "32" })
+        public int maxIdleConnections;
+
+        @Param({ "0", "4" })
+        public int maxRequestsPerHost;
+
+        private StubHomeserver hs;
+        private _MatrixRoom room;
+
+        @Setup
+        public void setup() throws IOException {
+            hs = new StubHomeserver().setLatency(5).setThreads(64).start();
+            MatrixClientDefaults defaults = new MatrixClientDefaults()
+                    .setMaxIdleConnections(maxIdleConnections)
+                    .setMaxRequestsPerHost(maxRequestsPerHost);
+            room = client(hs, defaults).getRoom(StubHomeserver.roomId);
+        }
+
+        @TearDown
+        public void tearDown() {
+            hs.close();
+        }
+
+    }
+
+    @Benchmark
+    public _SyncData sync(SyncState state) {
+        return state.client.sync(SyncOptions.build().get());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String send(SendState state) {
+        return state.room.sendText("Hello");
+    }
+
+}
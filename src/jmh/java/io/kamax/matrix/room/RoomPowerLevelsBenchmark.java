@@ -0,0 +1,91 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.Fixtures;
+import io.kamax.matrix.json.GsonUtil;
+import io.kamax.matrix.json.event.MatrixJsonRoomPowerLevelsEvent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RoomPowerLevelsBenchmark {
+
+    @Param({ "10", "1000" })
+    private int users;
+
+    private JsonObject event;
+    private JsonObject nextContent;
+    private MatrixJsonRoomPowerLevelsEvent parsed;
+    private RoomPowerLevels levels;
+    private String userId;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        // Round-trip through text so numbers are lazily parsed, like the ones of events read from the wire
+        event = GsonUtil.parseObj(fixtures.powerLevels(fixtures.roomId(0), users).toString());
+        parsed = new MatrixJsonRoomPowerLevelsEvent(event);
+        levels = RoomPowerLevels.from(parsed);
+        userId = fixtures.userId(users / 2);
+
+        nextContent = GsonUtil.parseObj(event.getAsJsonObject("content").toString());
+        nextContent.getAsJsonObject("users").addProperty(fixtures.userId(users), 50);
+    }
+
+    @Benchmark
+    public MatrixJsonRoomPowerLevelsEvent parseEvent() {
+        return new MatrixJsonRoomPowerLevelsEvent(event);
+    }
+
+    @Benchmark
+    public RoomPowerLevels build() {
+        return RoomPowerLevels.from(parsed);
+    }
+
+    @Benchmark
+    public RoomPowerLevels update() {
+        return levels.update(nextContent);
+    }
+
+    // What callers had to do before, with the boxed maps of the event
+    @Benchmark
+    public boolean canSendFromEvent() {
+        double level = parsed.getUsers().getOrDefault(userId, parsed.getUsersDefault().orElse(0D));
+        double required = parsed.getEvents().getOrDefault("m.room.message", parsed.getEventsDefault().orElse(0D));
+        return level >= required;
+    }
+
+    @Benchmark
+    public boolean canSend() {
+        return levels.canSend(userId, "m.room.message", false);
+    }
+
+}
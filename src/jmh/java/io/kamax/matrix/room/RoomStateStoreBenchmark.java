@@ -0,0 +1,133 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.Fixtures;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory kept for the member state of many rooms, and the cost of reading it back, compared to keeping the Gson trees
+ * of the state events by type and state key.
+ *
+ * The retained heap per room is printed once the rooms are built. The Gson trees of 10k rooms of 1k
+ * members do not fit in memory, so that baseline only keeps the first 100 rooms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RoomStateStoreBenchmark {
+
+    private static final String member = "m.room.member";
+    private static final int maxGsonRooms = 100;
+
+    @Param({ "compact", "gson" })
+    public String store;
+
+    @Param({ "10000" })
+    public int rooms;
+
+    @Param({ "1000" })
+    public int members;
+
+    private List<RoomStateStore> stores;
+    private List<Map<String, Map<String, JsonObject>>> trees;
+    private String[] userIds;
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        userIds = new String[members];
+        for (int i = 0; i < members; i++) {
+            userIds[i] = fixtures.userId(i);
+        }
+
+        long before = usedHeap();
+        int kept;
+        if ("compact".equals(store)) {
+            kept = rooms;
+            stores = new ArrayList<>(rooms);
+            for (int r = 0; r < rooms; r++) {
+                RoomStateStore state = new RoomStateStore();
+                String roomId = fixtures.roomId(r);
+                for (int m = 0; m < members; m++) {
+                    JsonObject ev = fixtures.member(roomId, fixtures.userId(m));
+                    state.put(member, ev.get("state_key").getAsString(), ev.getAsJsonObject("content"));
+                }
+                stores.add(state);
+            }
+        } else {
+            kept = Math.min(rooms, maxGsonRooms);
+            trees = new ArrayList<>(kept);
+            for (int r = 0; r < kept; r++) {
+                Map<String, Map<String, JsonObject>> state = new HashMap<>();
+                String roomId = fixtures.roomId(r);
+                for (int m = 0; m < members; m++) {
+                    // Round-trip through text, like events read from the wire
+                    JsonObject ev = GsonUtil.parseObj(fixtures.member(roomId, fixtures.userId(m)).toString());
+                    state.computeIfAbsent(member, k -> new HashMap<>()).put(ev.get("state_key").getAsString(), ev);
+                }
+                trees.add(state);
+            }
+        }
+        System.out.printf("%n%s: %d bytes per room of %d members%n", store, (usedHeap() - before) / kept, members);
+    }
+
+    @Benchmark
+    public JsonObject getContent() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String userId = userIds[random.nextInt(members)];
+        if ("compact".equals(store)) {
+            return stores.get(random.nextInt(rooms)).getContent(member, userId).get();
+        } else {
+            return trees.get(random.nextInt(trees.size())).get(member).get(userId).getAsJsonObject("content");
+        }
+    }
+
+    @Benchmark
+    public String getMembership() {
+        return getContent().get("membership").getAsString();
+    }
+
+}
@@ -20,10 +20,13 @@
 
 package io.kamax.matrix;
 
+import com.github.dmstocking.optional.java.util.Optional;
+
 public class MatrixErrorInfo {
 
     private String errcode;
     private String error;
+    private Long retryAfterMs;
 
     public MatrixErrorInfo(String errcode) {
         this.errcode = errcode;
@@ -41,4 +44,8 @@ public class MatrixErrorInfo {
         return error;
     }
 
+    public Optional<Long> getRetryAfterMs() {
+        return Optional.ofNullable(retryAfterMs);
+    }
+
 }
@@ -22,7 +22,6 @@ package io.kamax.matrix;
 
 import com.google.gson.Gson;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MatrixID implements _MatrixID {
@@ -55,28 +54,94 @@ public class MatrixID implements _MatrixID {
     public static final Pattern LAX_PATTERN = Pattern.compile("@(.*?):(.+)");
     public static final Pattern STRICT_PATTERN = Pattern.compile("@([" + ALLOWED_CHARS + "]+):(.+)");
 
-    private String id;
+    private static volatile MatrixIdCache cache;
 
-    private String localpart;
-    private String domain;
+    private final String id;
+
+    private final String localpart;
+    private final String domain;
 
     private static String buildRaw(String localpart, String domain) {
         return "@" + localpart + ":" + domain;
     }
 
+    // Characters not matched by "." in LAX_PATTERN and STRICT_PATTERN
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // Single character version of ALLOWED_CHARS
+    static boolean isAllowedChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '=' || c == '_';
+    }
+
+    /*
+     * Single-pass equivalent of LAX_PATTERN: returns the index of the separator between localpart and domain, or -1
+     * if the ID does not match.
+     */
+    private static int findSeparator(String id) {
+        int length = id.length();
+        if (length < 3 || id.charAt(0) != '@') {
+            return -1;
+        }
+
+        int separator = -1;
+        for (int i = 1; i < length; i++) {
+            char c = id.charAt(i);
+            if (isLineTerminator(c)) {
+                return -1;
+            }
+
+            if (c == ':' && separator == -1) {
+                separator = i;
+            }
+        }
+
+        if (separator == -1 || separator == length - 1) {
+            return -1;
+        }
+
+        return separator;
+    }
+
     private static MatrixID parse(String id) {
-        Matcher m = LAX_PATTERN.matcher(id);
-        if (!m.matches()) {
+        MatrixIdCache c = cache;
+        if (c != null) {
+            MatrixID mxId = c.find(id);
+            if (mxId != null) {
+                return mxId;
+            }
+        }
+
+        int separator = findSeparator(id);
+        if (separator == -1) {
             throw new IllegalArgumentException(id + " is not a Matrix ID");
         }
 
-        MatrixID mxId = new MatrixID();
-        mxId.id = id;
-        mxId.localpart = m.group(1);
-        mxId.domain = m.group(2);
+        MatrixID mxId = new MatrixID(id, id.substring(1, separator), id.substring(separator + 1));
+        if (c != null) {
+            c.put(mxId);
+        }
         return mxId;
     }
 
+    /**
+     * Enable interning of parsed Matrix IDs, so repeated IDs share a single instance.
+     *
+     * @param capacity
+     *            The maximum number of IDs to keep in the cache
+     */
+    public static void enableCache(int capacity) {
+        cache = new MatrixIdCache(capacity);
+    }
+
+    /**
+     * Disable interning of parsed Matrix IDs and drop any cached instance.
+     */
+    public static void disableCache() {
+        cache = null;
+    }
+
     public static Builder from(String id) {
         return new Builder(id);
     }
@@ -97,8 +162,10 @@ public class MatrixID implements _MatrixID {
         return from(id).acceptable();
     }
 
-    private MatrixID() {
-        // not for public consumption
+    private MatrixID(String id, String localpart, String domain) {
+        this.id = id;
+        this.localpart = localpart;
+        this.domain = domain;
     }
 
     private MatrixID(MatrixID mxId) {
@@ -139,7 +206,18 @@ public class MatrixID implements _MatrixID {
 
     @Override
     public boolean isValid() {
-        return isAcceptable() && STRICT_PATTERN.matcher(id).matches();
+        if (!isAcceptable() || localpart.isEmpty()) {
+            return false;
+        }
+
+        // Equivalent of STRICT_PATTERN, the domain part was already checked when parsing
+        for (int i = 0; i < localpart.length(); i++) {
+            if (!isAllowedChar(localpart.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     @Override
@@ -0,0 +1,95 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix;
+
+/**
+ * Bounded interning cache for parsed Matrix IDs, so that repeated IDs (like event senders) share a single instance.
+ *
+ * The cache is direct-mapped: each ID is stored in the slot selected by its hash code and a colliding ID simply
+ * replaces the previous entry. Lookups never allocate and the memory used is fixed by the capacity.
+ */
+public class MatrixIdCache {
+
+    private final MatrixID[] slots;
+    private final int mask;
+
+    /**
+     * Create a new cache.
+     *
+     * @param capacity
+     *            The maximum number of IDs to keep, rounded up to the next power of two.
+     */
+    public MatrixIdCache(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.slots = new MatrixID[size];
+        this.mask = size - 1;
+    }
+
+    private int indexOf(String id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Find a cached instance for the given raw ID.
+     *
+     * @param id
+     *            The raw Matrix ID
+     * @return The shared instance or null if not cached.
+     */
+    public MatrixID find(String id) {
+        // MatrixID is immutable with final fields, so reading a racily published entry is safe
+        MatrixID mxId = slots[indexOf(id)];
+        if (mxId != null && mxId.getId().equals(id)) {
+            return mxId;
+        }
+
+        return null;
+    }
+
+    /**
+     * Store an instance in the cache, replacing whichever ID was in its slot.
+     *
+     * @param mxId
+     *            The Matrix ID to store
+     */
+    public void put(MatrixID mxId) {
+        slots[indexOf(mxId.getId())] = mxId;
+    }
+
+    /**
+     * Get the maximum number of IDs this cache can hold.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+}
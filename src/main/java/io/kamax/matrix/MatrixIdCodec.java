@@ -20,11 +20,7 @@
 
 package io.kamax.matrix;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
-
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static io.kamax.matrix.MatrixID.ALLOWED_CHARS;
@@ -36,24 +32,58 @@ public class MatrixIdCodec {
     public static final Pattern ENCODE_PATTERN = Pattern.compile(ENCODE_REGEX);
     public static final Pattern DECODE_PATTERN = Pattern.compile("(=[0-9a-f]{2})+");
 
+    private static final char DELIMITER_CHAR = '=';
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int[] HEX_VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = -1;
+        }
+        for (int i = 0; i < HEX_DIGITS.length; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = i;
+        }
+    }
+
     private MatrixIdCodec() {
         // not for public consumption
     }
 
+    private static void appendByte(StringBuilder builder, int b) {
+        builder.append(DELIMITER_CHAR);
+        builder.append(HEX_DIGITS[(b >> 4) & 0xF]);
+        builder.append(HEX_DIGITS[b & 0xF]);
+    }
+
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    // If an encoded byte, as matched by DECODE_PATTERN, starts at the given index
+    private static boolean isEncodedByte(char[] chars, int i) {
+        return i + 2 < chars.length && chars[i] == DELIMITER_CHAR && hexValue(chars[i + 1]) != -1
+                && hexValue(chars[i + 2]) != -1;
+    }
+
     public static String encode(String decoded) {
-        decoded = decoded.toLowerCase();
-
-        StringBuilder builder = new StringBuilder();
-        for (Character c : decoded.toCharArray()) {
-            String s = c.toString();
-            Matcher lp = ENCODE_PATTERN.matcher(s);
-            if (!lp.find()) {
-                builder.append(s);
+        char[] chars = decoded.toLowerCase().toCharArray();
+
+        StringBuilder builder = new StringBuilder(chars.length + 16);
+        for (char c : chars) {
+            if (MatrixID.isAllowedChar(c)) {
+                builder.append(c);
+            } else if (c < 0x80) {
+                appendByte(builder, c);
+            } else if (c < 0x800) {
+                appendByte(builder, 0xC0 | (c >> 6));
+                appendByte(builder, 0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Characters are encoded one at a time, so a surrogate is always unpaired and becomes '?' in UTF-8
+                appendByte(builder, '?');
             } else {
-                for (byte b : c.toString().getBytes(StandardCharsets.UTF_8)) {
-                    builder.append(DELIMITER);
-                    builder.append(Hex.encodeHexString(new byte[] { b }));
-                }
+                appendByte(builder, 0xE0 | (c >> 12));
+                appendByte(builder, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(builder, 0x80 | (c & 0x3F));
             }
         }
 
@@ -61,33 +91,42 @@ public class MatrixIdCodec {
     }
 
     public static String decode(String encoded) {
-        StringBuilder builder = new StringBuilder();
+        char[] chars = encoded.toCharArray();
+        StringBuilder builder = null;
+        byte[] bytes = null;
 
-        Matcher m = DECODE_PATTERN.matcher(encoded);
         int prevEnd = 0;
-        while (m.find()) {
-            try {
-                int start = m.start();
-                int end = m.end();
-                String sub = encoded.substring(start, end).replaceAll(DELIMITER, "");
-                String decoded = new String(Hex.decodeHex(sub.toCharArray()), StandardCharsets.UTF_8);
-                builder.append(encoded, prevEnd, start);
-                builder.append(decoded);
-                prevEnd = end - 1;
-            } catch (DecoderException e) {
-                e.printStackTrace();
+        int i = 0;
+        while (i < chars.length) {
+            if (!isEncodedByte(chars, i)) {
+                i++;
+                continue;
             }
-        }
-        prevEnd++;
-        if (prevEnd < encoded.length()) {
-            builder.append(encoded, prevEnd, encoded.length());
+
+            if (builder == null) {
+                builder = new StringBuilder(chars.length);
+                bytes = new byte[chars.length / 3];
+            }
+
+            // Consume the whole run of encoded bytes so multi-bytes UTF-8 sequences are decoded together
+            int start = i;
+            int length = 0;
+            while (isEncodedByte(chars, i)) {
+                bytes[length++] = (byte) ((hexValue(chars[i + 1]) << 4) | hexValue(chars[i + 2]));
+                i += 3;
+            }
+
+            builder.append(chars, prevEnd, start - prevEnd);
+            builder.append(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            prevEnd = i;
         }
 
-        if (builder.length() == 0) {
+        if (builder == null) {
             return encoded;
-        } else {
-            return builder.toString();
         }
+
+        builder.append(chars, prevEnd, chars.length - prevEnd);
+        return builder.toString();
     }
 
 }
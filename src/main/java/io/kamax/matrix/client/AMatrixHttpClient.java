@@ -27,14 +27,18 @@ import com.google.gson.JsonSyntaxException;
 
 import io.kamax.matrix.MatrixErrorInfo;
 import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.metrics.NoopMatrixHttpMetrics;
+import io.kamax.matrix.client.metrics._MatrixHttpMetrics;
 import io.kamax.matrix.hs._MatrixHomeserver;
 import io.kamax.matrix.json.GsonUtil;
+import io.kamax.matrix.room.RoomStateStore;
 import okhttp3.Call;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -43,13 +47,20 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 public abstract class AMatrixHttpClient implements _MatrixClientRaw {
 
+    private static final MatrixPathTemplate versionsPath = new MatrixPathTemplate("client", "", "versions");
+    private static final MatrixPathTemplate identityBasePath = MatrixPathTemplate.identity("");
+
     private Logger log = LoggerFactory.getLogger(AMatrixHttpClient.class);
 
     protected MatrixClientContext context = new MatrixClientContext();
@@ -57,8 +68,13 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
     protected Gson gson = GsonUtil.get();
     protected JsonParser jsonParser = new JsonParser();
     private OkHttpClient client;
-
-    private Pattern accessTokenUrlPattern = Pattern.compile("\\?access_token=(?<token>[^&]*)");
+    private AccessTokenInterceptor accessTokenInterceptor;
+    private _MatrixHttpMetrics metrics;
+    private AutoDiscovery discovery = AutoDiscovery.get();
+    private HomeserverFailover failover = HomeserverFailover.get();
+    private RequestCoalescer coalescer;
+    private int maxRequestsPerHost;
+    private Map<String, RoomStateStore> stateSnapshots;
 
     public AMatrixHttpClient(String domain) {
         this(new MatrixClientContext().setDomain(domain));
@@ -73,16 +89,87 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
     }
 
     protected AMatrixHttpClient(MatrixClientContext context, MatrixClientDefaults defaults) {
-        this(context,
-                new OkHttpClient.Builder()
-                        .connectTimeout(defaults.getConnectTimeout(), TimeUnit.SECONDS)
-                        .readTimeout(defaults.getRequestTimeout(), TimeUnit.SECONDS)
-                        .build());
+        this(context, defaults.getHttpClient(), defaults.getMetrics());
+        this.discovery = defaults.getDiscovery();
+        this.failover = defaults.getFailover();
+        this.maxRequestsPerHost = defaults.getMaxRequestsPerHost();
+        int maxStateSnapshots = defaults.getMaxStateSnapshots();
+        if (maxStateSnapshots > 0) {
+            this.stateSnapshots = Collections.synchronizedMap(new LinkedHashMap<String, RoomStateStore>(16, 0.75f,
+                    true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RoomStateStore> eldest) {
+                    return size() > maxStateSnapshots;
+                }
+
+            });
+        }
+        if (!defaults.isCoalescing()) {
+            this.coalescer = null;
+        }
     }
 
     protected AMatrixHttpClient(MatrixClientContext context, OkHttpClient client) {
+        this(context, client, NoopMatrixHttpMetrics.get());
+    }
+
+    protected AMatrixHttpClient(MatrixClientContext context, OkHttpClient client, _MatrixHttpMetrics metrics) {
         this.context = context;
-        this.client = client;
+        this.accessTokenInterceptor = new AccessTokenInterceptor(context);
+        this.metrics = metrics;
+        this.coalescer = new RequestCoalescer();
+
+        // Our interceptors go first so any custom interceptor sees the final request
+        OkHttpClient.Builder builder = client.newBuilder();
+        builder.interceptors().add(0, accessTokenInterceptor);
+        builder.interceptors().add(1, chain -> failover.intercept(chain, context, client));
+        this.client = builder.build();
+    }
+
+    /**
+     * Create a client for the same context which shares the HTTP client, its connection pool and the metrics of
+     * another client. Used for objects like rooms or users, which are created in numbers.
+     *
+     * @param parent
+     *            The client to share with
+     */
+    protected AMatrixHttpClient(AMatrixHttpClient parent) {
+        this.context = parent.context;
+        this.client = parent.client;
+        this.accessTokenInterceptor = parent.accessTokenInterceptor;
+        this.metrics = parent.metrics;
+        this.discovery = parent.discovery;
+        this.failover = parent.failover;
+        this.coalescer = parent.coalescer;
+        this.maxRequestsPerHost = parent.maxRequestsPerHost;
+        this.stateSnapshots = parent.stateSnapshots;
+    }
+
+    /**
+     * Get the snapshot of the state of a room, used to skip state events which change nothing, if the client defaults
+     * keep snapshots. It is filled with the state this client reads and writes, and must be kept up to date from sync
+     * with {@link RoomStateStore#update(_SyncData.JoinedRoom)} for the changes made by others.
+     *
+     * @param roomId
+     *            The ID of the room
+     * @return The snapshot, created empty if needed and shared by all the objects of this client, or empty if the
+     *         client keeps no snapshots.
+     */
+    public Optional<RoomStateStore> getStateSnapshot(String roomId) {
+        if (stateSnapshots == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(stateSnapshots.computeIfAbsent(roomId, id -> new RoomStateStore()));
+    }
+
+    /**
+     * @return The maximum number of concurrent requests to a host set in the client defaults, or else the one of the
+     *         transport dispatcher, 5 by default.
+     */
+    protected int getMaxRequestsPerHost() {
+        return maxRequestsPerHost > 0 ? maxRequestsPerHost : client.dispatcher().getMaxRequestsPerHost();
     }
 
     @Override
@@ -92,15 +179,8 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         }
 
         String hostname = context.getDomain().split(":")[0];
-        log.info("Performing .well-known auto-discovery for {}", hostname);
-
-        HttpUrl.Builder builder = new HttpUrl.Builder();
-        builder.scheme("https");
-        builder.host(hostname);
-        builder.addPathSegments(".well-known/matrix/client");
-        Request req = new Request.Builder().url(builder.build()).build();
-        String body = execute(new MatrixHttpRequest(req).addIgnoredErrorCode(404));
-        if (StringUtils.isBlank(body)) {
+        AutoDiscovery.Result result = discovery.discover(hostname);
+        if (!result.getSettings().isPresent()) {
             if (context.getHsBaseUrl() == null) {
                 throw new IllegalStateException("No valid Homeserver base URL was found");
             }
@@ -112,43 +192,29 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
             return Optional.empty();
         }
 
-        log.info("Found body: {}", body);
-
-        WellKnownAutoDiscoverySettings settings = new WellKnownAutoDiscoverySettings(body);
-        log.info("Found .well-known data");
+        _AutoDiscoverySettings settings = result.getSettings().get();
 
         // TODO reconsider if and where we should check for an already present HS url in the context
         if (settings.getHsBaseUrls().isEmpty()) {
             throw new IllegalStateException("No valid Homeserver base URL was found");
         }
 
-        for (URL baseUrlCandidate : settings.getHsBaseUrls()) {
-            context.setHsBaseUrl(baseUrlCandidate);
-            try {
-                if (!getHomeApiVersions().isEmpty()) {
-                    log.info("Found a valid HS at {}", getContext().getHsBaseUrl().toString());
-                    break;
-                }
-            } catch (MatrixClientRequestException e) {
-                log.warn("Error when trying to fetch {}: {}", baseUrlCandidate, e.getMessage());
-            }
-        }
-
-        for (URL baseUrlCandidate : settings.getIsBaseUrls()) {
-            context.setIsBaseUrl(baseUrlCandidate);
-            try {
-                if (validateIsBaseUrl()) {
-                    log.info("Found a valid IS at {}", getContext().getHsBaseUrl().toString());
-                    break;
-                }
-            } catch (MatrixClientRequestException e) {
-                log.warn("Error when trying to fetch {}: {}", baseUrlCandidate, e.getMessage());
-            }
+        // When no candidate answered, the last one is used as it always was
+        context.setHsBaseUrl(result.getHsBaseUrl().orElse(last(settings.getHsBaseUrls())));
+        List<URL> fallbacks = new ArrayList<>(settings.getHsBaseUrls());
+        fallbacks.remove(context.getHsBaseUrl());
+        context.setHsFallbackUrls(fallbacks);
+        if (!settings.getIsBaseUrls().isEmpty()) {
+            context.setIsBaseUrl(result.getIsBaseUrl().orElse(last(settings.getIsBaseUrls())));
         }
 
         return Optional.of(settings);
     }
 
+    private static URL last(List<URL> urls) {
+        return urls.get(urls.size() - 1);
+    }
+
     @Override
     public MatrixClientContext getContext() {
         return context;
@@ -171,13 +237,13 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
 
     @Override
     public List<String> getHomeApiVersions() {
-        String body = execute(new Request.Builder().url(getPath("client", "", "versions").build()).build());
+        String body = execute(newRequest(versionsPath).build());
         return GsonUtil.asList(GsonUtil.parseObj(body), "versions", String.class);
     }
 
     @Override
     public boolean validateIsBaseUrl() {
-        String body = execute(new Request.Builder().url(getIdentityPath("identity", "api", "/v1").build()).build());
+        String body = execute(newRequest(identityBasePath, getIdentityPath(identityBasePath).build()).build());
         return "{}".equals(body);
     }
 
@@ -190,18 +256,89 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         return execute(new MatrixHttpRequest(request));
     }
 
+    /**
+     * Execute a request and read its body.
+     *
+     * Identical GET requests made at the same time, with the same access token and ignored error codes, share a single
+     * call and its body. This can be turned off with {@link MatrixClientDefaults#setCoalescing(boolean)}.
+     *
+     * @param matrixRequest
+     *            The request to execute
+     * @return body of the response of the request.
+     */
     protected String execute(MatrixHttpRequest matrixRequest) {
-        log(matrixRequest.getHttpRequest());
-        Call call = client.newCall(matrixRequest.getHttpRequest());
+        Request request = matrixRequest.getHttpRequest();
+        if (coalescer == null || !"GET".equals(request.method())) {
+            return send(matrixRequest);
+        }
+
+        String key = StringUtils.defaultString(context.getToken()) + " " + matrixRequest.getIgnoredErrorCodes() + " "
+                + request.url();
+        return coalescer.execute(key, () -> send(matrixRequest),
+                () -> metrics.onCoalesced(getEndpoint(request), request.method()));
+    }
+
+    /**
+     * Run tasks making requests concurrently, on the threads of the transport, and wait for all of them.
+     *
+     * Tasks are expected to turn their own failures into results, so one failing does not hide what the others did.
+     *
+     * @param tasks
+     *            The tasks to run
+     * @param concurrency
+     *            The maximum number of tasks running at once, no limit if 0 or less
+     * @param <T>
+     *            The type of the results
+     * @return The result of each task, in the same order.
+     */
+    protected <T> List<T> executeAll(List<Supplier<T>> tasks, int concurrency) {
+        Semaphore permits = new Semaphore(concurrency > 0 ? concurrency : Integer.MAX_VALUE);
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Supplier<T> task : tasks) {
+            permits.acquireUninterruptibly();
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.get();
+                    } finally {
+                        permits.release();
+                    }
+                }, client.dispatcher().executorService()));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+
+        return results;
+    }
+
+    private String send(MatrixHttpRequest matrixRequest) {
+        Request request = matrixRequest.getHttpRequest();
+        log(request);
+        String endpoint = getEndpoint(request);
+        long start = System.nanoTime();
+        Call call = client.newCall(request);
         try (Response response = call.execute()) {
 
+            long bytesReceived = bufferBody(response.body());
             String body = getBody(response.body());
             int responseStatus = response.code();
+            metrics.onResponse(endpoint, request.method(), responseStatus, System.nanoTime() - start,
+                    getBytesSent(request), bytesReceived);
+            if (responseStatus == 429) {
+                metrics.onRateLimited(endpoint, request.method());
+            }
 
             if (responseStatus == 200) {
                 log.debug("Request successfully executed.");
             } else if (matrixRequest.getIgnoredErrorCodes().contains(responseStatus)) {
-                log.debug("Error code ignored: " + responseStatus);
+                log.debug("Error code ignored: {}", responseStatus);
                 return "";
             } else {
                 MatrixErrorInfo info = createErrorInfo(body, responseStatus);
@@ -211,10 +348,26 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
             return body;
 
         } catch (IOException e) {
+            metrics.onFailure(endpoint, request.method(), System.nanoTime() - start);
             throw new MatrixClientRequestException(e);
+        } finally {
+            metrics.onConnectionPool(client.connectionPool());
         }
     }
 
+    /**
+     * Send a request again, after it failed in a way which can be recovered from.
+     *
+     * @param matrixRequest
+     *            The request to send again
+     * @return body of the response of the request.
+     */
+    protected String retry(MatrixHttpRequest matrixRequest) {
+        Request request = matrixRequest.getHttpRequest();
+        metrics.onRetry(getEndpoint(request), request.method());
+        return send(matrixRequest);
+    }
+
     /**
      * Default handling of errors. Can be overwritten by a custom implementation in inherited classes.
      *
@@ -250,17 +403,25 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         throw new MatrixClientRequestException(info, "Request was rate limited.");
         // TODO Add default handling of rate limited call, i.e. repeated call after given time interval.
         // 1. Wait for timeout
-        // 2. return execute(request)
+        // 2. return retry(request)
     }
 
     protected MatrixHttpContentResult executeContentRequest(MatrixHttpRequest matrixRequest) {
-        log(matrixRequest.getHttpRequest());
-        Call call = client.newCall(matrixRequest.getHttpRequest());
+        Request request = matrixRequest.getHttpRequest();
+        log(request);
+        String endpoint = getEndpoint(request);
+        long start = System.nanoTime();
+        Call call = client.newCall(request);
         try (Response response = call.execute()) {
             ResponseBody entity = response.body();
             int responseStatus = response.code();
 
             MatrixHttpContentResult result = new MatrixHttpContentResult(response);
+            metrics.onResponse(endpoint, request.method(), responseStatus, System.nanoTime() - start,
+                    getBytesSent(request), result.getData().length);
+            if (responseStatus == 429) {
+                metrics.onRateLimited(endpoint, request.method());
+            }
 
             if (responseStatus == 200) {
                 log.debug("Request successfully executed.");
@@ -272,7 +433,7 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
                 }
 
             } else if (matrixRequest.getIgnoredErrorCodes().contains(responseStatus)) {
-                log.debug("Error code ignored: " + responseStatus);
+                log.debug("Error code ignored: {}", responseStatus);
             } else {
                 String body = getBody(entity);
                 MatrixErrorInfo info = createErrorInfo(body, responseStatus);
@@ -282,7 +443,10 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
             return result;
 
         } catch (IOException e) {
+            metrics.onFailure(endpoint, request.method(), System.nanoTime() - start);
             throw new MatrixClientRequestException(e);
+        } finally {
+            metrics.onConnectionPool(client.connectionPool());
         }
     }
 
@@ -302,7 +466,7 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         throw new MatrixClientRequestException(info, "Request was rate limited.");
         // TODO Add default handling of rate limited call, i.e. repeated call after given time interval.
         // 1. Wait for timeout
-        // 2. return execute(request)
+        // 2. return retry(request)
     }
 
     protected Optional<String> extractAsStringFromBody(String body, String jsonObjectName) {
@@ -313,6 +477,22 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         return GsonUtil.findString(jsonParser.parse(body).getAsJsonObject(), jsonObjectName);
     }
 
+    private String getEndpoint(Request request) {
+        MatrixPathTemplate template = request.tag(MatrixPathTemplate.class);
+        return template != null ? template.getTemplate() : _MatrixHttpMetrics.unknownEndpoint;
+    }
+
+    private long getBytesSent(Request request) throws IOException {
+        return request.body() != null ? Math.max(0, request.body().contentLength()) : 0;
+    }
+
+    // Read the whole body in memory, so its size is known before it is decoded
+    private long bufferBody(ResponseBody entity) throws IOException {
+        BufferedSource source = entity.source();
+        source.request(Long.MAX_VALUE);
+        return source.buffer().size();
+    }
+
     private String getBody(ResponseBody entity) throws IOException {
         String string = entity.string();
         entity.close();
@@ -322,6 +502,11 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
     private MatrixErrorInfo createErrorInfo(String body, int responseStatus) {
         try {
             MatrixErrorInfo info = gson.fromJson(body, MatrixErrorInfo.class);
+            if (info == null) {
+                // Empty body, like the errors of some proxies
+                return null;
+            }
+
             log.debug("Request returned with an error. Status code: {}, errcode: {}, error: {}", responseStatus,
                     info.getErrcode(), info.getError());
             return info;
@@ -332,14 +517,14 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
     }
 
     private void log(Request req) {
-        String reqUrl = req.url().toString();
-        Matcher m = accessTokenUrlPattern.matcher(reqUrl);
-        if (m.find()) {
-            StringBuilder b = new StringBuilder();
-            b.append(reqUrl, 0, m.start(0));
-            b.append("<redacted>");
-            b.append(reqUrl.substring(m.end(0)));
-            reqUrl = b.toString();
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+
+        // Only URLs built with the deprecated query parameter methods can hold a token
+        HttpUrl reqUrl = req.url();
+        if (reqUrl.queryParameter("access_token") != null) {
+            reqUrl = reqUrl.newBuilder().setQueryParameter("access_token", "<redacted>").build();
         }
 
         log.debug("Doing {} {}", req.method(), reqUrl);
@@ -358,6 +543,23 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         return builder;
     }
 
+    protected HttpUrl.Builder getPathBuilder(@NotNull HttpUrl base, MatrixPathTemplate template, String... params) {
+        HttpUrl.Builder builder = template.expand(base, params);
+        if (context.isVirtual()) {
+            context.getUser().ifPresent(user -> builder.setQueryParameter("user_id", user.getId()));
+        }
+
+        return builder;
+    }
+
+    protected HttpUrl.Builder getPath(MatrixPathTemplate template, String... params) {
+        return getPathBuilder(context.getHomeserver().getBaseEndpointBuilder(), template, params);
+    }
+
+    protected HttpUrl.Builder getIdentityPath(MatrixPathTemplate template, String... params) {
+        return getPathBuilder(HttpUrl.parse(context.getIsBaseUrl().toString()), template, params);
+    }
+
     protected HttpUrl.Builder getPathBuilder(String module, String version, String action) {
         return getPathBuilder(context.getHomeserver().getBaseEndpointBuilder(), module, version, action);
     }
@@ -383,12 +585,90 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         return getPathBuilder("media", "v1", action);
     }
 
+    /**
+     * Start a request to an endpoint, tagged with its template so its metrics are recorded under it.
+     *
+     * @param template
+     *            The template of the endpoint
+     * @param url
+     *            The URL of the request, built from the template
+     * @return The request builder.
+     */
+    protected Request.Builder newRequest(MatrixPathTemplate template, HttpUrl url) {
+        return new Request.Builder().url(url).tag(MatrixPathTemplate.class, template);
+    }
+
+    /**
+     * Start a request to a homeserver endpoint, tagged with its template so its metrics are recorded under it.
+     *
+     * @param template
+     *            The template of the endpoint
+     * @param params
+     *            The values of the template parameters
+     * @return The request builder.
+     */
+    protected Request.Builder newRequest(MatrixPathTemplate template, String... params) {
+        return newRequest(template, getPath(template, params).build());
+    }
+
+    /**
+     * Same as {@link #newRequest(MatrixPathTemplate, HttpUrl)}, sent with the access token of this client.
+     *
+     * @param template
+     *            The template of the endpoint
+     * @param url
+     *            The URL of the request, built from the template
+     * @return The request builder.
+     * @throws IllegalStateException
+     *             if there is no access token.
+     */
+    protected Request.Builder newRequestWithAccessToken(MatrixPathTemplate template, HttpUrl url) {
+        return newRequestWithAccessToken(url).tag(MatrixPathTemplate.class, template);
+    }
+
+    /**
+     * Same as {@link #newRequest(MatrixPathTemplate, String...)}, sent with the access token of this client.
+     *
+     * @param template
+     *            The template of the endpoint
+     * @param params
+     *            The values of the template parameters
+     * @return The request builder.
+     * @throws IllegalStateException
+     *             if there is no access token.
+     */
+    protected Request.Builder newRequestWithAccessToken(MatrixPathTemplate template, String... params) {
+        return newRequestWithAccessToken(template, getPath(template, params).build());
+    }
+
+    /**
+     * Start a request which will be sent with the access token of this client, as an Authorization header.
+     *
+     * @param url
+     *            The URL of the request
+     * @return The request builder.
+     * @throws IllegalStateException
+     *             if there is no access token.
+     */
+    protected Request.Builder newRequestWithAccessToken(HttpUrl url) {
+        getAccessTokenOrThrow();
+        return accessTokenInterceptor.tag(new Request.Builder().url(url));
+    }
+
+    /**
+     * @deprecated The access token is sent as a header, see {@link #newRequestWithAccessToken(HttpUrl)}
+     */
+    @Deprecated
     protected HttpUrl getWithAccessToken(@NotNull HttpUrl.Builder base) {
         HttpUrl.Builder builder = base;
         builder.setQueryParameter("access_token", getAccessTokenOrThrow());
         return builder.build();
     }
 
+    /**
+     * @deprecated The access token is sent as a header, see {@link #newRequestWithAccessToken(HttpUrl)}
+     */
+    @Deprecated
     protected HttpUrl getClientPathWithAccessToken(String action) {
         return getWithAccessToken(getClientPathBuilder(action));
     }
@@ -397,6 +677,10 @@ public abstract class AMatrixHttpClient implements _MatrixClientRaw {
         return getClientPathBuilder(action);
     }
 
+    /**
+     * @deprecated The access token is sent as a header, see {@link #newRequestWithAccessToken(HttpUrl)}
+     */
+    @Deprecated
     public HttpUrl getMediaPath(String action) {
         return getWithAccessToken(getMediaPathBuilder(action));
     }
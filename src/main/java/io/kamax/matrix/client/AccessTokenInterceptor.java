@@ -0,0 +1,69 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Add the access token of a client context as an <code>Authorization</code> header to the requests tagged for it.
+ *
+ * The token is read from the context when the request is sent, so it is never part of the URL and only reaches the
+ * requests explicitly built to carry it.
+ */
+public class AccessTokenInterceptor implements Interceptor {
+
+    private final MatrixClientContext context;
+
+    public AccessTokenInterceptor(MatrixClientContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Tag a request so this interceptor adds the access token to it.
+     *
+     * @param builder
+     *            The request builder to tag
+     * @return The same builder.
+     */
+    public Request.Builder tag(Request.Builder builder) {
+        return builder.tag(AccessTokenInterceptor.class, this);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.tag(AccessTokenInterceptor.class) != this) {
+            return chain.proceed(request);
+        }
+
+        String token = context.getToken();
+        if (token == null) {
+            throw new IllegalStateException("This method can only be used with a valid token.");
+        }
+
+        return chain.proceed(request.newBuilder().header("Authorization", "Bearer " + token).build());
+    }
+
+}
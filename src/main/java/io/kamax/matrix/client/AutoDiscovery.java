@@ -0,0 +1,306 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.json.GsonUtil;
+
+import okhttp3.*;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Discovery of the Homeserver and Identity server of Matrix domains through .well-known, shared by the clients of the
+ * JVM.
+ *
+ * The candidate base URLs of a domain are probed in parallel, and the first healthy one in the order of the
+ * .well-known data is kept. Results are cached per domain, failures and domains without usable data for a shorter
+ * time, and a domain being discovered by several clients at once is only discovered once.
+ */
+public class AutoDiscovery {
+
+    public static class Result {
+
+        private final _AutoDiscoverySettings settings;
+        private final URL hsBaseUrl;
+        private final URL isBaseUrl;
+
+        Result(_AutoDiscoverySettings settings, URL hsBaseUrl, URL isBaseUrl) {
+            this.settings = settings;
+            this.hsBaseUrl = hsBaseUrl;
+            this.isBaseUrl = isBaseUrl;
+        }
+
+        /**
+         * Get the .well-known data of the domain.
+         *
+         * @return The data, if the domain has any.
+         */
+        public Optional<_AutoDiscoverySettings> getSettings() {
+            return Optional.ofNullable(settings);
+        }
+
+        /**
+         * Get the first candidate Homeserver base URL which answered.
+         *
+         * @return The base URL, if any candidate answered.
+         */
+        public Optional<URL> getHsBaseUrl() {
+            return Optional.ofNullable(hsBaseUrl);
+        }
+
+        /**
+         * Get the first candidate Identity server base URL which answered.
+         *
+         * @return The base URL, if any candidate answered.
+         */
+        public Optional<URL> getIsBaseUrl() {
+            return Optional.ofNullable(isBaseUrl);
+        }
+
+    }
+
+    private static class Entry {
+
+        private final Result result;
+        private final RuntimeException error;
+        private final long expiresAt;
+
+        Entry(Result result, RuntimeException error, long expiresAt) {
+            this.result = result;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    private static final MatrixPathTemplate versionsPath = new MatrixPathTemplate("client", "", "versions");
+    private static final MatrixPathTemplate identityBasePath = MatrixPathTemplate.identity("");
+
+    private static final AutoDiscovery shared = new AutoDiscovery();
+
+    /**
+     * Get the discovery shared by the clients of the JVM.
+     *
+     * @return The shared instance.
+     */
+    public static AutoDiscovery get() {
+        return shared;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(AutoDiscovery.class);
+
+    private final OkHttpClient client;
+    private final Map<String, CompletableFuture<Entry>> cache = new ConcurrentHashMap<>();
+
+    private long ttl = 60 * 60 * 1000; // 1 hour
+    private long negativeTtl = 5 * 60 * 1000; // 5 min
+
+    public AutoDiscovery() {
+        this(new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build());
+    }
+
+    public AutoDiscovery(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set for how long discoveries are cached.
+     *
+     * @param ttl
+     *            For how long, in milliseconds, to cache a discovery which found a Homeserver
+     * @param negativeTtl
+     *            For how long, in milliseconds, to cache a discovery which failed or found no Homeserver
+     * @return This discovery.
+     */
+    public AutoDiscovery setTtl(long ttl, long negativeTtl) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+
+        return this;
+    }
+
+    public void invalidate(String hostname) {
+        cache.remove(hostname);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    protected HttpUrl getWellKnownUrl(String hostname) {
+        return new HttpUrl.Builder()
+                .scheme("https")
+                .host(hostname)
+                .addPathSegments(".well-known/matrix/client")
+                .build();
+    }
+
+    /**
+     * Discover the servers of a domain, using the cached result if there is a valid one.
+     *
+     * @param hostname
+     *            The hostname of the Matrix domain
+     * @return The result of the discovery.
+     * @throws MatrixClientRequestException
+     *             if the .well-known data could not be fetched.
+     * @throws IllegalArgumentException
+     *             if the .well-known data is invalid.
+     */
+    public Result discover(String hostname) {
+        long now = System.currentTimeMillis();
+        CompletableFuture<Entry> own = new CompletableFuture<>();
+        CompletableFuture<Entry> entry = cache.compute(hostname, (k, cached) -> {
+            if (Objects.nonNull(cached) && (!cached.isDone() || cached.join().expiresAt > now)) {
+                return cached;
+            }
+            return own;
+        });
+
+        if (entry == own) {
+            try {
+                Result result = doDiscover(hostname);
+                boolean found = Objects.nonNull(result.hsBaseUrl);
+                own.complete(new Entry(result, null, now + (found ? ttl : negativeTtl)));
+            } catch (RuntimeException e) {
+                own.complete(new Entry(null, e, now + negativeTtl));
+            } catch (Throwable t) {
+                // Not a discovery failure to remember, but the callers waiting on it must not wait forever
+                cache.remove(hostname, own);
+                own.completeExceptionally(t);
+                throw t;
+            }
+        }
+
+        Entry e = entry.join();
+        if (Objects.nonNull(e.error)) {
+            throw e.error;
+        }
+        return e.result;
+    }
+
+    private Result doDiscover(String hostname) {
+        log.info("Performing .well-known auto-discovery for {}", hostname);
+        String body;
+        Request req = new Request.Builder().url(getWellKnownUrl(hostname)).build();
+        try (Response res = client.newCall(req).execute()) {
+            if (res.code() == 404) {
+                log.info("No .well-known data for {}", hostname);
+                return new Result(null, null, null);
+            }
+
+            if (res.code() != 200) {
+                throw new MatrixClientRequestException(null, String.format("Request failed: %s", res.code()));
+            }
+
+            body = res.body().string();
+        } catch (IOException e) {
+            throw new MatrixClientRequestException(e);
+        }
+
+        if (StringUtils.isBlank(body)) {
+            return new Result(null, null, null);
+        }
+
+        WellKnownAutoDiscoverySettings settings = new WellKnownAutoDiscoverySettings(body);
+        log.info("Found .well-known data for {}", hostname);
+
+        URL hsBaseUrl = probe(settings.getHsBaseUrls(),
+                url -> versionsPath.expand(new MatrixHomeserver(hostname, url).getBaseEndpointBuilder()).build(),
+                resBody -> !GsonUtil.asList(GsonUtil.parseObj(resBody), "versions", String.class).isEmpty());
+        if (Objects.nonNull(hsBaseUrl)) {
+            log.info("Found a valid HS at {}", hsBaseUrl);
+        }
+
+        URL isBaseUrl = probe(settings.getIsBaseUrls(),
+                url -> identityBasePath.expand(HttpUrl.get(url)).build(),
+                resBody -> "{}".equals(resBody.trim()));
+        if (Objects.nonNull(isBaseUrl)) {
+            log.info("Found a valid IS at {}", isBaseUrl);
+        }
+
+        return new Result(settings, hsBaseUrl, isBaseUrl);
+    }
+
+    private URL probe(List<URL> candidates, Function<URL, HttpUrl> toProbeUrl, Predicate<String> isHealthy) {
+        List<Call> calls = new ArrayList<>();
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+        for (URL candidate : candidates) {
+            CompletableFuture<Boolean> probe = new CompletableFuture<>();
+            Call call = client.newCall(new Request.Builder().url(toProbeUrl.apply(candidate)).build());
+            call.enqueue(new Callback() {
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (!call.isCanceled()) {
+                        log.warn("Error when trying to fetch {}: {}", candidate, e.getMessage());
+                    }
+                    probe.complete(false);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (ResponseBody body = response.body()) {
+                        probe.complete(response.code() == 200 && isHealthy.test(body.string()));
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Error when trying to fetch {}: {}", candidate, e.getMessage());
+                        probe.complete(false);
+                    }
+                }
+
+            });
+            calls.add(call);
+            probes.add(probe);
+        }
+
+        // Candidates are in order of preference, so a healthy one is only used once all before it failed
+        try {
+            for (int i = 0; i < candidates.size(); i++) {
+                if (probes.get(i).join()) {
+                    return candidates.get(i);
+                }
+            }
+            return null;
+        } finally {
+            calls.forEach(Call::cancel);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import io.kamax.matrix.client.metrics.Histogram;
+
+/**
+ * Health of a single base URL, to stop sending requests to it once it keeps failing.
+ *
+ * After a number of consecutive failures the breaker opens and requests go elsewhere. Once the open duration is over,
+ * a single request is let through to probe the base URL: the breaker closes if it succeeds and opens again if not.
+ *
+ * The latency of successful requests is kept, to know how long a normal request takes.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final Histogram latency = new Histogram();
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long changedAt;
+
+    /**
+     * @param failureThreshold
+     *            The number of consecutive failures which opens the breaker
+     * @param openDuration
+     *            The time in milliseconds before a request is let through again
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Check if a request can be sent, and count it as the probe if the open duration is over.
+     *
+     * @return true if the request can be sent, false if it should go elsewhere.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        // A probe which never reported back, like a cancelled one, does not block the next
+        long now = System.currentTimeMillis();
+        if (now - changedAt < openDuration) {
+            return false;
+        }
+
+        state = State.HALF_OPEN;
+        changedAt = now;
+        return true;
+    }
+
+    /**
+     * Check if a request could be sent, without counting it as the probe.
+     *
+     * @return true if the breaker is closed or its open duration is over.
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED || System.currentTimeMillis() - changedAt >= openDuration;
+    }
+
+    public synchronized void onSuccess(long durationNanos) {
+        latency.record(durationNanos);
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            changedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The latency of successful requests, in nanoseconds.
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spread the requests of clients over the Homeserver base URL of their context and its fallbacks, as found by
+ * .well-known discovery, depending on the health of each.
+ *
+ * Each base URL has a {@link CircuitBreaker}, shared by all clients. Requests go to the first base URL in order whose
+ * breaker is closed, and are sent to the next one if that fails, as long as sending them twice is safe: for idempotent
+ * methods, or when no connection could be made. Once the open duration of a breaker is over, a single request probes
+ * its base URL and the others skip it, unless no other base URL is left to try.
+ *
+ * GET requests can also be hedged: if no response came from the first base URL after the usual latency of successful
+ * requests to it, at a given percentile, the same request is sent to the next one and the first response wins.
+ */
+public class HomeserverFailover {
+
+    private static final Set<String> idempotentMethods = new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE"));
+    private static final Set<Integer> serverFailures = new HashSet<>(Arrays.asList(502, 503, 504));
+
+    private static final HomeserverFailover shared = new HomeserverFailover();
+
+    /**
+     * Get the failover shared by the clients of the JVM.
+     *
+     * @return The shared instance.
+     */
+    public static HomeserverFailover get() {
+        return shared;
+    }
+
+    private static String getBase(URL url) {
+        return StringUtils.removeEnd(url.toString(), "/");
+    }
+
+    private static boolean isServerFailure(Response response) {
+        return serverFailures.contains(response.code());
+    }
+
+    private final Logger log = LoggerFactory.getLogger(HomeserverFailover.class);
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private int failureThreshold = 5;
+    private long openDuration = 30 * 1000; // 30 sec
+    private boolean hedging = false;
+    private double hedgePercentile = 95;
+    private long hedgeMinSamples = 20;
+
+    /**
+     * @param failureThreshold
+     *            The number of consecutive failures which take a base URL out of rotation, 5 by default
+     * @param openDuration
+     *            The time in milliseconds before trying it again, 30 seconds by default
+     * @return This failover.
+     */
+    public HomeserverFailover setBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        breakers.clear();
+
+        return this;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * @param hedging
+     *            If GET requests are hedged when the context has fallback base URLs, false by default
+     * @return This failover.
+     */
+    public HomeserverFailover setHedging(boolean hedging) {
+        this.hedging = hedging;
+
+        return this;
+    }
+
+    /**
+     * @param hedgePercentile
+     *            The latency percentile of a base URL after which requests to it are hedged, 95 by default
+     * @param hedgeMinSamples
+     *            The number of successful requests to a base URL needed to hedge requests to it, 20 by default
+     * @return This failover.
+     */
+    public HomeserverFailover setHedgeDelay(double hedgePercentile, long hedgeMinSamples) {
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinSamples = hedgeMinSamples;
+
+        return this;
+    }
+
+    /**
+     * Get the breaker of a base URL, creating it if needed.
+     *
+     * @param baseUrl
+     *            The base URL
+     * @return The breaker.
+     */
+    public CircuitBreaker getBreaker(URL baseUrl) {
+        return getBreaker(getBase(baseUrl));
+    }
+
+    private CircuitBreaker getBreaker(String base) {
+        return breakers.computeIfAbsent(base, b -> new CircuitBreaker(failureThreshold, openDuration));
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "matrix-hedging");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Send a request of a client, to be called from an interceptor placed after its access token one.
+     *
+     * @param chain
+     *            The interceptor chain
+     * @param context
+     *            The context of the client, read for each request
+     * @param transport
+     *            The HTTP client to send hedged requests with
+     * @return The response of the first base URL which answered.
+     * @throws IOException
+     *             If no base URL could answer.
+     */
+    Response intercept(Interceptor.Chain chain, MatrixClientContext context, OkHttpClient transport)
+            throws IOException {
+        Request request = chain.request();
+        List<URL> fallbacks = context.getHsFallbackUrls();
+        if (fallbacks.isEmpty() || context.getHsBaseUrl() == null) {
+            return chain.proceed(request);
+        }
+
+        String url = request.url().toString();
+        String primary = getBase(context.getHsBaseUrl());
+        if (!url.startsWith(primary + "/")) {
+            return chain.proceed(request);
+        }
+
+        // Healthy base URLs first, the others are only tried if none is
+        String path = url.substring(primary.length());
+        List<String> healthy = new ArrayList<>();
+        List<String> unhealthy = new ArrayList<>();
+        (getBreaker(primary).isAvailable() ? healthy : unhealthy).add(primary);
+        for (URL fallback : fallbacks) {
+            String base = getBase(fallback);
+            (getBreaker(base).isAvailable() ? healthy : unhealthy).add(base);
+        }
+        List<String> bases = new ArrayList<>(healthy);
+        bases.addAll(unhealthy);
+
+        boolean idempotent = idempotentMethods.contains(request.method());
+        Response failed = null;
+        IOException error = null;
+        for (int i = 0; i < bases.size(); i++) {
+            String base = bases.get(i);
+            // Only one request probes a base URL once its open duration is over, the others go elsewhere
+            if (!getBreaker(base).allowRequest()) {
+                log.debug("{} is out of rotation, skipping it", base);
+                continue;
+            }
+
+            if (failed != null) {
+                failed.close();
+                failed = null;
+            }
+
+            Request attempt = request.newBuilder().url(HttpUrl.get(base + path)).build();
+            try {
+                Response response;
+                String next = i + 1 < bases.size() ? bases.get(i + 1) : null;
+                if (hedging && "GET".equals(request.method()) && next != null
+                        && getBreaker(next).getState() == CircuitBreaker.State.CLOSED) {
+                    Request hedge = request.newBuilder().url(HttpUrl.get(next + path)).build();
+                    response = hedge(chain, transport, base, attempt, next, hedge);
+                } else {
+                    response = send(chain, base, attempt);
+                }
+
+                if (!isServerFailure(response) || !idempotent) {
+                    return response;
+                }
+
+                log.debug("{} answered {}, trying the next base URL", base, response.code());
+                failed = response;
+            } catch (IOException e) {
+                if (!idempotent && !(e instanceof ConnectException)) {
+                    throw e;
+                }
+
+                log.debug("{} failed, trying the next base URL: {}", base, e.getMessage());
+                error = e;
+            }
+        }
+
+        if (failed != null) {
+            return failed;
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        // Every breaker refused the request, it goes to the first base URL as a last resort
+        log.debug("No base URL is in rotation, sending the request to {} anyway", bases.get(0));
+        return send(chain, bases.get(0), request.newBuilder().url(HttpUrl.get(bases.get(0) + path)).build());
+    }
+
+    private void record(CircuitBreaker breaker, Response response, long start) {
+        if (isServerFailure(response)) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess(System.nanoTime() - start);
+        }
+    }
+
+    private Response send(Interceptor.Chain chain, String base, Request request) throws IOException {
+        CircuitBreaker breaker = getBreaker(base);
+        long start = System.nanoTime();
+        try {
+            Response response = chain.proceed(request);
+            record(breaker, response, start);
+            return response;
+        } catch (IOException e) {
+            breaker.onFailure();
+            throw e;
+        }
+    }
+
+    private Response hedge(Interceptor.Chain chain, OkHttpClient transport, String base, Request request,
+            String hedgeBase, Request hedgeRequest) throws IOException {
+        CircuitBreaker breaker = getBreaker(base);
+        CircuitBreaker hedgeBreaker = getBreaker(hedgeBase);
+        if (breaker.getLatency().getCount() < hedgeMinSamples) {
+            return send(chain, base, request);
+        }
+
+        // Whoever completes the future owns the response, the other one closes its own
+        CompletableFuture<Response> winner = new CompletableFuture<>();
+        Call call = transport.newCall(request);
+        Call hedgeCall = transport.newCall(hedgeRequest);
+        long delay = breaker.getLatency().getValueAtPercentile(hedgePercentile);
+        ScheduledFuture<?> timer = getScheduler().schedule(() -> {
+            long start = System.nanoTime();
+            hedgeCall.enqueue(new Callback() {
+
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    if (!c.isCanceled()) {
+                        hedgeBreaker.onFailure();
+                    }
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    record(hedgeBreaker, response, start);
+                    if (!isServerFailure(response) && winner.complete(response)) {
+                        call.cancel();
+                    } else {
+                        response.close();
+                    }
+                }
+
+            });
+        }, delay, TimeUnit.NANOSECONDS);
+
+        long start = System.nanoTime();
+        try {
+            Response response = call.execute();
+            record(breaker, response, start);
+            if (winner.complete(response)) {
+                timer.cancel(false);
+                hedgeCall.cancel();
+                return response;
+            }
+
+            response.close();
+            return winner.join();
+        } catch (IOException e) {
+            if (winner.isDone()) {
+                return winner.join();
+            }
+
+            breaker.onFailure();
+            timer.cancel(false);
+            hedgeCall.cancel();
+            if (winner.completeExceptionally(e)) {
+                throw e;
+            }
+
+            return winner.join();
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limit the number of requests in flight to each host, whether they are executed or enqueued.
+ *
+ * Requests over the limit wait for a slot, in the order they came. A slot is held until the response body is closed,
+ * so the limit bounds the connections used to a host with HTTP/1.1. Responses must be closed for their slot to be
+ * given back.
+ */
+public class HostConcurrencyInterceptor implements Interceptor {
+
+    private final int maxRequests;
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    public HostConcurrencyInterceptor(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("The maximum number of requests per host must be positive");
+        }
+
+        this.maxRequests = maxRequests;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        Semaphore slots = hosts.computeIfAbsent(url.host() + ":" + url.port(), k -> new Semaphore(maxRequests, true));
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a slot to " + url.host());
+        }
+
+        boolean handedOver = false;
+        try {
+            Response response = chain.proceed(chain.request());
+            ResponseBody body = response.body();
+            if (body == null) {
+                return response;
+            }
+
+            AtomicBoolean released = new AtomicBoolean();
+            BufferedSource source = Okio.buffer(new ForwardingSource(body.source()) {
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            slots.release();
+                        }
+                    }
+                }
+
+            });
+            Response held = response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), body.contentLength(), source))
+                    .build();
+            handedOver = true;
+            return held;
+        } finally {
+            if (!handedOver) {
+                slots.release();
+            }
+        }
+    }
+
+}
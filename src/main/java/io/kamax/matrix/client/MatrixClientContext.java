@@ -28,18 +28,23 @@ import io.kamax.matrix.hs.MatrixHomeserver;
 import io.kamax.matrix.hs._MatrixHomeserver;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class MatrixClientContext {
 
     private String domain;
     private URL hsBaseUrl;
+    private List<URL> hsFallbackUrls = Collections.emptyList();
     private URL isBaseUrl;
     private _MatrixID user;
     private String token;
     private boolean isVirtual;
     private String deviceId;
     private String initialDeviceName;
+    private _MatrixHomeserver homeserver;
 
     public MatrixClientContext() {
         // stub
@@ -48,6 +53,7 @@ public class MatrixClientContext {
     public MatrixClientContext(MatrixClientContext other) {
         this.domain = other.domain;
         this.hsBaseUrl = other.hsBaseUrl;
+        this.hsFallbackUrls = other.hsFallbackUrls;
         this.isBaseUrl = other.isBaseUrl;
         this.user = other.user;
         this.token = other.token;
@@ -72,7 +78,14 @@ public class MatrixClientContext {
             throw new IllegalStateException("Homeserver Base URL is not set");
         }
 
-        return new MatrixHomeserver(domain, hsBaseUrl.toString());
+        // Built once and reused so the base URL is not parsed again for each request
+        _MatrixHomeserver hs = homeserver;
+        if (hs == null) {
+            hs = new MatrixHomeserver(domain, hsBaseUrl);
+            homeserver = hs;
+        }
+
+        return hs;
     }
 
     public String getDomain() {
@@ -81,6 +94,7 @@ public class MatrixClientContext {
 
     public MatrixClientContext setDomain(String domain) {
         this.domain = domain;
+        this.homeserver = null;
         return this;
     }
 
@@ -90,6 +104,24 @@ public class MatrixClientContext {
 
     public MatrixClientContext setHsBaseUrl(URL hsBaseUrl) {
         this.hsBaseUrl = hsBaseUrl;
+        this.homeserver = null;
+        return this;
+    }
+
+    public List<URL> getHsFallbackUrls() {
+        return hsFallbackUrls;
+    }
+
+    /**
+     * Set other base URLs of the same Homeserver, to send requests to when the main one fails.
+     *
+     * @param hsFallbackUrls
+     *            The base URLs, in order of preference
+     * @return This context.
+     * @see HomeserverFailover
+     */
+    public MatrixClientContext setHsFallbackUrls(List<URL> hsFallbackUrls) {
+        this.hsFallbackUrls = Collections.unmodifiableList(new ArrayList<>(hsFallbackUrls));
         return this;
     }
 
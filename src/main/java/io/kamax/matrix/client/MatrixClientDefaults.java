@@ -20,11 +20,51 @@
 
 package io.kamax.matrix.client;
 
+import com.github.dmstocking.optional.java.util.Optional;
+
+import io.kamax.matrix.client.filter.SyncFilterMemoryStore;
+import io.kamax.matrix.client.filter._SyncFilterStore;
+import io.kamax.matrix.client.metrics.NoopMatrixHttpMetrics;
+import io.kamax.matrix.client.metrics._MatrixHttpMetrics;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the clients, including their HTTP transport.
+ *
+ * Clients built with the same defaults share a single transport, with its connection pool. It is built when the first
+ * of them is created, so transport settings must be set before.
+ */
 public class MatrixClientDefaults {
 
     private int connectTimeout = 30 * 1000; // 30 sec
     private int requestTimeout = 5 * 60 * 1000; // 5 min
-    private int socketTimeout = requestTimeout;
+    private int socketTimeout = -1; // same as the request timeout
+    private boolean http2 = true;
+    private boolean http2PriorKnowledge = false;
+    private boolean compression = true;
+    private int maxIdleConnections = 5;
+    private long keepAlive = 5 * 60 * 1000; // 5 min
+    private int maxRequestsPerHost = 0; // no limit
+    private ResponseCacheInterceptor responseCache = new ResponseCacheInterceptor();
+    private File cacheDirectory;
+    private long diskCacheSize = 50 * 1024 * 1024;
+    private OkHttpClient httpClient;
+    private _MatrixHttpMetrics metrics = NoopMatrixHttpMetrics.get();
+    private _SyncFilterStore filterStore = new SyncFilterMemoryStore();
+    private AutoDiscovery discovery = AutoDiscovery.get();
+    private HomeserverFailover failover = HomeserverFailover.get();
+    private boolean coalescing = true;
+    private int maxStateSnapshots = 0; // none
 
     public int getConnectTimeout() {
         return connectTimeout;
@@ -46,8 +86,15 @@ public class MatrixClientDefaults {
         return this;
     }
 
+    /**
+     * Get the maximum time to wait for data when reading or writing a request.
+     *
+     * The HTTP client has no timeout for whole calls, so the request timeout is used unless one is set.
+     *
+     * @return The timeout, in milliseconds.
+     */
     public int getSocketTimeout() {
-        return socketTimeout;
+        return socketTimeout < 0 ? requestTimeout : socketTimeout;
     }
 
     public MatrixClientDefaults setSocketTimeout(int socketTimeout) {
@@ -56,4 +103,270 @@ public class MatrixClientDefaults {
         return this;
     }
 
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * Set if HTTP/2 is used when the server supports it, which sends all requests to a host on one connection.
+     *
+     * HTTP/2 is negotiated with TLS, so it needs a JVM with ALPN support, like Java 9 and later.
+     *
+     * @param http2
+     *            true to prefer HTTP/2, false to only use HTTP/1.1
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setHttp2(boolean http2) {
+        this.http2 = http2;
+
+        return this;
+    }
+
+    public boolean isHttp2PriorKnowledge() {
+        return http2PriorKnowledge;
+    }
+
+    /**
+     * Set if HTTP/2 is used without TLS and without negotiation, for servers known to support it like a local reverse
+     * proxy. Servers which don't will fail all requests.
+     *
+     * @param http2PriorKnowledge
+     *            true to only use cleartext HTTP/2
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setHttp2PriorKnowledge(boolean http2PriorKnowledge) {
+        this.http2PriorKnowledge = http2PriorKnowledge;
+
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Set if compressed responses are accepted. Only gzip is supported by the HTTP client.
+     *
+     * @param compression
+     *            true to accept gzip responses, false to ask for uncompressed ones
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setCompression(boolean compression) {
+        this.compression = compression;
+
+        return this;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public MatrixClientDefaults setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+
+        return this;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Set for how long idle connections are kept in the pool.
+     *
+     * @param keepAlive
+     *            The time in milliseconds
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+
+        return this;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Set the maximum number of requests in flight to a host, across the clients built with these defaults.
+     *
+     * Long polling syncs count as requests in flight for as long as they wait.
+     *
+     * @param maxRequestsPerHost
+     *            The maximum, or 0 for no limit
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+
+        return this;
+    }
+
+    public ResponseCacheInterceptor getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Set the in-memory cache of GET responses used by the transport. Its size and TTLs can still be changed once the
+     * transport is built.
+     *
+     * @param responseCache
+     *            The cache, or one with a maximum size of 0 to keep nothing
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setResponseCache(ResponseCacheInterceptor responseCache) {
+        this.responseCache = responseCache;
+
+        return this;
+    }
+
+    public Optional<File> getCacheDirectory() {
+        return Optional.ofNullable(cacheDirectory);
+    }
+
+    public long getDiskCacheSize() {
+        return diskCacheSize;
+    }
+
+    /**
+     * Keep responses on disk too, behind the in-memory cache. Only responses the server allows to be cached are kept,
+     * keyed by URL alone: a transport using such a cache must not be shared by several users.
+     *
+     * @param cacheDirectory
+     *            The directory to keep responses in, used by this transport only
+     * @param diskCacheSize
+     *            The maximum size of the directory, in bytes
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setDiskCache(File cacheDirectory, long diskCacheSize) {
+        this.cacheDirectory = cacheDirectory;
+        this.diskCacheSize = diskCacheSize;
+
+        return this;
+    }
+
+    /**
+     * Get the HTTP transport shared by the clients built with these defaults, building it the first time.
+     *
+     * @return The HTTP client.
+     */
+    public synchronized OkHttpClient getHttpClient() {
+        if (httpClient != null) {
+            return httpClient;
+        }
+
+        List<Protocol> protocols = Collections.singletonList(Protocol.HTTP_1_1);
+        if (http2PriorKnowledge) {
+            protocols = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+        } else if (http2) {
+            protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+        }
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(getSocketTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(getSocketTimeout(), TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.MILLISECONDS))
+                .protocols(protocols)
+                .addInterceptor(responseCache);
+
+        if (cacheDirectory != null) {
+            builder.cache(new Cache(cacheDirectory, diskCacheSize));
+        }
+
+        if (!compression) {
+            // The HTTP client only asks for gzip when no encoding is set
+            builder.addInterceptor(chain -> chain
+                    .proceed(chain.request().newBuilder().header("Accept-Encoding", "identity").build()));
+        }
+
+        if (maxRequestsPerHost > 0) {
+            builder.addInterceptor(new HostConcurrencyInterceptor(maxRequestsPerHost));
+        }
+
+        httpClient = builder.build();
+        return httpClient;
+    }
+
+    public _MatrixHttpMetrics getMetrics() {
+        return metrics;
+    }
+
+    public MatrixClientDefaults setMetrics(_MatrixHttpMetrics metrics) {
+        this.metrics = metrics;
+
+        return this;
+    }
+
+    public _SyncFilterStore getFilterStore() {
+        return filterStore;
+    }
+
+    public MatrixClientDefaults setFilterStore(_SyncFilterStore filterStore) {
+        this.filterStore = filterStore;
+
+        return this;
+    }
+
+    public AutoDiscovery getDiscovery() {
+        return discovery;
+    }
+
+    public MatrixClientDefaults setDiscovery(AutoDiscovery discovery) {
+        this.discovery = discovery;
+
+        return this;
+    }
+
+    public HomeserverFailover getFailover() {
+        return failover;
+    }
+
+    public MatrixClientDefaults setFailover(HomeserverFailover failover) {
+        this.failover = failover;
+
+        return this;
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Set if identical GET requests made at the same time by a client share a single call, true by default.
+     *
+     * @param coalescing
+     *            If calls are shared
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+
+        return this;
+    }
+
+    public int getMaxStateSnapshots() {
+        return maxStateSnapshots;
+    }
+
+    /**
+     * Keep a snapshot of the state of rooms in clients, to skip state events which change nothing without asking the
+     * homeserver for the current state first.
+     *
+     * Others can change the state of a room at any time, so a snapshot can only be trusted if the application keeps
+     * it up to date from sync, through {@link AMatrixHttpClient#getStateSnapshot(String)}. Without snapshots, the
+     * current state is read before each write, which the response cache answers if a TTL is set for
+     * {@link ResponseCacheInterceptor#roomState}.
+     *
+     * @param maxStateSnapshots
+     *            The number of rooms to keep, the least recently used ones being dropped first, 0 by default for none
+     * @return These defaults.
+     */
+    public MatrixClientDefaults setMaxStateSnapshots(int maxStateSnapshots) {
+        this.maxStateSnapshots = maxStateSnapshots;
+
+        return this;
+    }
+
 }
@@ -36,6 +36,8 @@ import java.util.regex.Pattern;
 
 public class MatrixHttpContent extends AMatrixHttpClient implements _MatrixContent {
 
+    private static final MatrixPathTemplate downloadPath = MatrixPathTemplate.media("download/{serverName}");
+
     private Logger log = LoggerFactory.getLogger(MatrixHttpContent.class);
     private final Pattern filenamePattern = Pattern.compile("filename=\"?(?<filename>[^\";]+)");
     private URI address;
@@ -50,6 +52,11 @@ public class MatrixHttpContent extends AMatrixHttpClient implements _MatrixConte
         this.address = address;
     }
 
+    public MatrixHttpContent(AMatrixHttpClient parent, URI address) {
+        super(parent);
+        this.address = address;
+    }
+
     // TODO switch a HTTP HEAD to fetch initial data, instead of loading in memory directly
     private synchronized void load() {
         if (loaded) {
@@ -60,10 +67,9 @@ public class MatrixHttpContent extends AMatrixHttpClient implements _MatrixConte
             if (!StringUtils.equalsIgnoreCase("mxc", address.getScheme())) {
                 log.debug("{} is not a supported protocol for avatars, ignoring", address.getScheme());
             } else {
-                HttpUrl path = getMediaPath("download/" + address.getHost() + address.getPath());
-
-                Request req = new Request.Builder()
-                        .url(path)
+                HttpUrl.Builder builder = getPath(downloadPath, address.getHost());
+                builder.addPathSegments(StringUtils.removeStart(address.getPath(), "/"));
+                Request req = newRequestWithAccessToken(downloadPath, builder.build())
                         .build();
                 MatrixHttpRequest request = new MatrixHttpRequest(req);
                 result = executeContentRequest(request);
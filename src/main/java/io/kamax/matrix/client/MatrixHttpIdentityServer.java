@@ -0,0 +1,315 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.ThreePid;
+import io.kamax.matrix.ThreePidMapping;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix._ThreePid;
+import io.kamax.matrix._ThreePidMapping;
+import io.kamax.matrix.is._IdentityServer;
+import io.kamax.matrix.json.GsonUtil;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Identity server client for 3PID lookups.
+ *
+ * Lists of 3PIDs are looked up with the bulk endpoint, split in batches sent in parallel. Results are cached for a
+ * while, including the 3PIDs which are not mapped, so repeated lookups of the same 3PIDs do not reach the server.
+ */
+public class MatrixHttpIdentityServer extends AMatrixHttpClient implements _IdentityServer, AutoCloseable {
+
+    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final MatrixPathTemplate lookupPath = MatrixPathTemplate.identity("lookup");
+    private static final MatrixPathTemplate bulkLookupPath = MatrixPathTemplate.identity("bulk_lookup");
+
+    private static class CacheEntry {
+
+        private final _MatrixID mxId;
+        private final long expiresAt;
+
+        CacheEntry(_MatrixID mxId, long expiresAt) {
+            this.mxId = mxId;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    private int batchSize = 1000;
+    private int parallelism = 4;
+    private long ttl = 60 * 60 * 1000; // 1 hour
+    private long negativeTtl = 5 * 60 * 1000; // 5 min
+    private int cacheSize = 100000;
+
+    private Map<_ThreePid, CacheEntry> cache = newCache();
+    private ExecutorService executor;
+
+    public MatrixHttpIdentityServer(MatrixClientContext context) {
+        super(context);
+    }
+
+    public MatrixHttpIdentityServer(MatrixClientContext context, MatrixClientDefaults defaults) {
+        super(context, defaults);
+    }
+
+    /**
+     * Create an identity server client for the identity server of a client's context, sharing its transport.
+     *
+     * @param parent
+     *            The client to share with
+     */
+    public MatrixHttpIdentityServer(AMatrixHttpClient parent) {
+        super(parent);
+    }
+
+    private Map<_ThreePid, CacheEntry> newCache() {
+        int maxSize = cacheSize;
+        return Collections.synchronizedMap(new LinkedHashMap<_ThreePid, CacheEntry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<_ThreePid, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+
+        });
+    }
+
+    public MatrixHttpIdentityServer setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+
+        return this;
+    }
+
+    public MatrixHttpIdentityServer setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+
+        return this;
+    }
+
+    /**
+     * Set for how long lookup results are cached.
+     *
+     * @param ttl
+     *            For how long, in milliseconds, to cache 3PIDs found mapped
+     * @param negativeTtl
+     *            For how long, in milliseconds, to cache 3PIDs found not mapped
+     * @return This client.
+     */
+    public MatrixHttpIdentityServer setTtl(long ttl, long negativeTtl) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+
+        return this;
+    }
+
+    public MatrixHttpIdentityServer setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.cache = newCache();
+
+        return this;
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (Objects.isNull(executor)) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "matrix-is-lookup-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (Objects.nonNull(executor)) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private CacheEntry findCached(_ThreePid threePid, long now) {
+        CacheEntry entry = cache.get(threePid);
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+
+        if (entry.expiresAt <= now) {
+            cache.remove(threePid);
+            return null;
+        }
+
+        return entry;
+    }
+
+    private void putCached(_ThreePid threePid, _MatrixID mxId, long now) {
+        cache.put(threePid, new CacheEntry(mxId, now + (Objects.isNull(mxId) ? negativeTtl : ttl)));
+    }
+
+    // Cache keys must compare by value whatever the implementation of the 3PIDs given to us
+    private static _ThreePid asKey(_ThreePid threePid) {
+        if (threePid instanceof ThreePid) {
+            return threePid;
+        }
+        return new ThreePid(threePid.getMedium(), threePid.getAddress());
+    }
+
+    @Override
+    public Optional<_ThreePidMapping> find(_ThreePid threePid) {
+        _ThreePid key = asKey(threePid);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = findCached(key, now);
+        if (Objects.nonNull(entry)) {
+            return Optional.ofNullable(entry.mxId).map(mxId -> new ThreePidMapping(key, mxId));
+        }
+
+        HttpUrl url = getIdentityPath(lookupPath)
+                .addQueryParameter("medium", key.getMedium())
+                .addQueryParameter("address", key.getAddress())
+                .build();
+        JsonObject body = GsonUtil.parseObj(execute(newRequest(lookupPath, url).build()));
+        _MatrixID mxId = GsonUtil.findString(body, "mxid").map(MatrixID::asAcceptable).orElse(null);
+        putCached(key, mxId, now);
+        return Optional.ofNullable(mxId).map(id -> new ThreePidMapping(key, id));
+    }
+
+    @Override
+    public List<_ThreePidMapping> find(List<_ThreePid> threePidList) {
+        long now = System.currentTimeMillis();
+        List<_ThreePidMapping> mappings = new ArrayList<>();
+        List<_ThreePid> missing = new ArrayList<>();
+        Set<_ThreePid> seen = new HashSet<>();
+        for (_ThreePid threePid : threePidList) {
+            _ThreePid key = asKey(threePid);
+            if (!seen.add(key)) {
+                continue;
+            }
+
+            CacheEntry entry = findCached(key, now);
+            if (Objects.isNull(entry)) {
+                missing.add(key);
+            } else if (Objects.nonNull(entry.mxId)) {
+                mappings.add(new ThreePidMapping(key, entry.mxId));
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return mappings;
+        }
+
+        List<List<_ThreePid>> batches = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i += batchSize) {
+            batches.add(missing.subList(i, Math.min(missing.size(), i + batchSize)));
+        }
+
+        if (batches.size() == 1) {
+            mappings.addAll(lookup(batches.get(0), now));
+            return mappings;
+        }
+
+        List<Future<List<_ThreePidMapping>>> results = new ArrayList<>();
+        for (List<_ThreePid> batch : batches) {
+            results.add(getExecutor().submit(() -> lookup(batch, now)));
+        }
+
+        RuntimeException error = null;
+        for (Future<List<_ThreePidMapping>> result : results) {
+            try {
+                mappings.addAll(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.forEach(f -> f.cancel(true));
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // Other batches are still waited for so their results are cached
+                if (Objects.isNull(error)) {
+                    error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            }
+        }
+
+        if (Objects.nonNull(error)) {
+            throw error;
+        }
+
+        return mappings;
+    }
+
+    private List<_ThreePidMapping> lookup(List<_ThreePid> batch, long now) {
+        JsonArray threePids = new JsonArray();
+        for (_ThreePid threePid : batch) {
+            threePids.add(GsonUtil.asArray(threePid.getMedium(), threePid.getAddress()));
+        }
+        JsonObject reqBody = new JsonObject();
+        reqBody.add("threepids", threePids);
+
+        Request request = newRequest(bulkLookupPath, getIdentityPath(bulkLookupPath).build())
+                .post(RequestBody.create(JSON, reqBody.toString()))
+                .build();
+        JsonObject resBody = GsonUtil.parseObj(execute(request));
+
+        Map<_ThreePid, _MatrixID> found = new HashMap<>();
+        for (JsonElement el : GsonUtil.findArray(resBody, "threepids").orElseGet(JsonArray::new)) {
+            if (!el.isJsonArray() || el.getAsJsonArray().size() < 3) {
+                continue;
+            }
+
+            JsonArray mapping = el.getAsJsonArray();
+            _ThreePid threePid = new ThreePid(mapping.get(0).getAsString(), mapping.get(1).getAsString());
+            found.put(threePid, MatrixID.asAcceptable(mapping.get(2).getAsString()));
+        }
+
+        List<_ThreePidMapping> mappings = new ArrayList<>();
+        for (_ThreePid threePid : batch) {
+            _MatrixID mxId = found.get(threePid);
+            putCached(threePid, mxId, now);
+            if (Objects.nonNull(mxId)) {
+                mappings.add(new ThreePidMapping(threePid, mxId));
+            }
+        }
+        return mappings;
+    }
+
+}
@@ -26,11 +26,14 @@ import com.google.gson.JsonObject;
 import io.kamax.matrix.*;
 import io.kamax.matrix.hs._MatrixRoom;
 import io.kamax.matrix.json.GsonUtil;
+import io.kamax.matrix.json.MatrixJson;
 import io.kamax.matrix.json.RoomMessageChunkResponseJson;
 import io.kamax.matrix.json.RoomMessageFormattedTextPutBody;
 import io.kamax.matrix.json.RoomMessageTextPutBody;
 import io.kamax.matrix.json.event.MatrixJsonPersistentEvent;
 import io.kamax.matrix.room.MatrixRoomMessageChunk;
+import io.kamax.matrix.room.RoomStateBatch;
+import io.kamax.matrix.room.RoomStateStore;
 import io.kamax.matrix.room._MatrixRoomMessageChunk;
 import io.kamax.matrix.room._MatrixRoomMessageChunkOptions;
 import okhttp3.HttpUrl;
@@ -47,6 +50,8 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
@@ -56,6 +61,23 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
     public static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
 
+    private static final MatrixPathTemplate statePath = MatrixPathTemplate.client("rooms/{roomId}/state/{eventType}");
+    private static final MatrixPathTemplate stateKeyPath = MatrixPathTemplate
+            .client("rooms/{roomId}/state/{eventType}/{stateKey}");
+    private static final MatrixPathTemplate joinPath = MatrixPathTemplate.client("rooms/{roomId}/join");
+    private static final MatrixPathTemplate leavePath = MatrixPathTemplate.client("rooms/{roomId}/leave");
+    private static final MatrixPathTemplate sendPath = MatrixPathTemplate
+            .client("rooms/{roomId}/send/{eventType}/{txnId}");
+    private static final MatrixPathTemplate receiptPath = MatrixPathTemplate
+            .client("rooms/{roomId}/receipt/{receiptType}/{eventId}");
+    private static final MatrixPathTemplate invitePath = MatrixPathTemplate.client("rooms/{roomId}/invite");
+    private static final MatrixPathTemplate kickPath = MatrixPathTemplate.client("rooms/{roomId}/kick");
+    private static final MatrixPathTemplate joinedMembersPath = MatrixPathTemplate
+            .client("rooms/{roomId}/joined_members");
+    private static final MatrixPathTemplate messagesPath = MatrixPathTemplate.client("rooms/{roomId}/messages");
+
+    private static final AtomicLong transactionCounter = new AtomicLong();
+
     private String roomId;
 
     public MatrixHttpRoom(MatrixClientContext context, String roomId) {
@@ -63,12 +85,9 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
         this.roomId = roomId;
     }
 
-    @Override
-    protected HttpUrl.Builder getClientPathBuilder(String action) {
-        HttpUrl base = super.getClientPathBuilder(action).build();
-
-        // %7BroomId%7D is the URL encoded format of {roomId}
-        return Objects.requireNonNull(HttpUrl.parse(base.toString().replace("%7BroomId%7D", roomId))).newBuilder();
+    public MatrixHttpRoom(AMatrixHttpClient parent, String roomId) {
+        super(parent);
+        this.roomId = roomId;
     }
 
     @Override
@@ -95,7 +114,7 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
     public Optional<_MatrixContent> getAvatar() {
         return getAvatarUrl().flatMap(url -> {
             try {
-                return Optional.of(new MatrixHttpContent(context, new URI(url)));
+                return Optional.of(new MatrixHttpContent(this, new URI(url)));
             } catch (URISyntaxException e) {
                 log.debug("{} is not a valid URI for avatar, returning empty", url);
                 return Optional.empty();
@@ -105,42 +124,80 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public Optional<JsonObject> getState(String type) {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/state/" + type);
-        Request req = new Request.Builder()
-                .url(path)
-                .build();
-        MatrixHttpRequest request = new MatrixHttpRequest(req);
+        return getState(newRequestWithAccessToken(statePath, roomId, type), type, "");
+    }
+
+    @Override
+    public Optional<JsonObject> getState(String type, String key) {
+        return getState(newRequestWithAccessToken(stateKeyPath, roomId, type, key), type, key);
+    }
+
+    private Optional<JsonObject> getState(Request.Builder builder, String type, String key) {
+        MatrixHttpRequest request = new MatrixHttpRequest(builder.build());
         request.addIgnoredErrorCode(404);
         String body = execute(request);
+        Optional<RoomStateStore> snapshot = getStateSnapshot(roomId);
         if (StringUtils.isBlank(body)) {
+            snapshot.ifPresent(s -> s.remove(type, key));
             return Optional.empty();
         }
 
-        return Optional.of(GsonUtil.parseObj(body));
+        JsonObject content = GsonUtil.parseObj(body);
+        snapshot.ifPresent(s -> s.put(type, key, content));
+        return Optional.of(content);
     }
 
     @Override
-    public Optional<JsonObject> getState(String type, String key) {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/state/" + type + "/" + key);
-        Request req = new Request.Builder()
-                .url(path)
-                .build();
-        MatrixHttpRequest request = new MatrixHttpRequest(req);
-        request.addIgnoredErrorCode(404);
-        String body = execute(request);
-        if (StringUtils.isBlank(body)) {
+    public Optional<String> setState(String type, String key, JsonObject content) {
+        boolean noKey = StringUtils.isEmpty(key);
+        String stateKey = noKey ? "" : key;
+        Optional<RoomStateStore> snapshot = getStateSnapshot(roomId);
+        Optional<JsonObject> current = snapshot.isPresent() && snapshot.get().contains(type, stateKey)
+                ? snapshot.get().getContent(type, stateKey)
+                : (noKey ? getState(type) : getState(type, key));
+        if (current.isPresent()
+                && MatrixJson.encodeCanonical(current.get()).equals(MatrixJson.encodeCanonical(content))) {
+            log.debug("State {} '{}' of {} is unchanged, not sending it", type, key, roomId);
             return Optional.empty();
         }
 
-        return Optional.of(GsonUtil.parseObj(body));
+        RequestBody body = RequestBody.create(JSON, gson.toJson(content));
+        Request req = (noKey ? newRequestWithAccessToken(statePath, roomId, type)
+                : newRequestWithAccessToken(stateKeyPath, roomId, type, key))
+                .put(body)
+                .build();
+        String resp_body = execute(req);
+        String eventId = GsonUtil.getStringOrThrow(GsonUtil.parseObj(resp_body), "event_id");
+        snapshot.ifPresent(s -> s.put(type, stateKey, content));
+        return Optional.of(eventId);
+    }
+
+    @Override
+    public List<RoomStateBatch.Outcome> setStates(RoomStateBatch batch) {
+        List<Supplier<RoomStateBatch.Outcome>> tasks = batch.getEntries().stream()
+                .map(entry -> (Supplier<RoomStateBatch.Outcome>) () -> setState(entry))
+                .collect(Collectors.toList());
+        int concurrency = batch.getConcurrency() > 0 ? batch.getConcurrency() : getMaxRequestsPerHost();
+        return executeAll(tasks, concurrency);
+    }
+
+    private RoomStateBatch.Outcome setState(RoomStateBatch.Entry entry) {
+        try {
+            Optional<String> eventId = setState(entry.getType(), entry.getKey(), entry.getContent());
+            RoomStateBatch.Status status = eventId.isPresent() ? RoomStateBatch.Status.Sent
+                    : RoomStateBatch.Status.Unchanged;
+            return new RoomStateBatch.Outcome(entry, status, eventId.orElse(null), null);
+        } catch (RuntimeException e) {
+            log.debug("Setting state {} '{}' of {} failed: {}", entry.getType(), entry.getKey(), roomId,
+                    e.getMessage());
+            return new RoomStateBatch.Outcome(entry, RoomStateBatch.Status.Failed, null, e);
+        }
     }
 
     @Override
     public void join() {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/join");
         RequestBody body = RequestBody.create(JSON, gson.toJson("{}"));
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(joinPath, roomId)
                 .post(body)
                 .build();
         execute(req);
@@ -158,10 +215,8 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public void leave() {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/leave");
         RequestBody body = RequestBody.create(JSON, gson.toJson("{}"));
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(leavePath, roomId)
                 .post(body)
                 .build();
         MatrixHttpRequest request = new MatrixHttpRequest(req);
@@ -187,13 +242,15 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
         }
     }
 
+    // Homeservers deduplicate on the transaction ID, so it must stay unique within the same millisecond
+    private static String nextTransactionId() {
+        return System.currentTimeMillis() + "." + transactionCounter.incrementAndGet();
+    }
+
     @Override
     public String sendEvent(String type, JsonObject content) {
-        // FIXME URL encoding
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/send/" + type + "/" + System.currentTimeMillis());
         RequestBody body = RequestBody.create(JSON, gson.toJson(content));
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(sendPath, roomId, type, nextTransactionId())
                 .put(body)
                 .build();
         String resp_body = execute(req);
@@ -228,10 +285,8 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public void sendReceipt(String type, String eventId) {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/receipt/" + type + "/" + eventId);
         RequestBody body = RequestBody.create(JSON, gson.toJson("{}"));
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(receiptPath, roomId, type, eventId)
                 .post(body)
                 .build();
         execute(req);
@@ -239,10 +294,22 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public void invite(_MatrixID mxId) {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/invite");
         RequestBody body = RequestBody.create(JSON, gson.toJson(GsonUtil.makeObj("user_id", mxId.getId())));
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(invitePath, roomId)
+                .post(body)
+                .build();
+        execute(req);
+    }
+
+    @Override
+    public void kick(_MatrixID mxId, String reason) {
+        JsonObject content = GsonUtil.makeObj("user_id", mxId.getId());
+        if (Objects.nonNull(reason)) {
+            content.addProperty("reason", reason);
+        }
+
+        RequestBody body = RequestBody.create(JSON, gson.toJson(content));
+        Request req = newRequestWithAccessToken(kickPath, roomId)
                 .post(body)
                 .build();
         execute(req);
@@ -250,9 +317,7 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public List<_MatrixUserProfile> getJoinedUsers() {
-        HttpUrl path = getClientPathWithAccessToken("rooms/{roomId}/joined_members");
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(joinedMembersPath, roomId)
                 .build();
         String body = execute(req);
 
@@ -261,7 +326,7 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
             JsonObject joinedUsers = jsonParser.parse(body).getAsJsonObject().get("joined").getAsJsonObject();
             ids = joinedUsers.entrySet().stream().filter(e -> e.getValue().isJsonObject()).map(entry -> {
                 JsonObject obj = entry.getValue().getAsJsonObject();
-                return new MatrixHttpUser(getContext(), MatrixID.asAcceptable(entry.getKey())) {
+                return new MatrixHttpUser(this, MatrixID.asAcceptable(entry.getKey())) {
 
                     @Override
                     public Optional<String> getName() {
@@ -276,7 +341,7 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
                             } catch (URISyntaxException e) {
                                 return Optional.empty();
                             }
-                        }).map(uri -> new MatrixHttpContent(getContext(), uri));
+                        }).map(uri -> new MatrixHttpContent(this, uri));
                     }
 
                 };
@@ -288,14 +353,13 @@ public class MatrixHttpRoom extends AMatrixHttpClient implements _MatrixRoom {
 
     @Override
     public _MatrixRoomMessageChunk getMessages(_MatrixRoomMessageChunkOptions options) {
-        HttpUrl.Builder builder = getClientPathBuilder("rooms/{roomId}/messages");
+        HttpUrl.Builder builder = getPath(messagesPath, roomId);
         builder.addQueryParameter("from", options.getFromToken());
         builder.addQueryParameter("dir", options.getDirection());
         options.getToToken().ifPresent(token -> builder.addQueryParameter("to", token));
         options.getLimit().ifPresent(limit -> builder.addQueryParameter("limit", limit.toString()));
 
-        Request req = new Request.Builder()
-                .url(getWithAccessToken(builder))
+        Request req = newRequestWithAccessToken(messagesPath, builder.build())
                 .build();
         String bodyRaw = execute(req);
         RoomMessageChunkResponseJson body = GsonUtil.get().fromJson(bodyRaw, RoomMessageChunkResponseJson.class);
@@ -27,7 +27,6 @@ import io.kamax.matrix._MatrixID;
 import io.kamax.matrix._MatrixUser;
 import io.kamax.matrix.client.regular.Presence;
 import io.kamax.matrix.json.GsonUtil;
-import okhttp3.HttpUrl;
 import okhttp3.Request;
 
 import org.apache.commons.lang3.StringUtils;
@@ -41,6 +40,10 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
 
     private Logger log = LoggerFactory.getLogger(MatrixHttpUser.class);
 
+    private static final MatrixPathTemplate displayNamePath = MatrixPathTemplate.client("profile/{userId}/displayname");
+    private static final MatrixPathTemplate avatarUrlPath = MatrixPathTemplate.client("profile/{userId}/avatar_url");
+    private static final MatrixPathTemplate presencePath = MatrixPathTemplate.client("presence/{userId}/status");
+
     private _MatrixID mxId;
 
     public MatrixHttpUser(MatrixClientContext context, _MatrixID mxId) {
@@ -49,6 +52,12 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
         this.mxId = mxId;
     }
 
+    public MatrixHttpUser(AMatrixHttpClient parent, _MatrixID mxId) {
+        super(parent);
+
+        this.mxId = mxId;
+    }
+
     @Override
     public _MatrixID getId() {
         return mxId;
@@ -56,9 +65,7 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
 
     @Override
     public Optional<String> getName() {
-        HttpUrl path = getClientPathWithAccessToken("profile/" + mxId.getId() + "/displayname");
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(displayNamePath, mxId.getId())
                 .build();
 
 
@@ -70,9 +77,7 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
 
     @Override
     public Optional<String> getAvatarUrl() {
-        HttpUrl path = getClientPathWithAccessToken("profile/" + mxId.getId() + "/avatar_url");
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(avatarUrlPath, mxId.getId())
                 .build();
         MatrixHttpRequest request = new MatrixHttpRequest(req);
         request.addIgnoredErrorCode(404);
@@ -84,7 +89,7 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
     public Optional<_MatrixContent> getAvatar() {
         return getAvatarUrl().flatMap(uri -> {
             try {
-                return Optional.of(new MatrixHttpContent(getContext(), new URI(uri)));
+                return Optional.of(new MatrixHttpContent(this, new URI(uri)));
             } catch (URISyntaxException e) {
                 log.debug("{} is not a valid URI for avatar, returning empty", uri);
                 return Optional.empty();
@@ -94,9 +99,7 @@ public class MatrixHttpUser extends AMatrixHttpClient implements _MatrixUser {
 
     @Override
     public Optional<_Presence> getPresence() {
-        HttpUrl path = getClientPathWithAccessToken("presence/" + mxId.getId() + "/status");
-        Request req = new Request.Builder()
-                .url(path)
+        Request req = newRequestWithAccessToken(presencePath, mxId.getId())
                 .build();
 
         MatrixHttpRequest request = new MatrixHttpRequest(req);
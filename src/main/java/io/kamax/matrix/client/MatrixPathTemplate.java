@@ -0,0 +1,166 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.HttpUrl;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Endpoint path of the Matrix API, parsed once and expanded for each request.
+ *
+ * Templates use <code>{name}</code> for path parameters, which are given in order of appearance when expanding.
+ * Parameters are always URL encoded as a single path segment, while literal parts are encoded when the template is
+ * built.
+ */
+public class MatrixPathTemplate {
+
+    private static final HttpUrl encodingBase = HttpUrl.parse("http://localhost/");
+
+    public static MatrixPathTemplate client(String action) {
+        return new MatrixPathTemplate("client", "r0", action);
+    }
+
+    public static MatrixPathTemplate media(String action) {
+        return new MatrixPathTemplate("media", "v1", action);
+    }
+
+    public static MatrixPathTemplate identity(String action) {
+        return new MatrixPathTemplate("identity", "api/v1", action);
+    }
+
+    private static boolean isParameter(String segment) {
+        return segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static String encode(List<String> literals) {
+        HttpUrl.Builder builder = encodingBase.newBuilder();
+        literals.forEach(builder::addPathSegment);
+        return builder.build().encodedPath().substring(1);
+    }
+
+    private final String template;
+    private final String[] parts;
+    private final String[] parameters;
+
+    /**
+     * Build a new template for an endpoint.
+     *
+     * @param module
+     *            The API module, like client or media
+     * @param version
+     *            The version of the API module, which can be empty
+     * @param action
+     *            The path of the endpoint within the module, with <code>{name}</code> for parameters
+     */
+    public MatrixPathTemplate(String module, String version, String action) {
+        List<String> segments = new ArrayList<>();
+        segments.add("_matrix");
+        for (String part : new String[] { module, version, action }) {
+            for (String segment : StringUtils.split(part, '/')) {
+                segments.add(segment);
+            }
+        }
+        this.template = "/" + String.join("/", segments);
+
+        // Consecutive literal segments are merged and encoded once, parameters are represented by null
+        List<String> parts = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        for (String segment : segments) {
+            if (!isParameter(segment)) {
+                literals.add(segment);
+                continue;
+            }
+
+            if (!literals.isEmpty()) {
+                parts.add(encode(literals));
+                literals.clear();
+            }
+            parts.add(null);
+            parameters.add(segment.substring(1, segment.length() - 1));
+        }
+        if (!literals.isEmpty()) {
+            parts.add(encode(literals));
+        }
+
+        this.parts = parts.toArray(new String[0]);
+        this.parameters = parameters.toArray(new String[0]);
+    }
+
+    /**
+     * Get the template, as given when built.
+     *
+     * @return The template, including the module and version prefix.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Get the names of the parameters, in the order they are expected when expanding.
+     *
+     * @return The parameter names.
+     */
+    public String[] getParameters() {
+        return parameters.clone();
+    }
+
+    /**
+     * Expand this template on a base URL.
+     *
+     * @param base
+     *            The base URL
+     * @param values
+     *            The value of each parameter, in order
+     * @return A builder with the full path set.
+     */
+    public HttpUrl.Builder expand(HttpUrl base, String... values) {
+        if (values.length != parameters.length) {
+            throw new IllegalArgumentException(
+                    template + " requires " + parameters.length + " parameter(s) but got " + values.length);
+        }
+
+        HttpUrl.Builder builder = base.newBuilder();
+        int index = 0;
+        for (String part : parts) {
+            if (part != null) {
+                builder.addEncodedPathSegments(part);
+            } else {
+                String value = values[index];
+                builder.addPathSegment(Objects.requireNonNull(value, "Value for " + parameters[index]));
+                index++;
+            }
+        }
+
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Share the result of a call between the threads asking for the same key while it is in flight.
+ *
+ * Nothing is kept once the call is over: a thread coming after it gets a fresh call. A call made again from the
+ * thread doing it, like a retry, is not joined to itself.
+ */
+class RequestCoalescer {
+
+    private static class Flight {
+
+        private final Thread leader = Thread.currentThread();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+    }
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key
+     *            What identifies identical calls
+     * @param call
+     *            The call to make if none is in flight for the key
+     * @param onJoined
+     *            Run when the call in flight is joined instead of making a new one
+     * @return The result of the call, made by this thread or another one.
+     */
+    String execute(String key, Supplier<String> call, Runnable onJoined) {
+        Flight flight = new Flight();
+        Flight current = inFlight.putIfAbsent(key, flight);
+        if (current != null) {
+            if (current.leader == Thread.currentThread()) {
+                return call.get();
+            }
+
+            onJoined.run();
+            return join(current);
+        }
+
+        String result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+
+        inFlight.remove(key, flight);
+        flight.result.complete(result);
+        return result;
+    }
+
+    private String join(Flight flight) {
+        try {
+            return flight.result.join();
+        } catch (CompletionException e) {
+            // Followers get the error of the call they joined, as they would have made the same one
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+}
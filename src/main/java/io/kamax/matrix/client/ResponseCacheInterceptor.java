@@ -0,0 +1,288 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep successful GET responses in memory, so reading the same resource again is answered locally while fresh, or by
+ * a conditional request once stale.
+ *
+ * A response is fresh for the <code>max-age</code> given by the server, else for the TTL set for its endpoint family,
+ * matched on the path template of the request. Stale responses with an <code>ETag</code> or a
+ * <code>Last-Modified</code> header are revalidated, and a <code>304</code> answer refreshes them. Responses with
+ * <code>no-store</code> are never kept, and <code>no-cache</code> ones are always revalidated.
+ *
+ * Responses are kept per access token, and a request other than GET on a URL drops what is kept for it, once done.
+ * The cache is bounded by the size of the bodies it holds, and the least recently used URLs are dropped first.
+ */
+public class ResponseCacheInterceptor implements Interceptor {
+
+    public static final String versions = "/_matrix/client/versions";
+    public static final String profile = "/_matrix/client/r0/profile/";
+    public static final String roomState = "/_matrix/client/r0/rooms/{roomId}/state";
+    public static final String roomDirectory = "/_matrix/client/r0/directory/room/";
+
+    private static class Entry {
+
+        private final Response response;
+        private final byte[] body;
+        private final long expires;
+
+        Entry(Response response, byte[] body, long expires) {
+            this.response = response;
+            this.body = body;
+            this.expires = expires;
+        }
+
+        Response toResponse(Request request) {
+            ResponseBody responseBody = ResponseBody.create(response.body().contentType(), body);
+            return response.newBuilder().request(request).body(responseBody).build();
+        }
+
+        boolean hasValidators() {
+            return response.header("ETag") != null || response.header("Last-Modified") != null;
+        }
+
+    }
+
+    private long maxSize;
+    private long size;
+    private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+
+    // Keyed by URL then by access token, so a write to a URL drops it for all tokens at once
+    private final LinkedHashMap<String, Map<String, Entry>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Build a cache of 10 MiB, which keeps the homeserver versions for an hour unless told otherwise by the server.
+     */
+    public ResponseCacheInterceptor() {
+        this(10 * 1024 * 1024);
+    }
+
+    /**
+     * @param maxSize
+     *            The maximum size of the kept bodies, in bytes. 0 to keep nothing.
+     */
+    public ResponseCacheInterceptor(long maxSize) {
+        this.maxSize = maxSize;
+        setTtl(versions, TimeUnit.HOURS.toMillis(1));
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized ResponseCacheInterceptor setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+
+        return this;
+    }
+
+    /**
+     * Set how long responses of an endpoint family are fresh when the server does not say.
+     *
+     * @param templatePrefix
+     *            The start of the path templates of the family, like {@link #profile}. The longest matching prefix is
+     *            used.
+     * @param ttl
+     *            The time in milliseconds, or 0 to only keep responses which can be revalidated
+     * @return This cache.
+     */
+    public ResponseCacheInterceptor setTtl(String templatePrefix, long ttl) {
+        ttls.put(templatePrefix, ttl);
+
+        return this;
+    }
+
+    public long getTtl(String template) {
+        String prefix = "";
+        long ttl = 0;
+        for (Map.Entry<String, Long> rule : ttls.entrySet()) {
+            if (template.startsWith(rule.getKey()) && rule.getKey().length() >= prefix.length()) {
+                prefix = rule.getKey();
+                ttl = rule.getValue();
+            }
+        }
+        return ttl;
+    }
+
+    /**
+     * @return The number of requests answered without going to the server.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of requests answered with a kept body after the server answered <code>304</code>.
+     */
+    public long getRevalidated() {
+        return revalidated.get();
+    }
+
+    /**
+     * @return The number of requests for which the server sent a body.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The size of the kept bodies, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        // State with an empty key can be written with a trailing slash and read without
+        String url = StringUtils.removeEnd(request.url().toString(), "/");
+        if (!"GET".equals(request.method())) {
+            try {
+                return chain.proceed(request);
+            } finally {
+                remove(url);
+            }
+        }
+
+        if (getMaxSize() <= 0) {
+            return chain.proceed(request);
+        }
+
+        String token = StringUtils.defaultString(request.header("Authorization"));
+        Entry entry = request.cacheControl().noStore() ? null : get(url, token);
+        if (entry != null && !request.cacheControl().noCache() && System.currentTimeMillis() < entry.expires) {
+            hits.incrementAndGet();
+            return entry.toResponse(request);
+        }
+
+        Request networkRequest = request;
+        if (entry != null && entry.hasValidators()) {
+            Request.Builder builder = request.newBuilder();
+            String etag = entry.response.header("ETag");
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            String lastModified = entry.response.header("Last-Modified");
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            networkRequest = builder.build();
+        }
+
+        Response response = chain.proceed(networkRequest);
+        if (response.code() == 304 && networkRequest != request) {
+            response.close();
+            revalidated.incrementAndGet();
+            put(url, token, new Entry(entry.response, entry.body, getExpires(request, response)));
+            return entry.toResponse(request);
+        }
+
+        misses.incrementAndGet();
+        if (response.code() != 200 || request.cacheControl().noStore() || response.cacheControl().noStore()) {
+            return response;
+        }
+
+        long expires = getExpires(request, response);
+        if (expires <= System.currentTimeMillis() && response.header("ETag") == null
+                && response.header("Last-Modified") == null) {
+            return response;
+        }
+
+        byte[] body = response.body().bytes();
+        Response kept = response.newBuilder().body(ResponseBody.create(response.body().contentType(), body)).build();
+        put(url, token, new Entry(kept, body, expires));
+        return kept;
+    }
+
+    private long getExpires(Request request, Response response) {
+        CacheControl cacheControl = response.cacheControl();
+        long freshness;
+        if (cacheControl.maxAgeSeconds() >= 0) {
+            freshness = TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds());
+        } else if (cacheControl.noCache()) {
+            freshness = 0;
+        } else {
+            MatrixPathTemplate template = request.tag(MatrixPathTemplate.class);
+            freshness = template != null ? getTtl(template.getTemplate()) : 0;
+        }
+        return System.currentTimeMillis() + freshness;
+    }
+
+    private synchronized Entry get(String url, String token) {
+        Map<String, Entry> byToken = entries.get(url);
+        return byToken != null ? byToken.get(token) : null;
+    }
+
+    private synchronized void put(String url, String token, Entry entry) {
+        if (entry.body.length > maxSize) {
+            return;
+        }
+
+        Entry old = entries.computeIfAbsent(url, k -> new HashMap<>()).put(token, entry);
+        size += entry.body.length - (old != null ? old.body.length : 0);
+        evict();
+    }
+
+    private synchronized void remove(String url) {
+        Map<String, Entry> byToken = entries.remove(url);
+        if (byToken != null) {
+            byToken.values().forEach(entry -> size -= entry.body.length);
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map<String, Entry>> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            it.next().values().forEach(entry -> size -= entry.body.length);
+            it.remove();
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ import com.github.dmstocking.optional.java.util.Optional;
 import io.kamax.matrix._MatrixContent;
 import io.kamax.matrix._MatrixID;
 import io.kamax.matrix._MatrixUser;
+import io.kamax.matrix.client.filter.SyncFilter;
 import io.kamax.matrix.hs._MatrixRoom;
 import io.kamax.matrix.room.RoomAlias;
 import io.kamax.matrix.room._RoomAliasLookup;
@@ -62,6 +63,26 @@ public interface _MatrixClient extends _MatrixClientRaw {
 
     _SyncData sync(_SyncOptions options);
 
+    /**
+     * Upload a sync filter for the current user.
+     *
+     * @param filter
+     *            The filter.
+     * @return The ID of the filter, to use in the sync options.
+     */
+    String createFilter(SyncFilter filter);
+
+    SyncFilter getFilter(String filterId);
+
+    /**
+     * Get the ID of a sync filter for the current user, uploading it only if it was not already.
+     *
+     * @param filter
+     *            The filter.
+     * @return The ID of the filter, to use in the sync options.
+     */
+    String getFilterId(SyncFilter filter);
+
     _MatrixContent getMedia(String mxUri) throws IllegalArgumentException;
 
     _MatrixContent getMedia(URI mxUri) throws IllegalArgumentException;
@@ -21,10 +21,10 @@
 package io.kamax.matrix.client.as;
 
 import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixPathTemplate;
 import io.kamax.matrix.client._MatrixClient;
 import io.kamax.matrix.client.regular.MatrixHttpClient;
 import io.kamax.matrix.json.VirtualUserRegistrationBody;
-import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -34,6 +34,8 @@ import org.slf4j.LoggerFactory;
 
 public class MatrixApplicationServiceClient extends MatrixHttpClient implements _MatrixApplicationServiceClient {
 
+    private static final MatrixPathTemplate registerPath = MatrixPathTemplate.client("register");
+
     private Logger log = LoggerFactory.getLogger(MatrixApplicationServiceClient.class);
     public static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
@@ -52,10 +54,8 @@ public class MatrixApplicationServiceClient extends MatrixHttpClient implements
     @Override
     public _MatrixClient createUser(String localpart) {
         log.debug("Creating new user {}", localpart);
-        HttpUrl path = getClientPathWithAccessToken("/register");
         RequestBody body = RequestBody.create(JSON, gson.toJson(new VirtualUserRegistrationBody(localpart)));
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(registerPath)
                 .post(body)
                 .build();
         execute(request);
@@ -0,0 +1,105 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.filter;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.json.GsonUtil;
+
+import java.util.Collection;
+
+/**
+ * Filter of events, as used for the sections of a sync filter.
+ *
+ * The room and lazy-loading options only apply to the room sections of a filter.
+ */
+public class EventFilter {
+
+    public static class Builder {
+
+        private final JsonObject obj = new JsonObject();
+
+        public EventFilter get() {
+            return new EventFilter(obj);
+        }
+
+        public Builder setLimit(int limit) {
+            obj.addProperty("limit", limit);
+            return this;
+        }
+
+        public Builder setTypes(Collection<String> types) {
+            obj.add("types", GsonUtil.asArray(types));
+            return this;
+        }
+
+        public Builder setNotTypes(Collection<String> notTypes) {
+            obj.add("not_types", GsonUtil.asArray(notTypes));
+            return this;
+        }
+
+        public Builder setSenders(Collection<String> senders) {
+            obj.add("senders", GsonUtil.asArray(senders));
+            return this;
+        }
+
+        public Builder setNotSenders(Collection<String> notSenders) {
+            obj.add("not_senders", GsonUtil.asArray(notSenders));
+            return this;
+        }
+
+        public Builder setRooms(Collection<String> rooms) {
+            obj.add("rooms", GsonUtil.asArray(rooms));
+            return this;
+        }
+
+        public Builder setNotRooms(Collection<String> notRooms) {
+            obj.add("not_rooms", GsonUtil.asArray(notRooms));
+            return this;
+        }
+
+        public Builder setContainsUrl(boolean containsUrl) {
+            obj.addProperty("contains_url", containsUrl);
+            return this;
+        }
+
+        public Builder setLazyLoadMembers(boolean lazyLoadMembers) {
+            obj.addProperty("lazy_load_members", lazyLoadMembers);
+            return this;
+        }
+
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    private final String json;
+
+    private EventFilter(JsonObject obj) {
+        this.json = obj.toString();
+    }
+
+    public JsonObject toJson() {
+        return GsonUtil.parseObj(json);
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.filter;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.codec.MxSha256;
+import io.kamax.matrix.json.GsonUtil;
+import io.kamax.matrix.json.MatrixJson;
+
+import java.util.Collection;
+
+/**
+ * Filter for the sync call, to only receive the events and rooms which are needed.
+ *
+ * Filters are immutable and kept in canonical JSON form, so equal filters have the same hash whatever the order they
+ * were built in. The hash is used to find the ID of a filter which was already uploaded.
+ */
+public class SyncFilter {
+
+    public static class Builder {
+
+        private final JsonObject obj = new JsonObject();
+        private final JsonObject room = new JsonObject();
+
+        public SyncFilter get() {
+            JsonObject filter = GsonUtil.parseObj(obj.toString());
+            if (room.size() > 0) {
+                filter.add("room", GsonUtil.parseObj(room.toString()));
+            }
+            return new SyncFilter(filter);
+        }
+
+        public Builder setEventFields(Collection<String> eventFields) {
+            obj.add("event_fields", GsonUtil.asArray(eventFields));
+            return this;
+        }
+
+        public Builder setEventFormat(String eventFormat) {
+            obj.addProperty("event_format", eventFormat);
+            return this;
+        }
+
+        public Builder setPresence(EventFilter presence) {
+            obj.add("presence", presence.toJson());
+            return this;
+        }
+
+        public Builder setAccountData(EventFilter accountData) {
+            obj.add("account_data", accountData.toJson());
+            return this;
+        }
+
+        public Builder setRooms(Collection<String> rooms) {
+            room.add("rooms", GsonUtil.asArray(rooms));
+            return this;
+        }
+
+        public Builder setNotRooms(Collection<String> notRooms) {
+            room.add("not_rooms", GsonUtil.asArray(notRooms));
+            return this;
+        }
+
+        public Builder setIncludeLeave(boolean includeLeave) {
+            room.addProperty("include_leave", includeLeave);
+            return this;
+        }
+
+        public Builder setTimeline(EventFilter timeline) {
+            room.add("timeline", timeline.toJson());
+            return this;
+        }
+
+        public Builder setState(EventFilter state) {
+            room.add("state", state.toJson());
+            return this;
+        }
+
+        public Builder setEphemeral(EventFilter ephemeral) {
+            room.add("ephemeral", ephemeral.toJson());
+            return this;
+        }
+
+        public Builder setRoomAccountData(EventFilter accountData) {
+            room.add("account_data", accountData.toJson());
+            return this;
+        }
+
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    public static SyncFilter from(JsonObject obj) {
+        return new SyncFilter(obj);
+    }
+
+    private final String json;
+    private final String hash;
+
+    private SyncFilter(JsonObject obj) {
+        this.json = MatrixJson.encodeCanonical(obj);
+        this.hash = new MxSha256().hash(json);
+    }
+
+    public JsonObject toJson() {
+        return GsonUtil.parseObj(json);
+    }
+
+    public String toCanonicalJson() {
+        return json;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SyncFilter)) {
+            return false;
+        }
+        return json.equals(((SyncFilter) o).json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.filter;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Filter IDs kept in a properties file, so they survive restarts and filters are not uploaded again.
+ *
+ * The file is read once, then written again as a whole on every change, through a temporary file so it is never left
+ * half written.
+ */
+public class SyncFilterFileStore implements _SyncFilterStore {
+
+    private final Path file;
+    private final Properties ids = new Properties();
+
+    public SyncFilterFileStore(String path) {
+        this.file = Paths.get(path);
+        if (Files.isDirectory(file)) {
+            throw new IllegalArgumentException("Sync filter file storage " + path + " is a directory");
+        }
+
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                ids.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized Optional<String> findId(String key) {
+        return Optional.ofNullable(ids.getProperty(key));
+    }
+
+    @Override
+    public synchronized void putId(String key, String filterId) {
+        if (filterId.equals(ids.setProperty(key, filterId))) {
+            return;
+        }
+
+        save();
+    }
+
+    @Override
+    public synchronized void removeId(String key) {
+        if (ids.remove(key) != null) {
+            save();
+        }
+    }
+
+    private void save() {
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    ids.store(writer, null);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.filter;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SyncFilterMemoryStore implements _SyncFilterStore {
+
+    private final Map<String, String> ids = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<String> findId(String key) {
+        return Optional.ofNullable(ids.get(key));
+    }
+
+    @Override
+    public void putId(String key, String filterId) {
+        ids.put(key, filterId);
+    }
+
+    @Override
+    public void removeId(String key) {
+        ids.remove(key);
+    }
+
+}
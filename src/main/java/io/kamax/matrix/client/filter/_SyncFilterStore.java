@@ -0,0 +1,38 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.filter;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+/**
+ * Store of the IDs of filters uploaded to homeservers.
+ *
+ * Keys are built by the client from the user and the hash of the filter, so a filter is only uploaded once per user.
+ */
+public interface _SyncFilterStore {
+
+    Optional<String> findId(String key);
+
+    void putId(String key, String filterId);
+
+    void removeId(String key);
+
+}
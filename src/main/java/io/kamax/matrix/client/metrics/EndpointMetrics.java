@@ -0,0 +1,131 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a single endpoint and HTTP method, as recorded by {@link InMemoryMatrixHttpMetrics}.
+ */
+public class EndpointMetrics {
+
+    private final String endpoint;
+    private final String method;
+    private final Histogram latency = new Histogram();
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    public EndpointMetrics(String endpoint, String method) {
+        this.endpoint = endpoint;
+        this.method = method;
+    }
+
+    void recordResponse(int status, long durationNanos, long sent, long received) {
+        latency.record(durationNanos);
+        if (status >= 0 && status < statuses.length()) {
+            statuses.incrementAndGet(status);
+        }
+        bytesSent.add(sent);
+        bytesReceived.add(received);
+    }
+
+    void recordFailure(long durationNanos) {
+        latency.record(durationNanos);
+        failures.increment();
+    }
+
+    void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The latency of responses and failures, in nanoseconds.
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return The number of responses per status code, without the status codes never received.
+     */
+    public Map<Integer, Long> getStatuses() {
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int i = 0; i < statuses.length(); i++) {
+            long count = statuses.get(i);
+            if (count > 0) {
+                result.put(i, count);
+            }
+        }
+        return result;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return The number of requests which were not sent, as they shared the response of an identical one.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+}
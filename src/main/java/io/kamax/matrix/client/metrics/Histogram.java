@@ -0,0 +1,153 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of positive long values, with buckets in the style of HdrHistogram.
+ *
+ * Each power of two is split in 32 linear sub-buckets, so any value is recorded with a relative error below 1/32
+ * (about 3%) over the whole long range, in a fixed 15 KB of counters. Recording never allocates and only touches a
+ * few atomic counters, which makes it cheap enough to sit on every request.
+ *
+ * Reads are not atomic snapshots: values recorded while reading may or may not be included.
+ */
+public class Histogram {
+
+    private static final int subBucketBits = 5;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int linearLimit = subBucketCount * 2;
+    private static final int bucketCount = linearLimit + (63 - subBucketBits - 1) * subBucketCount;
+
+    static int indexOf(long value) {
+        if (value < linearLimit) {
+            return (int) Math.max(0, value);
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        return linearLimit + (shift - 1) * subBucketCount + (int) (value >>> shift) - subBucketCount;
+    }
+
+    static long lowestValueOf(int index) {
+        if (index < linearLimit) {
+            return index;
+        }
+
+        int shift = (index - linearLimit) / subBucketCount + 1;
+        long subBucket = (index - linearLimit) % subBucketCount + subBucketCount;
+        return subBucket << shift;
+    }
+
+    static long highestValueOf(int index) {
+        if (index + 1 >= bucketCount) {
+            return Long.MAX_VALUE;
+        }
+
+        return lowestValueOf(index + 1) - 1;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value
+     *            The value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+
+        current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        long total = getCount();
+        return total == 0 ? 0 : (double) getSum() / total;
+    }
+
+    public long getMin() {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the value under which the given percentage of the recorded values fall.
+     *
+     * @param percentile
+     *            The percentile, between 0 and 100
+     * @return The highest value equivalent to the matching bucket, capped to the maximum recorded value, or 0 if
+     *         nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonObject;
+
+import okhttp3.ConnectionPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keep metrics in memory, to be read with {@link #getEndpoints()} or dumped with {@link #toJson()}.
+ *
+ * A single instance can be shared by several clients, whose calls are then recorded together.
+ */
+public class InMemoryMatrixHttpMetrics implements _MatrixHttpMetrics {
+
+    private static final double[] percentiles = { 50, 90, 99, 99.9 };
+    private static final String[] percentileNames = { "p50", "p90", "p99", "p999" };
+
+    // Keyed by method first, so recording finds its endpoint without building a key
+    private final Map<String, Map<String, EndpointMetrics>> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger poolConnections = new AtomicInteger();
+    private final AtomicInteger poolIdleConnections = new AtomicInteger();
+    private final AtomicInteger poolMaxActiveConnections = new AtomicInteger();
+
+    private EndpointMetrics get(String endpoint, String method) {
+        return endpoints.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(endpoint, e -> new EndpointMetrics(e, method));
+    }
+
+    @Override
+    public void onResponse(String endpoint, String method, int status, long durationNanos, long bytesSent,
+            long bytesReceived) {
+        get(endpoint, method).recordResponse(status, durationNanos, bytesSent, bytesReceived);
+    }
+
+    @Override
+    public void onFailure(String endpoint, String method, long durationNanos) {
+        get(endpoint, method).recordFailure(durationNanos);
+    }
+
+    @Override
+    public void onRateLimited(String endpoint, String method) {
+        get(endpoint, method).recordRateLimited();
+    }
+
+    @Override
+    public void onRetry(String endpoint, String method) {
+        get(endpoint, method).recordRetry();
+    }
+
+    @Override
+    public void onCoalesced(String endpoint, String method) {
+        get(endpoint, method).recordCoalesced();
+    }
+
+    @Override
+    public void onConnectionPool(ConnectionPool pool) {
+        int total = pool.connectionCount();
+        int idle = pool.idleConnectionCount();
+        poolConnections.set(total);
+        poolIdleConnections.set(idle);
+        poolMaxActiveConnections.accumulateAndGet(total - idle, Math::max);
+    }
+
+    public Optional<EndpointMetrics> getEndpoint(String endpoint, String method) {
+        Map<String, EndpointMetrics> byEndpoint = endpoints.get(method);
+        if (byEndpoint == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(byEndpoint.get(endpoint));
+    }
+
+    public List<EndpointMetrics> getEndpoints() {
+        List<EndpointMetrics> result = new ArrayList<>();
+        endpoints.values().forEach(byEndpoint -> result.addAll(byEndpoint.values()));
+        return result;
+    }
+
+    /**
+     * @return The number of open connections the last time a call was over.
+     */
+    public int getPoolConnections() {
+        return poolConnections.get();
+    }
+
+    /**
+     * @return The number of idle connections the last time a call was over.
+     */
+    public int getPoolIdleConnections() {
+        return poolIdleConnections.get();
+    }
+
+    /**
+     * @return The highest number of connections seen in use at once.
+     */
+    public int getPoolMaxActiveConnections() {
+        return poolMaxActiveConnections.get();
+    }
+
+    private double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Dump all metrics, with latencies in milliseconds.
+     *
+     * @return The metrics as a JSON object.
+     */
+    public JsonObject toJson() {
+        JsonObject endpointsJson = new JsonObject();
+        for (EndpointMetrics metrics : getEndpoints()) {
+            JsonObject latency = new JsonObject();
+            latency.addProperty("count", metrics.getLatency().getCount());
+            latency.addProperty("min", toMillis(metrics.getLatency().getMin()));
+            latency.addProperty("mean", metrics.getLatency().getMean() / TimeUnit.MILLISECONDS.toNanos(1));
+            for (int i = 0; i < percentiles.length; i++) {
+                long value = metrics.getLatency().getValueAtPercentile(percentiles[i]);
+                latency.addProperty(percentileNames[i], toMillis(value));
+            }
+            latency.addProperty("max", toMillis(metrics.getLatency().getMax()));
+
+            JsonObject statuses = new JsonObject();
+            metrics.getStatuses().forEach((status, count) -> statuses.addProperty(Integer.toString(status), count));
+
+            JsonObject json = new JsonObject();
+            json.add("latency", latency);
+            json.add("status", statuses);
+            json.addProperty("failures", metrics.getFailures());
+            json.addProperty("rate_limited", metrics.getRateLimited());
+            json.addProperty("retries", metrics.getRetries());
+            json.addProperty("coalesced", metrics.getCoalesced());
+            json.addProperty("bytes_sent", metrics.getBytesSent());
+            json.addProperty("bytes_received", metrics.getBytesReceived());
+            endpointsJson.add(metrics.getMethod() + " " + metrics.getEndpoint(), json);
+        }
+
+        JsonObject pool = new JsonObject();
+        pool.addProperty("connections", getPoolConnections());
+        pool.addProperty("idle", getPoolIdleConnections());
+        pool.addProperty("max_active", getPoolMaxActiveConnections());
+
+        JsonObject json = new JsonObject();
+        json.add("endpoints", endpointsJson);
+        json.add("pool", pool);
+        return json;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import okhttp3.ConnectionPool;
+
+/**
+ * Metrics which are not recorded anywhere, used by default.
+ */
+public class NoopMatrixHttpMetrics implements _MatrixHttpMetrics {
+
+    private static final NoopMatrixHttpMetrics instance = new NoopMatrixHttpMetrics();
+
+    public static NoopMatrixHttpMetrics get() {
+        return instance;
+    }
+
+    @Override
+    public void onResponse(String endpoint, String method, int status, long durationNanos, long bytesSent,
+            long bytesReceived) {
+        // no-op
+    }
+
+    @Override
+    public void onFailure(String endpoint, String method, long durationNanos) {
+        // no-op
+    }
+
+    @Override
+    public void onRateLimited(String endpoint, String method) {
+        // no-op
+    }
+
+    @Override
+    public void onRetry(String endpoint, String method) {
+        // no-op
+    }
+
+    @Override
+    public void onCoalesced(String endpoint, String method) {
+        // no-op
+    }
+
+    @Override
+    public void onConnectionPool(ConnectionPool pool) {
+        // no-op
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import okhttp3.ConnectionPool;
+
+/**
+ * Receive measurements of the calls done by the HTTP clients of the SDK.
+ *
+ * Endpoints are identified by their path template, like <code>/_matrix/client/r0/rooms/{roomId}/join</code>, so IDs
+ * never end up in metric names. Calls which are not made from a template are reported as {@link #unknownEndpoint}.
+ *
+ * Implementations are called on the thread doing the request and must be thread-safe and fast.
+ */
+public interface _MatrixHttpMetrics {
+
+    String unknownEndpoint = "unknown";
+
+    /**
+     * A response was received, whatever its status code.
+     *
+     * @param endpoint
+     *            The path template of the endpoint
+     * @param method
+     *            The HTTP method
+     * @param status
+     *            The HTTP status code
+     * @param durationNanos
+     *            The time from sending the request to reading the whole response body
+     * @param bytesSent
+     *            The size of the request body, 0 if there is none
+     * @param bytesReceived
+     *            The size of the response body
+     */
+    void onResponse(String endpoint, String method, int status, long durationNanos, long bytesSent,
+            long bytesReceived);
+
+    /**
+     * No response could be received, because of a network error or a timeout.
+     *
+     * @param endpoint
+     *            The path template of the endpoint
+     * @param method
+     *            The HTTP method
+     * @param durationNanos
+     *            The time until the call failed
+     */
+    void onFailure(String endpoint, String method, long durationNanos);
+
+    /**
+     * The homeserver answered with a rate limiting error.
+     *
+     * @param endpoint
+     *            The path template of the endpoint
+     * @param method
+     *            The HTTP method
+     */
+    void onRateLimited(String endpoint, String method);
+
+    /**
+     * A request is about to be sent again.
+     *
+     * @param endpoint
+     *            The path template of the endpoint
+     * @param method
+     *            The HTTP method
+     */
+    void onRetry(String endpoint, String method);
+
+    /**
+     * A GET request was not sent, as it joined an identical one in flight and got its response.
+     *
+     * @param endpoint
+     *            The path template of the endpoint
+     * @param method
+     *            The HTTP method
+     */
+    void onCoalesced(String endpoint, String method);
+
+    /**
+     * A call is over and its connection went back to the pool.
+     *
+     * @param pool
+     *            The connection pool of the client, to read from only if needed
+     */
+    void onConnectionPool(ConnectionPool pool);
+
+}
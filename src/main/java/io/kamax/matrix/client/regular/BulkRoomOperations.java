@@ -0,0 +1,322 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+import io.kamax.matrix.MatrixErrorInfo;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.MatrixClientRequestException;
+import io.kamax.matrix.client._MatrixClient;
+import io.kamax.matrix.hs._MatrixRoom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Invite, kick, join or leave for many users or rooms at once, with a fixed number of requests in flight.
+ *
+ * Every target gets an outcome, in the order given, whatever happens to the others. Targets which are already in the
+ * wanted state are found with a single request beforehand and skipped. When the homeserver rate limits a request, all
+ * the requests of the instance wait for the delay it asked for, or a default one, before the request is retried.
+ */
+public class BulkRoomOperations implements AutoCloseable {
+
+    public enum Status {
+
+        /**
+         * The request succeeded.
+         */
+        Success,
+
+        /**
+         * The user was already a member of the room, so no request was sent.
+         */
+        AlreadyMember,
+
+        /**
+         * The homeserver refused the request.
+         */
+        Forbidden,
+
+        /**
+         * The request was still rate limited after the maximum number of retries.
+         */
+        RateLimited,
+
+        /**
+         * The request failed for another reason.
+         */
+        Failed
+
+    }
+
+    public static class Outcome<T> {
+
+        private final T target;
+        private final Status status;
+        private final RuntimeException failure;
+
+        Outcome(T target, Status status, RuntimeException failure) {
+            this.target = target;
+            this.status = status;
+            this.failure = failure;
+        }
+
+        public T getTarget() {
+            return target;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Optional<RuntimeException> getFailure() {
+            return Optional.ofNullable(failure);
+        }
+
+        public Optional<MatrixErrorInfo> getError() {
+            if (failure instanceof MatrixClientRequestException) {
+                return ((MatrixClientRequestException) failure).getError();
+            }
+
+            return Optional.empty();
+        }
+
+    }
+
+    private final Logger log = LoggerFactory.getLogger(BulkRoomOperations.class);
+
+    private final ExecutorService executor;
+
+    private int maxRetries = 5;
+    private long retryAfter = 1000;
+
+    // Until when all the requests wait, as given by the last rate limited response
+    private long pausedUntil = System.nanoTime();
+
+    /**
+     * Build a new instance.
+     *
+     * @param concurrency
+     *            The number of requests which can be in flight at once
+     */
+    public BulkRoomOperations(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be positive");
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "matrix-bulk-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public BulkRoomOperations setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+
+        return this;
+    }
+
+    /**
+     * Set the delay to wait when rate limited, if the homeserver does not give one.
+     *
+     * @param retryAfter
+     *            The delay, in milliseconds
+     * @return This instance.
+     */
+    public BulkRoomOperations setRetryAfter(long retryAfter) {
+        this.retryAfter = retryAfter;
+
+        return this;
+    }
+
+    /**
+     * Invite users to a room. Users already joined are skipped.
+     *
+     * @param room
+     *            The room
+     * @param users
+     *            The users to invite
+     * @return The outcome for each user, in the same order.
+     * @throws InterruptedException
+     *             If interrupted while waiting for the requests
+     */
+    public List<Outcome<_MatrixID>> invite(_MatrixRoom room, Collection<_MatrixID> users)
+            throws InterruptedException {
+        Set<String> joined = room.getJoinedUsers().stream().map(user -> user.getId().getId())
+                .collect(Collectors.toSet());
+        return run(users, user -> joined.contains(user.getId()), room::invite);
+    }
+
+    /**
+     * Kick users out of a room, or revoke their invites.
+     *
+     * @param room
+     *            The room
+     * @param users
+     *            The users to kick
+     * @param reason
+     *            The reason given to the users, or null for none
+     * @return The outcome for each user, in the same order.
+     * @throws InterruptedException
+     *             If interrupted while waiting for the requests
+     */
+    public List<Outcome<_MatrixID>> kick(_MatrixRoom room, Collection<_MatrixID> users, String reason)
+            throws InterruptedException {
+        return run(users, user -> false, user -> room.kick(user, reason));
+    }
+
+    /**
+     * Join rooms. Rooms already joined are skipped, if given by ID.
+     *
+     * @param client
+     *            The client of the user joining
+     * @param roomIdsOrAliases
+     *            The IDs or aliases of the rooms
+     * @return The outcome for each room, in the same order.
+     * @throws InterruptedException
+     *             If interrupted while waiting for the requests
+     */
+    public List<Outcome<String>> join(_MatrixClient client, Collection<String> roomIdsOrAliases)
+            throws InterruptedException {
+        Set<String> joined = client.getJoinedRooms().stream().map(_MatrixRoom::getAddress)
+                .collect(Collectors.toSet());
+        return run(roomIdsOrAliases, joined::contains, client::joinRoom);
+    }
+
+    /**
+     * Leave rooms, or reject the invites to them.
+     *
+     * @param client
+     *            The client of the user leaving
+     * @param roomIds
+     *            The IDs of the rooms
+     * @return The outcome for each room, in the same order.
+     * @throws InterruptedException
+     *             If interrupted while waiting for the requests
+     */
+    public List<Outcome<String>> leave(_MatrixClient client, Collection<String> roomIds)
+            throws InterruptedException {
+        return run(roomIds, roomId -> false, roomId -> client.getRoom(roomId).leave());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> List<Outcome<T>> run(Collection<T> targets, Predicate<T> isMember, Consumer<T> action)
+            throws InterruptedException {
+        List<Future<Outcome<T>>> futures = new ArrayList<>(targets.size());
+        for (T target : targets) {
+            if (isMember.test(target)) {
+                futures.add(CompletableFuture.completedFuture(new Outcome<>(target, Status.AlreadyMember, null)));
+            } else {
+                futures.add(executor.submit(() -> attempt(target, action)));
+            }
+        }
+
+        List<Outcome<T>> outcomes = new ArrayList<>(futures.size());
+        try {
+            for (Future<Outcome<T>> future : futures) {
+                outcomes.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            // Attempts catch their failures
+            throw new IllegalStateException(e.getCause());
+        }
+        return outcomes;
+    }
+
+    private <T> Outcome<T> attempt(T target, Consumer<T> action) throws InterruptedException {
+        for (int retries = 0;; retries++) {
+            waitIfPaused();
+
+            try {
+                action.accept(target);
+                return new Outcome<>(target, Status.Success, null);
+            } catch (MatrixClientRequestException e) {
+                String errcode = e.getError().map(MatrixErrorInfo::getErrcode).orElse("");
+                if ("M_LIMIT_EXCEEDED".equals(errcode)) {
+                    if (retries >= maxRetries) {
+                        return new Outcome<>(target, Status.RateLimited, e);
+                    }
+
+                    long delay = e.getError().flatMap(MatrixErrorInfo::getRetryAfterMs).orElse(retryAfter);
+                    log.debug("Rate limited on {}, pausing for {} ms", target, delay);
+                    pause(delay);
+                    continue;
+                }
+
+                if ("M_FORBIDDEN".equals(errcode)) {
+                    return new Outcome<>(target, Status.Forbidden, e);
+                }
+
+                return new Outcome<>(target, Status.Failed, e);
+            } catch (RuntimeException e) {
+                return new Outcome<>(target, Status.Failed, e);
+            }
+        }
+    }
+
+    private synchronized void pause(long delay) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    private void waitIfPaused() throws InterruptedException {
+        while (true) {
+            long wait;
+            synchronized (this) {
+                wait = pausedUntil - System.nanoTime();
+            }
+            if (wait <= 0) {
+                return;
+            }
+
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+}
@@ -28,6 +28,9 @@ import io.kamax.matrix._MatrixContent;
 import io.kamax.matrix._MatrixID;
 import io.kamax.matrix._MatrixUser;
 import io.kamax.matrix.client.*;
+import io.kamax.matrix.client.filter.SyncFilter;
+import io.kamax.matrix.client.filter.SyncFilterMemoryStore;
+import io.kamax.matrix.client.filter._SyncFilterStore;
 import io.kamax.matrix.hs._MatrixRoom;
 import io.kamax.matrix.json.*;
 import io.kamax.matrix.room.RoomAlias;
@@ -45,7 +48,6 @@ import org.apache.commons.codec.digest.HmacUtils;
 
 import java.net.URI;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient {
@@ -53,6 +55,21 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
     public static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
 
+    private static final MatrixPathTemplate whoAmIPath = MatrixPathTemplate.client("account/whoami");
+    private static final MatrixPathTemplate displayNamePath = MatrixPathTemplate.client("profile/{userId}/displayname");
+    private static final MatrixPathTemplate aliasPath = MatrixPathTemplate.client("directory/room/{roomAlias}");
+    private static final MatrixPathTemplate createRoomPath = MatrixPathTemplate.client("createRoom");
+    private static final MatrixPathTemplate joinedRoomsPath = MatrixPathTemplate.client("joined_rooms");
+    private static final MatrixPathTemplate joinPath = MatrixPathTemplate.client("join/{roomIdOrAlias}");
+    private static final MatrixPathTemplate registerPath = new MatrixPathTemplate("client", "api/v1", "register");
+    private static final MatrixPathTemplate loginPath = MatrixPathTemplate.client("login");
+    private static final MatrixPathTemplate logoutPath = MatrixPathTemplate.client("logout");
+    private static final MatrixPathTemplate syncPath = MatrixPathTemplate.client("sync");
+    private static final MatrixPathTemplate filterPath = MatrixPathTemplate.client("user/{userId}/filter");
+    private static final MatrixPathTemplate filterIdPath = MatrixPathTemplate.client("user/{userId}/filter/{filterId}");
+
+    private _SyncFilterStore filterStore = new SyncFilterMemoryStore();
+
     public MatrixHttpClient(String domain) {
         super(domain);
     }
@@ -63,6 +80,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     public MatrixHttpClient(MatrixClientContext context, MatrixClientDefaults defaults) {
         super(context, defaults);
+        this.filterStore = defaults.getFilterStore();
     }
 
     public MatrixHttpClient(MatrixClientContext context, OkHttpClient client) {
@@ -73,22 +91,14 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
         return new MatrixID(localpart, getHomeserver().getDomain());
     }
 
-    @Override
-    protected HttpUrl.Builder getClientPathBuilder(String action) {
-        HttpUrl.Builder builder = super.getClientPathBuilder(action);
-        if (context.getUser().isPresent()) {
-            _MatrixID user = context.getUser().get();
-            // %7BuserId%7D is the URL encoded format of {userId}
-            builder = Objects.requireNonNull(HttpUrl.parse(builder.build().toString().replace("%7BuserId%7D", user.getId()))).newBuilder();
-        }
-        return builder;
+    private String getUserIdOrThrow() {
+        return context.getUser().map(_MatrixID::getId)
+                .orElseThrow(() -> new IllegalStateException("This method can only be used with a user set."));
     }
 
     @Override
     public _MatrixID getWhoAmI() {
-        HttpUrl path = getClientPathWithAccessToken("account/whoami");
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(whoAmIPath)
                 .build();
         String body = execute(request);
         return MatrixID.from(GsonUtil.getStringOrThrow(GsonUtil.parseObj(body), "user_id")).acceptable();
@@ -96,10 +106,8 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public void setDisplayName(String name) {
-        HttpUrl path = getClientPathWithAccessToken("profile/{userId}/displayname");
         RequestBody body = RequestBody.create(JSON, gson.toJson(new UserDisplaynameSetBody(name)));
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(displayNamePath, getUserIdOrThrow())
                 .put(body)
                 .build();
         execute(request);
@@ -107,9 +115,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _RoomAliasLookup lookup(RoomAlias alias) {
-        HttpUrl path = getClientPath("directory/room/" + alias.getId()).build();
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequest(aliasPath, alias.getId())
                 .build();
         String resBody = execute(request);
         RoomAliasLookupJson lookup = GsonUtil.get().fromJson(resBody, RoomAliasLookupJson.class);
@@ -118,10 +124,8 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _MatrixRoom createRoom(_RoomCreationOptions options) {
-        HttpUrl path = getClientPathWithAccessToken("createRoom");
         RequestBody body = RequestBody.create(JSON, gson.toJson(new RoomCreationRequestJson(options)));
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(createRoomPath)
                 .post(body)
                 .build();
 
@@ -132,14 +136,12 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _MatrixRoom getRoom(String roomId) {
-        return new MatrixHttpRoom(getContext(), roomId);
+        return new MatrixHttpRoom(this, roomId);
     }
 
     @Override
     public List<_MatrixRoom> getJoinedRooms() {
-        HttpUrl path = getClientPathWithAccessToken("joined_rooms");
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(joinedRoomsPath)
                 .build();
         JsonObject resBody = GsonUtil.parseObj(execute(request));
         return GsonUtil.asList(resBody, "joined_rooms", String.class).stream().map(this::getRoom)
@@ -148,10 +150,8 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _MatrixRoom joinRoom(String roomIdOrAlias) {
-        HttpUrl path = getClientPathWithAccessToken("join/" + roomIdOrAlias);
         RequestBody body = RequestBody.create(JSON, gson.toJson(new JsonObject()));
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(joinPath, roomIdOrAlias)
                 .post(body)
                 .build();
 
@@ -162,7 +162,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _MatrixUser getUser(_MatrixID mxId) {
-        return new MatrixHttpUser(getContext(), mxId);
+        return new MatrixHttpUser(this, mxId);
     }
 
     @Override
@@ -193,8 +193,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
         bodyJson.addProperty("admin", false);
 
         RequestBody body = RequestBody.create(JSON, gson.toJson(bodyJson));
-        Request request = new Request.Builder()
-                .url(getPath("client", "api/v1", "register").build())
+        Request request = newRequest(registerPath)
                 .post(body)
                 .build();
         updateContext(execute(request));
@@ -207,8 +206,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
         Optional.ofNullable(context.getInitialDeviceName()).ifPresent(data::setInitialDeviceDisplayName);
 
         RequestBody body = RequestBody.create(JSON, gson.toJson(data));
-        Request request = new Request.Builder()
-                .url(getClientPath("login").build())
+        Request request = newRequest(loginPath)
                 .post(body)
                 .build();
         updateContext(execute(request));
@@ -216,10 +214,8 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public void logout() {
-        HttpUrl path = getClientPathWithAccessToken("logout");
         RequestBody body = RequestBody.create(JSON, gson.toJson("{}"));
-        Request request = new Request.Builder()
-                .url(path)
+        Request request = newRequestWithAccessToken(logoutPath)
                 .post(body)
                 .build();
         execute(request);
@@ -230,7 +226,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _SyncData sync(_SyncOptions options) {
-        HttpUrl.Builder builder = getClientPathBuilder("sync");
+        HttpUrl.Builder builder = getPath(syncPath);
 
         builder.addQueryParameter("timeout", options.getTimeout().map(Long::intValue).orElse(30000).toString());
         options.getSince().ifPresent(since -> builder.addQueryParameter("since", since));
@@ -238,13 +234,38 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
         options.withFullState().ifPresent(state -> builder.addQueryParameter("full_state", state ? "true" : "false"));
         options.getSetPresence().ifPresent(presence -> builder.addQueryParameter("presence", presence));
 
-        Request request = new Request.Builder()
-                .url(getWithAccessToken(builder))
+        Request request = newRequestWithAccessToken(syncPath, builder.build())
                 .build();
         String body = execute(request);
         return new SyncDataJson(GsonUtil.parseObj(body));
     }
 
+    @Override
+    public String createFilter(SyncFilter filter) {
+        RequestBody body = RequestBody.create(JSON, filter.toCanonicalJson());
+        Request request = newRequestWithAccessToken(filterPath, getUserIdOrThrow())
+                .post(body)
+                .build();
+        return GsonUtil.getStringOrThrow(GsonUtil.parseObj(execute(request)), "filter_id");
+    }
+
+    @Override
+    public SyncFilter getFilter(String filterId) {
+        Request request = newRequestWithAccessToken(filterIdPath, getUserIdOrThrow(), filterId)
+                .build();
+        return SyncFilter.from(GsonUtil.parseObj(execute(request)));
+    }
+
+    @Override
+    public String getFilterId(SyncFilter filter) {
+        String key = getUserIdOrThrow() + "/" + filter.getHash();
+        return filterStore.findId(key).orElseGet(() -> {
+            String filterId = createFilter(filter);
+            filterStore.putId(key, filterId);
+            return filterId;
+        });
+    }
+
     @Override
     public _MatrixContent getMedia(String mxUri) throws IllegalArgumentException {
         return getMedia(URI.create(mxUri));
@@ -252,7 +273,7 @@ public class MatrixHttpClient extends AMatrixHttpClient implements _MatrixClient
 
     @Override
     public _MatrixContent getMedia(URI mxUri) throws IllegalArgumentException {
-        return new MatrixHttpContent(context, mxUri);
+        return new MatrixHttpContent(this, mxUri);
     }
 
 }
@@ -20,7 +20,6 @@
 
 package io.kamax.matrix.client.regular;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import io.kamax.matrix.MatrixID;
@@ -32,6 +31,8 @@ import io.kamax.matrix.event._MatrixPersistentEvent;
 import io.kamax.matrix.event._MatrixStateEvent;
 import io.kamax.matrix.json.MatrixJsonObject;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
@@ -58,8 +59,12 @@ public class SyncDataJson extends MatrixJsonObject implements _SyncData {
 
         @Override
         public String toJson() {
-            Gson gson = new Gson();
-            return gson.toJson(this);
+            return getText();
+        }
+
+        @Override
+        public void writeJson(Writer out) throws IOException {
+            writeText(out);
         }
 
         @Override
@@ -69,7 +74,7 @@ public class SyncDataJson extends MatrixJsonObject implements _SyncData {
 
         @Override
         public _MatrixID getSender() {
-            return MatrixID.from(getString(EventKey.Sender.get())).acceptable();
+            return MatrixID.asAcceptable(getString(EventKey.Sender.get()));
         }
     }
 
@@ -86,8 +91,12 @@ public class SyncDataJson extends MatrixJsonObject implements _SyncData {
 
         @Override
         public String toJson() {
-            Gson gson = new Gson();
-            return gson.toJson(this);
+            return getText();
+        }
+
+        @Override
+        public void writeJson(Writer out) throws IOException {
+            writeText(out);
         }
 
     }
@@ -142,7 +151,7 @@ public class SyncDataJson extends MatrixJsonObject implements _SyncData {
 
         @Override
         public boolean isLimited() {
-            return findString("limited").map("true"::equals).orElse(false);
+            return findBoolean("limited").orElse(false);
         }
 
         @Override
@@ -0,0 +1,319 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import com.github.dmstocking.optional.java.util.Optional;
+
+import io.kamax.matrix.MatrixErrorInfo;
+import io.kamax.matrix.client.MatrixClientRequestException;
+import io.kamax.matrix.client._MatrixClient;
+import io.kamax.matrix.client._SyncData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sync of many accounts on a fixed number of threads, with their batches merged in a single stream.
+ *
+ * A sync call holds a thread for as long as it waits on the homeserver, so accounts take turns on the threads: an
+ * account long-polls only if no other account is waiting for a thread, and else uses a short timeout so the others
+ * get their turn quickly. Accounts are served in the order they became ready, and failing accounts are retried after
+ * an exponential backoff, or after the delay asked by the homeserver when rate limited.
+ */
+public class SyncMultiplexer implements AutoCloseable {
+
+    public static class Batch {
+
+        private final String account;
+        private final _SyncData data;
+
+        Batch(String account, _SyncData data) {
+            this.account = account;
+            this.data = data;
+        }
+
+        public String getAccount() {
+            return account;
+        }
+
+        public _SyncData getData() {
+            return data;
+        }
+
+    }
+
+    private class Account implements Delayed {
+
+        private final String id;
+        private final _MatrixClient client;
+        private final String filterId;
+        private volatile String since;
+        private volatile boolean removed;
+        private int failures;
+        private long readyAt;
+        private long order;
+
+        Account(String id, _MatrixClient client, String filterId, String since) {
+            this.id = id;
+            this.client = client;
+            this.filterId = filterId;
+            this.since = since;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            Account other = (Account) o;
+            int c = Long.compare(readyAt, other.readyAt);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }
+
+    }
+
+    private final Logger log = LoggerFactory.getLogger(SyncMultiplexer.class);
+
+    private final int threads;
+    private final BlockingQueue<Batch> batches;
+    private final DelayQueue<Account> ready = new DelayQueue<>();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private long timeout = 30000;
+    private long busyTimeout = 1000;
+    private long minBackoff = 1000;
+    private long maxBackoff = 60000;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    public SyncMultiplexer(int threads) {
+        this(threads, 1000);
+    }
+
+    /**
+     * Build a new multiplexer.
+     *
+     * @param threads
+     *            The number of sync calls which can be in flight at once
+     * @param capacity
+     *            The number of batches which can wait to be taken, after which sync calls wait for room
+     */
+    public SyncMultiplexer(int threads, int capacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+
+        this.threads = threads;
+        this.batches = new LinkedBlockingQueue<>(capacity);
+    }
+
+    public SyncMultiplexer setTimeout(long timeout) {
+        this.timeout = timeout;
+
+        return this;
+    }
+
+    public SyncMultiplexer setBusyTimeout(long busyTimeout) {
+        this.busyTimeout = busyTimeout;
+
+        return this;
+    }
+
+    public SyncMultiplexer setBackoff(long minBackoff, long maxBackoff) {
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+
+        return this;
+    }
+
+    public void add(String account, _MatrixClient client) {
+        add(account, client, null, null);
+    }
+
+    /**
+     * Start syncing an account.
+     *
+     * @param account
+     *            The name of the account, which tags its batches
+     * @param client
+     *            The client of the account
+     * @param filterId
+     *            The ID of the sync filter to use, or null for none
+     * @param since
+     *            The token to sync from, or null for an initial sync
+     */
+    public void add(String account, _MatrixClient client, String filterId, String since) {
+        Account acc = new Account(account, client, filterId, since);
+        if (Objects.nonNull(accounts.putIfAbsent(account, acc))) {
+            throw new IllegalArgumentException("Account " + account + " is already synced");
+        }
+
+        schedule(acc, 0);
+    }
+
+    public void remove(String account) {
+        Account acc = accounts.remove(account);
+        if (Objects.nonNull(acc)) {
+            acc.removed = true;
+        }
+    }
+
+    public Set<String> getAccounts() {
+        return Collections.unmodifiableSet(accounts.keySet());
+    }
+
+    /**
+     * Get the token of the last batch of an account, to resume from it later.
+     *
+     * @param account
+     *            The name of the account
+     * @return The token, if the account is synced and had one
+     */
+    public Optional<String> getSince(String account) {
+        return Optional.ofNullable(accounts.get(account)).flatMap(acc -> Optional.ofNullable(acc.since));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "matrix-sync-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        for (int i = 0; i < threads; i++) {
+            executor.submit(this::work);
+        }
+    }
+
+    public Batch take() throws InterruptedException {
+        return batches.take();
+    }
+
+    public Batch poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return batches.poll(timeout, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (Objects.nonNull(executor)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void schedule(Account acc, long delay) {
+        if (acc.removed) {
+            return;
+        }
+
+        acc.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        acc.order = sequence.incrementAndGet();
+        ready.add(acc);
+    }
+
+    private boolean othersWaiting() {
+        Account next = ready.peek();
+        return Objects.nonNull(next) && next.getDelay(TimeUnit.NANOSECONDS) <= 0;
+    }
+
+    private long getBackoff(Account acc, Throwable e) {
+        if (e instanceof MatrixClientRequestException) {
+            Optional<Long> retryAfter = ((MatrixClientRequestException) e).getError()
+                    .flatMap(MatrixErrorInfo::getRetryAfterMs);
+            if (retryAfter.isPresent()) {
+                return retryAfter.get();
+            }
+        }
+
+        long backoff = minBackoff << Math.min(acc.failures - 1, 20);
+        backoff = Math.min(maxBackoff, backoff);
+        // Jitter, so accounts failing together don't retry together
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private void work() {
+        while (running) {
+            Account acc;
+            try {
+                acc = ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (acc.removed) {
+                continue;
+            }
+
+            SyncOptions.Builder options = SyncOptions.build().setTimeout(othersWaiting() ? busyTimeout : timeout);
+            Optional.ofNullable(acc.since).ifPresent(options::setSince);
+            Optional.ofNullable(acc.filterId).ifPresent(options::setFilter);
+
+            try {
+                _SyncData data = acc.client.sync(options.get());
+                batches.put(new Batch(acc.id, data));
+                acc.since = data.nextBatchToken();
+                acc.failures = 0;
+                schedule(acc, 0);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                // Anything else, like a StackOverflowError on odd JSON, must not stop the account from syncing
+                acc.failures++;
+                long backoff = getBackoff(acc, t);
+                if (t instanceof RuntimeException) {
+                    log.warn("Sync of {} failed {} time(s), retrying in {} ms: {}", acc.id, acc.failures, backoff,
+                            t.getMessage());
+                } else {
+                    log.error("Sync of {} failed {} time(s), retrying in {} ms", acc.id, acc.failures, backoff, t);
+                }
+                schedule(acc, backoff);
+
+                // The JVM may be unusable, so this worker stops, but another takes its place
+                if (t instanceof VirtualMachineError) {
+                    try {
+                        executor.submit(this::work);
+                    } catch (RejectedExecutionException e) {
+                        log.debug("Not replacing the worker, the multiplexer is closed");
+                    }
+                    throw (VirtualMachineError) t;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.client._MatrixClient;
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.event.EventDeduplicator;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+import io.kamax.matrix.hs._MatrixRoom;
+import io.kamax.matrix.room.MatrixRoomMessageChunkOptions;
+import io.kamax.matrix.room._MatrixRoomMessageChunk;
+import io.kamax.matrix.room._MatrixRoomMessageChunkOptions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fill the gaps left by limited sync timelines, by paging back through the room messages until known events.
+ *
+ * Sync batches are given to {@link #accept(_SyncData)}, which returns at once. The events of each room are then given
+ * to the listener oldest first: the events recovered for a gap come before the events of the timeline, and the events
+ * of a batch before the events of the next batches. Rooms are handled on a fixed number of threads, so a sync batch
+ * with many limited rooms does not send as many requests at once.
+ *
+ * Only rooms with events already seen are backfilled, so the limited timelines of an initial sync are given as is.
+ * Paging stops at the first known event, at the start of the room, or after a maximum number of pages, in which case
+ * a gap remains.
+ */
+public class TimelineBackfiller implements AutoCloseable {
+
+    public interface Listener {
+
+        /**
+         * Handle new events of a room.
+         *
+         * @param roomId
+         *            The ID of the room
+         * @param events
+         *            The events not seen yet, oldest first
+         */
+        void onEvents(String roomId, List<_MatrixPersistentEvent> events);
+
+    }
+
+    private final Logger log = LoggerFactory.getLogger(TimelineBackfiller.class);
+
+    private final _MatrixClient client;
+    private final EventDeduplicator known;
+    private final Listener listener;
+    private final ExecutorService executor;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private final Map<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    private long pageSize = 100;
+    private int maxPages = 10;
+
+    public TimelineBackfiller(_MatrixClient client, int threads, Listener listener) {
+        this(client, threads, new EventDeduplicator(100000), listener);
+    }
+
+    /**
+     * Build a new backfiller.
+     *
+     * @param client
+     *            The client to fetch the room messages with
+     * @param threads
+     *            The number of rooms which can be handled at once
+     * @param known
+     *            The window of events already seen, which is updated with the events given to the listener
+     * @param listener
+     *            The listener to give the events to
+     */
+    public TimelineBackfiller(_MatrixClient client, int threads, EventDeduplicator known, Listener listener) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+
+        this.client = client;
+        this.known = known;
+        this.listener = listener;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "matrix-backfill-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public TimelineBackfiller setPageSize(long pageSize) {
+        this.pageSize = pageSize;
+
+        return this;
+    }
+
+    public TimelineBackfiller setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+
+        return this;
+    }
+
+    /**
+     * Record an event of a room as seen, so gaps of the room are backfilled up to it. Used when resuming a sync from
+     * a stored token.
+     *
+     * @param roomId
+     *            The ID of the room
+     * @param eventId
+     *            The ID of the last event handled in the room
+     */
+    public void addKnown(String roomId, String eventId) {
+        known.add(eventId);
+        rooms.add(roomId);
+    }
+
+    /**
+     * Handle the timelines of a sync batch.
+     *
+     * @param data
+     *            The sync batch
+     */
+    public void accept(_SyncData data) {
+        data.getRooms().getJoined().forEach(room -> submit(room.getId(), room.getTimeline()));
+        data.getRooms().getLeft().forEach(room -> submit(room.getId(), room.getTimeline()));
+    }
+
+    /**
+     * Wait until the timelines given so far are handled.
+     *
+     * @param timeout
+     *            The maximum time to wait, in milliseconds
+     * @return true if all were handled, false if the time ran out.
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (CompletableFuture<Void> tail : new ArrayList<>(pending.values())) {
+            try {
+                tail.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                // Already logged when handling the timeline
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void submit(String roomId, _SyncData.Timeline timeline) {
+        if (!timeline.isLimited() && timeline.getEvents().isEmpty()) {
+            return;
+        }
+
+        // Timelines of a room are chained, so a gap is given before the events of the following batches
+        CompletableFuture<Void> tail = pending.compute(roomId, (id, previous) -> {
+            Runnable task = () -> handle(roomId, timeline);
+            return Objects.isNull(previous) ? CompletableFuture.runAsync(task, executor)
+                    : previous.thenRunAsync(task, executor);
+        });
+        tail.whenComplete((v, e) -> pending.remove(roomId, tail));
+    }
+
+    private void handle(String roomId, _SyncData.Timeline timeline) {
+        List<_MatrixPersistentEvent> events = new ArrayList<>();
+        if (timeline.isLimited() && rooms.contains(roomId) && Objects.nonNull(timeline.getPreviousBatchToken())) {
+            try {
+                events.addAll(backfill(roomId, timeline.getPreviousBatchToken()));
+            } catch (RuntimeException e) {
+                log.warn("Backfill of {} failed, a gap remains: {}", roomId, e.getMessage());
+            }
+        }
+        events.addAll(timeline.getEvents());
+        events = known.filter(events);
+        rooms.add(roomId);
+
+        if (events.isEmpty()) {
+            return;
+        }
+
+        try {
+            listener.onEvents(roomId, events);
+        } catch (RuntimeException e) {
+            log.error("Listener failed on events of " + roomId, e);
+        }
+    }
+
+    private List<_MatrixPersistentEvent> backfill(String roomId, String from) {
+        _MatrixRoom room = client.getRoom(roomId);
+        List<_MatrixPersistentEvent> events = new ArrayList<>();
+        String token = from;
+        for (int page = 0; page < maxPages; page++) {
+            _MatrixRoomMessageChunk chunk = room.getMessages(MatrixRoomMessageChunkOptions.build()
+                    .setFromToken(token).setDirection(_MatrixRoomMessageChunkOptions.Direction.Backward)
+                    .setLimit(pageSize).get());
+
+            // Events come newest first
+            for (_MatrixPersistentEvent event : chunk.getEvents()) {
+                if (known.contains(event.getId())) {
+                    Collections.reverse(events);
+                    return events;
+                }
+
+                events.add(event);
+            }
+
+            if (chunk.getEvents().isEmpty() || Objects.isNull(chunk.getEndToken())
+                    || chunk.getEndToken().equals(token)) {
+                // Start of the room
+                Collections.reverse(events);
+                return events;
+            }
+
+            token = chunk.getEndToken();
+        }
+
+        log.warn("No known event in {} after {} pages, a gap remains", roomId, maxPages);
+        Collections.reverse(events);
+        return events;
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remember the IDs of the last events seen, so events received more than once, through sync, backfill or application
+ * service transactions, are only handled once.
+ *
+ * The window is the given number of most recently seen event IDs, across all rooms: seeing an ID again makes it the
+ * most recent. Only a 64-bit hash of each ID is kept, in fixed-size primitive arrays, for at most 64 bytes per event
+ * whatever the number of rooms. Two IDs with the same hash are taken as the same event, which is unlikely enough to be
+ * ignored for windows of any practical size.
+ *
+ * A Bloom filter can be put in front, so IDs never seen are recognised without looking them up. It never drops an
+ * event by itself. As a lookup is mostly a single probe, it does not pay off at the sizes measured and is off by
+ * default.
+ *
+ * Instances are thread-safe.
+ */
+public class EventDeduplicator {
+
+    private static final int bloomHashes = 4;
+
+    static long hash(String eventId) {
+        // FNV-1a, then the MurmurHash3 finalizer to spread it over all bits
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < eventId.length(); i++) {
+            h ^= eventId.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h; // 0 marks empty slots
+    }
+
+    private final int capacity;
+
+    // Nodes of a doubly linked list from the most to the least recently seen, as a pool of primitive arrays
+    private final long[] hashes;
+    private final int[] previous;
+    private final int[] next;
+    private int first = -1;
+    private int last = -1;
+
+    // Hash to node, with open addressing and linear probing
+    private final long[] keys;
+    private final int[] nodes;
+    private final int mask;
+    private int size;
+
+    // Two generations, so the filter can be emptied without forgetting the IDs still in the window
+    private long[] bloom;
+    private long[] previousBloom;
+    private int bloomMask;
+    private int bloomCount;
+
+    /**
+     * @param capacity
+     *            The number of most recent event IDs to remember
+     */
+    public EventDeduplicator(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity
+     *            The number of most recent event IDs to remember
+     * @param bloomFilter
+     *            If a Bloom filter is put in front, of 32 to 64 bits per event
+     */
+    public EventDeduplicator(int capacity, boolean bloomFilter) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.hashes = new long[capacity];
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(4, capacity * 2 - 1)) << 1;
+        this.keys = new long[tableSize];
+        this.nodes = new int[tableSize];
+        this.mask = tableSize - 1;
+
+        if (bloomFilter) {
+            // A generation holds up to twice the capacity, with new IDs and the ones seen again: at least 8 bits per
+            // event, for a false positive rate under 3% with 4 hashes
+            int bits = Integer.highestOneBit(Math.max(64, capacity * 16 - 1)) << 1;
+            bloom = new long[bits / 64];
+            previousBloom = new long[bits / 64];
+            bloomMask = bits - 1;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Check if an event ID is in the window, without changing it.
+     *
+     * @param eventId
+     *            The event ID
+     * @return true if the event was seen.
+     */
+    public synchronized boolean contains(String eventId) {
+        long h = hash(eventId);
+        return mightContain(h) && indexOf(h) >= 0;
+    }
+
+    /**
+     * Record an event ID as the most recently seen.
+     *
+     * @param eventId
+     *            The event ID
+     * @return true if it was not in the window, meaning the event should be handled.
+     */
+    public synchronized boolean add(String eventId) {
+        long h = hash(eventId);
+        if (mightContain(h)) {
+            int index = indexOf(h);
+            if (index >= 0) {
+                int node = nodes[index];
+                unlink(node);
+                pushFirst(node);
+                addToBloom(h, false);
+                return false;
+            }
+        }
+
+        int node;
+        if (size < capacity) {
+            node = size;
+        } else {
+            node = last;
+            unlink(node);
+            remove(indexOf(hashes[node]));
+        }
+        hashes[node] = h;
+        pushFirst(node);
+        insert(h, node);
+        addToBloom(h, true);
+        return true;
+    }
+
+    /**
+     * Keep the events not seen yet, and record them.
+     *
+     * @param events
+     *            The events, in the order they are received
+     * @param <E>
+     *            The type of events
+     * @return The events to handle, in the same order.
+     */
+    public synchronized <E extends _MatrixPersistentEvent> List<E> filter(List<E> events) {
+        List<E> result = new ArrayList<>(events.size());
+        for (E event : events) {
+            if (add(event.getId())) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(keys, 0);
+        first = -1;
+        last = -1;
+        size = 0;
+        if (bloom != null) {
+            Arrays.fill(bloom, 0);
+            Arrays.fill(previousBloom, 0);
+            bloomCount = 0;
+        }
+    }
+
+    private void unlink(int node) {
+        int p = previous[node];
+        int n = next[node];
+        if (p >= 0) {
+            next[p] = n;
+        } else {
+            first = n;
+        }
+        if (n >= 0) {
+            previous[n] = p;
+        } else {
+            last = p;
+        }
+    }
+
+    private void pushFirst(int node) {
+        previous[node] = -1;
+        next[node] = first;
+        if (first >= 0) {
+            previous[first] = node;
+        } else {
+            last = node;
+        }
+        first = node;
+    }
+
+    private int slotOf(long h) {
+        return (int) h & mask;
+    }
+
+    private int indexOf(long h) {
+        for (int i = slotOf(h);; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == 0) {
+                return -1;
+            }
+            if (k == h) {
+                return i;
+            }
+        }
+    }
+
+    private void insert(long h, int node) {
+        int i = slotOf(h);
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = h;
+        nodes[i] = node;
+        size++;
+    }
+
+    // Backward shift deletion, so lookups never need tombstones
+    private void remove(int index) {
+        int i = index;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int ideal = slotOf(keys[j]);
+            if (((j - ideal) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                nodes[i] = nodes[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        size--;
+    }
+
+    private boolean mightContain(long h) {
+        if (bloom == null) {
+            return true;
+        }
+
+        return isSet(bloom, h) || isSet(previousBloom, h);
+    }
+
+    private boolean isSet(long[] bits, long h) {
+        int h1 = (int) (h >>> 32);
+        int h2 = (int) (h >>> 16) | 1;
+        for (int i = 0; i < bloomHashes; i++) {
+            int bit = (h1 + i * h2) & bloomMask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToBloom(long h, boolean isNew) {
+        if (bloom == null) {
+            return;
+        }
+
+        // An ID stays in the window for less than capacity new IDs after it was last seen, and each generation lasts
+        // for capacity new IDs, so the two of them always hold the whole window
+        if (isNew && bloomCount == capacity) {
+            long[] cleared = previousBloom;
+            Arrays.fill(cleared, 0);
+            previousBloom = bloom;
+            bloom = cleared;
+            bloomCount = 0;
+        }
+
+        int h1 = (int) (h >>> 32);
+        int h2 = (int) (h >>> 16) | 1;
+        for (int i = 0; i < bloomHashes; i++) {
+            int bit = (h1 + i * h2) & bloomMask;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+        if (isNew) {
+            bloomCount++;
+        }
+    }
+
+}
@@ -23,10 +23,36 @@ package io.kamax.matrix.event;
 
 import com.google.gson.JsonObject;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public interface _MatrixEvent {
     String getType();
 
+    /**
+     * JSON tree of the event. Changes made to it are in the text given by {@link #toJson()} and
+     * {@link #writeJson(Writer)} afterwards.
+     *
+     * @return The tree.
+     */
     JsonObject getJson();
 
+    /**
+     * JSON text of the event, as received when it is known and the tree was not handed out by {@link #getJson()}.
+     *
+     * @return The JSON text.
+     */
     String toJson();
+
+    /**
+     * Write the JSON text of the event, for forwarding or archiving, without building it as a string when possible.
+     *
+     * @param out
+     *            The writer
+     * @throws IOException
+     *             If the writer fails
+     */
+    default void writeJson(Writer out) throws IOException {
+        out.write(toJson());
+    }
 }
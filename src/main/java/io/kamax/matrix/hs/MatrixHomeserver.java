@@ -27,8 +27,9 @@ import okhttp3.HttpUrl;
 
 public class MatrixHomeserver implements _MatrixHomeserver {
 
-    private String domain;
-    private URL base;
+    private final String domain;
+    private final URL base;
+    private final HttpUrl baseUrl;
 
     private static URL getURL(String url) {
         try {
@@ -41,6 +42,7 @@ public class MatrixHomeserver implements _MatrixHomeserver {
     public MatrixHomeserver(String domain, URL baseUrl) {
         this.domain = domain;
         this.base = baseUrl;
+        this.baseUrl = HttpUrl.get(baseUrl);
     }
 
     public MatrixHomeserver(String domain, String baseUrl) {
@@ -59,7 +61,7 @@ public class MatrixHomeserver implements _MatrixHomeserver {
 
     @Override
     public HttpUrl getBaseEndpointBuilder() {
-        return HttpUrl.parse(base.toString());
+        return baseUrl;
     }
 
 }
@@ -28,6 +28,7 @@ import io.kamax.matrix._MatrixContent;
 import io.kamax.matrix._MatrixID;
 import io.kamax.matrix._MatrixUserProfile;
 import io.kamax.matrix.room.ReceiptType;
+import io.kamax.matrix.room.RoomStateBatch;
 import io.kamax.matrix.room._MatrixRoomMessageChunk;
 import io.kamax.matrix.room._MatrixRoomMessageChunkOptions;
 
@@ -67,6 +68,44 @@ public interface _MatrixRoom {
      */
     Optional<JsonObject> getState(String type, String key);
 
+    /**
+     * Set a state event, unless its content is already the current one.
+     *
+     * The new content is compared in canonical JSON to the current one, read from the homeserver unless the client
+     * keeps a snapshot of the room state which has it.
+     *
+     * @param type
+     *            The type of the state event
+     * @param key
+     *            The state key
+     * @param content
+     *            The content of the event
+     * @return The ID of the new event, or empty if the content was unchanged and nothing was sent.
+     */
+    Optional<String> setState(String type, String key, JsonObject content);
+
+    /**
+     * Set a state event with an empty state key, unless its content is already the current one.
+     *
+     * @param type
+     *            The type of the state event
+     * @param content
+     *            The content of the event
+     * @return The ID of the new event, or empty if the content was unchanged and nothing was sent.
+     */
+    default Optional<String> setState(String type, JsonObject content) {
+        return setState(type, "", content);
+    }
+
+    /**
+     * Set several state events concurrently, skipping the ones whose content is already the current one.
+     *
+     * @param batch
+     *            The state events to set
+     * @return The outcome of each event in the batch, in the same order.
+     */
+    List<RoomStateBatch.Outcome> setStates(RoomStateBatch batch);
+
     void join();
 
     Optional<MatrixErrorInfo> tryJoin();
@@ -119,6 +158,16 @@ public interface _MatrixRoom {
 
     void invite(_MatrixID mxId);
 
+    /**
+     * Kick a user out of the room, or revoke their invite.
+     *
+     * @param mxId
+     *            The user to kick
+     * @param reason
+     *            The reason given to the user, or null for none
+     */
+    void kick(_MatrixID mxId, String reason);
+
     List<_MatrixUserProfile> getJoinedUsers();
 
     _MatrixRoomMessageChunk getMessages(_MatrixRoomMessageChunkOptions options);
@@ -20,53 +20,103 @@
 
 package io.kamax.matrix.json;
 
-import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import io.kamax.matrix.event.EventKey;
 import io.kamax.matrix.event._MatrixEvent;
 import io.kamax.matrix.json.event.*;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * Build typed events from their JSON, using the decoder registered for their type.
+ *
+ * The SDK registers decoders for the types it has classes for. Other types, like the ones of bridges, can be given
+ * their own with {@link #register(String, Function)}. Events without a decoder are built as generic events.
+ */
 public class MatrixJsonEventFactory {
 
+    // Copied on write: registering is rare, while every event of every sync is looked up
+    private static volatile Map<String, Function<JsonObject, ? extends _MatrixEvent>> decoders = new HashMap<>();
+
+    static {
+        register("m.room.member", MatrixJsonRoomMembershipEvent::new);
+        register("m.room.power_levels", MatrixJsonRoomPowerLevelsEvent::new);
+        register("m.room.avatar", MatrixJsonRoomAvatarEvent::new);
+        register("m.room.name", MatrixJsonRoomNameEvent::new);
+        register("m.room.topic", MatrixJsonRoomTopicEvent::new);
+        register("m.room.aliases", MatrixJsonRoomAliasesEvent::new);
+        register("m.room.message", MatrixJsonRoomMessageEvent::new);
+        register("m.receipt", MatrixJsonReadReceiptEvent::new);
+        register("m.room.history_visibility", MatrixJsonRoomHistoryVisibilityEvent::new);
+    }
+
+    /**
+     * Register the decoder of an event type, replacing the current one if any.
+     *
+     * @param type
+     *            The event type
+     * @param decoder
+     *            The function building an event from its JSON
+     */
+    public static synchronized void register(String type, Function<JsonObject, ? extends _MatrixEvent> decoder) {
+        Map<String, Function<JsonObject, ? extends _MatrixEvent>> copy = new HashMap<>(decoders);
+        copy.put(type, decoder);
+        decoders = copy;
+    }
+
+    /**
+     * Remove the decoder of an event type, so its events are built as generic events.
+     *
+     * @param type
+     *            The event type
+     */
+    public static synchronized void unregister(String type) {
+        Map<String, Function<JsonObject, ? extends _MatrixEvent>> copy = new HashMap<>(decoders);
+        copy.remove(type);
+        decoders = copy;
+    }
+
+    private static boolean hasPrimitive(JsonObject obj, EventKey key) {
+        JsonElement el = obj.get(key.get());
+        return el != null && el.isJsonPrimitive();
+    }
+
     public static _MatrixEvent get(JsonObject obj) {
-        String type = obj.get("type").getAsString();
-
-        if ("m.room.member".contentEquals(type)) {
-            return new MatrixJsonRoomMembershipEvent(obj);
-        } else if ("m.room.power_levels".contentEquals(type)) {
-            return new MatrixJsonRoomPowerLevelsEvent(obj);
-        } else if ("m.room.avatar".contentEquals(type)) {
-            return new MatrixJsonRoomAvatarEvent(obj);
-        } else if ("m.room.name".contentEquals(type)) {
-            return new MatrixJsonRoomNameEvent(obj);
-        } else if ("m.room.topic".contentEquals(type)) {
-            return new MatrixJsonRoomTopicEvent(obj);
-        } else if ("m.room.aliases".contentEquals(type)) {
-            return new MatrixJsonRoomAliasesEvent(obj);
-        } else if ("m.room.message".contentEquals(type)) {
-            return new MatrixJsonRoomMessageEvent(obj);
-        } else if ("m.receipt".contentEquals(type)) {
-            return new MatrixJsonReadReceiptEvent(obj);
-        } else if ("m.room.history_visibility".contentEquals(type)) {
-            return new MatrixJsonRoomHistoryVisibilityEvent(obj);
-        } else {
-            Optional<String> timestamp = EventKey.Timestamp.findString(obj);
-            Optional<String> sender = EventKey.Sender.findString(obj);
-
-            if (!timestamp.isPresent() || !sender.isPresent()) {
-                return new MatrixJsonEphemeralEvent(obj);
-            } else {
-
-                Optional<String> rId = EventKey.RoomId.findString(obj);
-                if (rId.isPresent()) {
-                    return new MatrixJsonRoomEvent(obj);
-                }
-
-                return new MatrixJsonPersistentEvent(obj);
-            }
+        String type = obj.get(EventKey.Type.get()).getAsString();
+
+        Function<JsonObject, ? extends _MatrixEvent> decoder = decoders.get(type);
+        if (decoder != null) {
+            return decoder.apply(obj);
+        }
+
+        if (!hasPrimitive(obj, EventKey.Timestamp) || !hasPrimitive(obj, EventKey.Sender)) {
+            return new MatrixJsonEphemeralEvent(obj);
+        }
+
+        if (hasPrimitive(obj, EventKey.RoomId)) {
+            return new MatrixJsonRoomEvent(obj);
+        }
+
+        return new MatrixJsonPersistentEvent(obj);
+    }
+
+    /**
+     * Build a typed event from its JSON text, which is kept so the event gives it back as is.
+     *
+     * @param json
+     *            The JSON text of the event
+     * @return The event.
+     */
+    public static _MatrixEvent get(String json) {
+        _MatrixEvent ev = get(GsonUtil.parseObj(json));
+        if (ev instanceof MatrixJsonObject) {
+            ((MatrixJsonObject) ev).setText(json);
         }
+        return ev;
     }
 
 }
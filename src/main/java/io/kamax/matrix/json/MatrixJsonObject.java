@@ -25,11 +25,20 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
 
 public class MatrixJsonObject {
 
     private JsonObject obj;
 
+    // The original text when the object was parsed from it alone, else the tree encoded on first use
+    private volatile String text;
+    // Once the tree was handed out it can be changed at any time, so its text is not kept anymore
+    private volatile boolean shared;
+
     public MatrixJsonObject(JsonObject obj) {
         this.obj = obj;
     }
@@ -66,6 +75,10 @@ public class MatrixJsonObject {
         return GsonUtil.getLong(obj, field);
     }
 
+    protected Optional<Boolean> findBoolean(String field) {
+        return GsonUtil.findPrimitive(obj, field).map(JsonPrimitive::getAsBoolean);
+    }
+
     /*
      * Returns the Double value, if the key is present, null else
      */
@@ -100,8 +113,60 @@ public class MatrixJsonObject {
         return GsonUtil.findArray(obj, field);
     }
 
+    /**
+     * The JSON tree of the object, which can be changed: the text given afterwards is encoded from it.
+     *
+     * @return The tree.
+     */
     public JsonObject getJson() {
+        shared = true;
+        text = null;
         return obj;
     }
 
+    void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * JSON text of the object.
+     *
+     * The original text is returned if the object was parsed from it. Else the tree is encoded, and the text is kept
+     * until the tree is handed out by {@link #getJson()}.
+     *
+     * @return The JSON text.
+     */
+    protected String getText() {
+        String t = text;
+        if (t == null) {
+            t = obj.toString();
+            if (!shared) {
+                text = t;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Write the JSON text of the object, without building it as a string if it was not already.
+     *
+     * @param out
+     *            The writer
+     * @throws IOException
+     *             If the writer fails
+     */
+    protected void writeText(Writer out) throws IOException {
+        String t = text;
+        if (t != null) {
+            out.write(t);
+            return;
+        }
+
+        // Same output as JsonElement.toString()
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        GsonUtil.get().getAdapter(JsonElement.class).write(writer, obj);
+        writer.flush();
+    }
+
 }
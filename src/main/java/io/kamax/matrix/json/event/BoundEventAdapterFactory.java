@@ -0,0 +1,117 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json.event;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+
+/**
+ * Gson adapters binding events straight from the JSON text to the subclasses of {@link BoundRoomEvent}.
+ *
+ * The tree-based classes parse the event into a tree, then copy its fields: binding while reading skips the tree,
+ * which is most of the cost for events with large contents, like power levels. The type of the events has to be
+ * known beforehand, for example by asking for the state event of a type:
+ *
+ * <pre>
+ * BoundRoomPowerLevelsEvent ev = BoundEventAdapterFactory.get().fromJson(json, BoundRoomPowerLevelsEvent.class);
+ * </pre>
+ */
+public class BoundEventAdapterFactory implements TypeAdapterFactory {
+
+    private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(new BoundEventAdapterFactory())
+            .create();
+
+    /**
+     * Gson instance with the adapters registered.
+     *
+     * @return The shared instance.
+     */
+    public static Gson get() {
+        return gson;
+    }
+
+    private static class Adapter<T extends BoundRoomEvent> extends TypeAdapter<T> {
+
+        private final Constructor<T> constructor;
+
+        Adapter(Constructor<T> constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                value.write(out);
+            }
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            T value;
+            try {
+                value = constructor.newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new JsonParseException("Unable to create " + constructor.getDeclaringClass().getName(), e);
+            }
+            value.read(in);
+            return value;
+        }
+
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (!BoundRoomEvent.class.isAssignableFrom(raw) || Modifier.isAbstract(raw.getModifiers())) {
+            return null;
+        }
+
+        try {
+            Constructor<? extends BoundRoomEvent> constructor = raw.asSubclass(BoundRoomEvent.class)
+                    .getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return (TypeAdapter<T>) new Adapter<>(constructor);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(raw.getName() + " has no constructor without arguments", e);
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json.event;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.event._RoomEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Room event bound straight from its JSON text by {@link BoundEventAdapterFactory}, without building a tree first.
+ *
+ * Only the fields known to the class are kept: {@link #getJson()} builds the event again from them, so unknown fields
+ * and unsigned data are not in it. The MatrixJson classes are to be used when the whole event is needed.
+ *
+ * Other event types can be bound by extending this class with a no-argument constructor.
+ */
+public abstract class BoundRoomEvent implements _RoomEvent {
+
+    private String id;
+    private String type;
+    private String roomId;
+    private String sender;
+    private String stateKey;
+    private long timestamp;
+    private volatile JsonObject json;
+
+    /**
+     * Read a string, or null if the value is null or not a primitive.
+     *
+     * @param in
+     *            The reader, before the value.
+     * @return The value.
+     * @throws IOException
+     *             If the value cannot be read.
+     */
+    protected static String readString(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Read a number, or null if the value is null or not a number.
+     *
+     * @param in
+     *            The reader, before the value.
+     * @return The value.
+     * @throws IOException
+     *             If the value cannot be read.
+     */
+    protected static Double readDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NUMBER) {
+            return in.nextDouble();
+        }
+
+        String value = readString(in);
+        if (Objects.isNull(value)) {
+            return null;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read an object of numbers, like the levels of power levels events. Members which are not numbers are skipped.
+     *
+     * @param in
+     *            The reader, before the object.
+     * @param values
+     *            The map to put the members in.
+     * @throws IOException
+     *             If the value cannot be read.
+     */
+    protected static void readDoubles(JsonReader in, Map<String, Double> values) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return;
+        }
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            Double value = readDouble(in);
+            if (Objects.nonNull(value)) {
+                values.put(name, value);
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Write a member, if its value is not null.
+     *
+     * @param out
+     *            The writer.
+     * @param name
+     *            The name of the member.
+     * @param value
+     *            The value.
+     * @throws IOException
+     *             If the value cannot be written.
+     */
+    protected static void write(JsonWriter out, String name, String value) throws IOException {
+        if (Objects.nonNull(value)) {
+            out.name(name).value(value);
+        }
+    }
+
+    /**
+     * Write a member, if its value is not null.
+     *
+     * @param out
+     *            The writer.
+     * @param name
+     *            The name of the member.
+     * @param value
+     *            The value.
+     * @throws IOException
+     *             If the value cannot be written.
+     */
+    protected static void write(JsonWriter out, String name, Number value) throws IOException {
+        if (Objects.nonNull(value)) {
+            out.name(name).value(value);
+        }
+    }
+
+    /**
+     * Read a member of the content.
+     *
+     * @param member
+     *            The name of the member.
+     * @param in
+     *            The reader, before the value.
+     * @return true if the value was read, false if it is to be skipped.
+     * @throws IOException
+     *             If the value cannot be read.
+     */
+    protected abstract boolean readContent(String member, JsonReader in) throws IOException;
+
+    /**
+     * Write the members of the content.
+     *
+     * @param out
+     *            The writer, inside the content object.
+     * @throws IOException
+     *             If the content cannot be written.
+     */
+    protected abstract void writeContent(JsonWriter out) throws IOException;
+
+    void read(JsonReader in) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "event_id":
+                    id = readString(in);
+                    break;
+                case "type":
+                    type = readString(in);
+                    break;
+                case "room_id":
+                    roomId = readString(in);
+                    break;
+                case "sender":
+                    sender = readString(in);
+                    break;
+                case "state_key":
+                    stateKey = readString(in);
+                    break;
+                case "origin_server_ts":
+                    Double ts = readDouble(in);
+                    timestamp = Objects.isNull(ts) ? 0 : ts.longValue();
+                    break;
+                case "content":
+                    if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                        in.skipValue();
+                        break;
+                    }
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (!readContent(in.nextName(), in)) {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    void write(JsonWriter out) throws IOException {
+        out.beginObject();
+        write(out, "event_id", id);
+        write(out, "type", type);
+        write(out, "room_id", roomId);
+        write(out, "sender", sender);
+        write(out, "state_key", stateKey);
+        out.name("origin_server_ts").value(timestamp);
+        out.name("content").beginObject();
+        writeContent(out);
+        out.endObject();
+        out.endObject();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getRoomId() {
+        return roomId;
+    }
+
+    @Override
+    public Date getTime() {
+        return new Date(timestamp);
+    }
+
+    @Override
+    public _MatrixID getSender() {
+        return MatrixID.asAcceptable(sender);
+    }
+
+    protected String getStateKey() {
+        return stateKey;
+    }
+
+    @Override
+    public JsonObject getJson() {
+        if (Objects.isNull(json)) {
+            json = BoundEventAdapterFactory.get().toJsonTree(this).getAsJsonObject();
+        }
+
+        return json;
+    }
+
+    @Override
+    public String toJson() {
+        // Once handed out, the tree can have been changed
+        JsonObject tree = json;
+        if (Objects.nonNull(tree)) {
+            return tree.toString();
+        }
+
+        return BoundEventAdapterFactory.get().toJson(this);
+    }
+
+    @Override
+    public void writeJson(Writer out) throws IOException {
+        JsonObject tree = json;
+        if (Objects.nonNull(tree)) {
+            out.write(tree.toString());
+            return;
+        }
+
+        JsonWriter writer = new JsonWriter(out);
+        write(writer);
+        writer.flush();
+    }
+
+}
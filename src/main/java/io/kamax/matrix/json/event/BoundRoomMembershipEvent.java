@@ -0,0 +1,83 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json.event;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.event._RoomMembershipEvent;
+
+import java.io.IOException;
+
+public class BoundRoomMembershipEvent extends BoundRoomEvent implements _RoomMembershipEvent {
+
+    private String membership;
+    private String avatarUrl;
+    private String displayName;
+
+    @Override
+    protected boolean readContent(String member, JsonReader in) throws IOException {
+        switch (member) {
+            case "membership":
+                membership = readString(in);
+                return true;
+            case "avatar_url":
+                avatarUrl = readString(in);
+                return true;
+            case "displayname":
+                displayName = readString(in);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeContent(JsonWriter out) throws IOException {
+        write(out, "membership", membership);
+        write(out, "avatar_url", avatarUrl);
+        write(out, "displayname", displayName);
+    }
+
+    @Override
+    public String getMembership() {
+        return membership;
+    }
+
+    @Override
+    public Optional<String> getAvatarUrl() {
+        return Optional.ofNullable(avatarUrl);
+    }
+
+    @Override
+    public Optional<String> getDisplayName() {
+        return Optional.ofNullable(displayName);
+    }
+
+    @Override
+    public _MatrixID getInvitee() {
+        return MatrixID.asAcceptable(getStateKey());
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json.event;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import io.kamax.matrix.event._RoomMessageEvent;
+
+import java.io.IOException;
+
+public class BoundRoomMessageEvent extends BoundRoomEvent implements _RoomMessageEvent {
+
+    private String body;
+    private String bodyType;
+    private String format;
+    private String formattedBody;
+
+    @Override
+    protected boolean readContent(String member, JsonReader in) throws IOException {
+        switch (member) {
+            case "body":
+                body = readString(in);
+                return true;
+            case "msgtype":
+                bodyType = readString(in);
+                return true;
+            case "format":
+                format = readString(in);
+                return true;
+            case "formatted_body":
+                formattedBody = readString(in);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeContent(JsonWriter out) throws IOException {
+        write(out, "body", body);
+        write(out, "msgtype", bodyType);
+        write(out, "format", format);
+        write(out, "formatted_body", formattedBody);
+    }
+
+    @Override
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public String getBodyType() {
+        return bodyType;
+    }
+
+    @Override
+    public Optional<String> getFormat() {
+        return Optional.ofNullable(format);
+    }
+
+    @Override
+    public Optional<String> getFormattedBody() {
+        return Optional.ofNullable(formattedBody);
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json.event;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import io.kamax.matrix.event._RoomPowerLevelsEvent;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BoundRoomPowerLevelsEvent extends BoundRoomEvent implements _RoomPowerLevelsEvent {
+
+    private Double ban;
+    private Map<String, Double> events = new HashMap<>();
+    private Double eventsDefault;
+    private Double invite;
+    private Double kick;
+    private Double redact;
+    private Double stateDefault;
+    private Map<String, Double> users = new HashMap<>();
+    private Double usersDefault;
+
+    private static void writeLevels(JsonWriter out, String name, Map<String, Double> levels) throws IOException {
+        out.name(name).beginObject();
+        for (Map.Entry<String, Double> level : levels.entrySet()) {
+            write(out, level.getKey(), level.getValue());
+        }
+        out.endObject();
+    }
+
+    @Override
+    protected boolean readContent(String member, JsonReader in) throws IOException {
+        switch (member) {
+            case "ban":
+                ban = readDouble(in);
+                return true;
+            case "events":
+                readDoubles(in, events);
+                return true;
+            case "events_default":
+                eventsDefault = readDouble(in);
+                return true;
+            case "invite":
+                invite = readDouble(in);
+                return true;
+            case "kick":
+                kick = readDouble(in);
+                return true;
+            case "redact":
+                redact = readDouble(in);
+                return true;
+            case "state_default":
+                stateDefault = readDouble(in);
+                return true;
+            case "users":
+                readDoubles(in, users);
+                return true;
+            case "users_default":
+                usersDefault = readDouble(in);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeContent(JsonWriter out) throws IOException {
+        write(out, "ban", ban);
+        writeLevels(out, "events", events);
+        write(out, "events_default", eventsDefault);
+        write(out, "invite", invite);
+        write(out, "kick", kick);
+        write(out, "redact", redact);
+        write(out, "state_default", stateDefault);
+        writeLevels(out, "users", users);
+        write(out, "users_default", usersDefault);
+    }
+
+    @Override
+    public Optional<Double> getBan() {
+        return Optional.ofNullable(ban);
+    }
+
+    @Override
+    public Map<String, Double> getEvents() {
+        return Collections.unmodifiableMap(events);
+    }
+
+    @Override
+    public Optional<Double> getEventsDefault() {
+        return Optional.ofNullable(eventsDefault);
+    }
+
+    @Override
+    public Optional<Double> getInvite() {
+        return Optional.ofNullable(invite);
+    }
+
+    @Override
+    public Optional<Double> getKick() {
+        return Optional.ofNullable(kick);
+    }
+
+    @Override
+    public Optional<Double> getRedact() {
+        return Optional.ofNullable(redact);
+    }
+
+    @Override
+    public Optional<Double> getStateDefault() {
+        return Optional.ofNullable(stateDefault);
+    }
+
+    @Override
+    public Map<String, Double> getUsers() {
+        return Collections.unmodifiableMap(users);
+    }
+
+    @Override
+    public Optional<Double> getUsersDefault() {
+        return Optional.ofNullable(usersDefault);
+    }
+
+}
@@ -21,12 +21,14 @@
 
 package io.kamax.matrix.json.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import io.kamax.matrix.event._MatrixEphemeralEvent;
 import io.kamax.matrix.json.MatrixJsonObject;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class MatrixJsonEphemeralEvent extends MatrixJsonObject implements _MatrixEphemeralEvent {
 
     private String type;
@@ -43,8 +45,12 @@ public class MatrixJsonEphemeralEvent extends MatrixJsonObject implements _Matri
 
     @Override
     public String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(this);
+        return getText();
+    }
+
+    @Override
+    public void writeJson(Writer out) throws IOException {
+        writeText(out);
     }
 
 }
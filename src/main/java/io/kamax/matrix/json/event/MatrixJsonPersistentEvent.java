@@ -20,7 +20,6 @@
 
 package io.kamax.matrix.json.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import io.kamax.matrix.MatrixID;
@@ -28,6 +27,8 @@ import io.kamax.matrix._MatrixID;
 import io.kamax.matrix.event._MatrixPersistentEvent;
 import io.kamax.matrix.json.MatrixJsonObject;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Date;
 
 public class MatrixJsonPersistentEvent extends MatrixJsonObject implements _MatrixPersistentEvent {
@@ -60,8 +61,12 @@ public class MatrixJsonPersistentEvent extends MatrixJsonObject implements _Matr
 
     @Override
     public String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(this);
+        return getText();
+    }
+
+    @Override
+    public void writeJson(Writer out) throws IOException {
+        writeText(out);
     }
 
     @Override
@@ -21,6 +21,7 @@
 package io.kamax.matrix.json.event;
 
 import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import io.kamax.matrix.event._RoomPowerLevelsEvent;
@@ -30,7 +31,6 @@ import io.kamax.matrix.json.MatrixJsonObject;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class MatrixJsonRoomPowerLevelsEvent extends MatrixJsonRoomEvent implements _RoomPowerLevelsEvent {
 
@@ -110,17 +110,14 @@ public class MatrixJsonRoomPowerLevelsEvent extends MatrixJsonRoomEvent implemen
             setStateDefault(getDoubleIfPresent("state_default"));
             setUsersDefault(getDoubleIfPresent("users_default"));
 
-            GsonUtil.findObj(obj, "events").ifPresent(eventsJson -> {
-                Map<String, Double> eventsMap = eventsJson.entrySet().stream()
-                        .collect(Collectors.toMap(it -> it.getKey(), it -> it.getValue().getAsDouble()));
-                setEvents(eventsMap);
-            });
-
-            GsonUtil.findObj(obj, "users").ifPresent(usersJson -> {
-                Map<String, Double> usersMap = usersJson.entrySet().stream()
-                        .collect(Collectors.toMap(it -> it.getKey(), it -> it.getValue().getAsDouble()));
-                setUsers(usersMap);
-            });
+            GsonUtil.findObj(obj, "events").ifPresent(eventsJson -> putLevels(eventsJson, events));
+            GsonUtil.findObj(obj, "users").ifPresent(usersJson -> putLevels(usersJson, users));
+        }
+
+        private void putLevels(JsonObject levelsJson, Map<String, Double> levels) {
+            for (Map.Entry<String, JsonElement> entry : levelsJson.entrySet()) {
+                levels.put(entry.getKey(), entry.getValue().getAsDouble());
+            }
         }
 
         Double getBan() {
@@ -0,0 +1,274 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import io.kamax.matrix.event._RoomPowerLevelsEvent;
+import io.kamax.matrix.json.MatrixJsonObject;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Authorization checks of a room, computed from its m.room.power_levels state.
+ *
+ * Levels are kept as primitive ints in open-addressing tables, so checks do not allocate. Instances are immutable and
+ * can be shared between threads; {@link #update(JsonObject)} builds the instance of the next power levels event.
+ */
+public class RoomPowerLevels {
+
+    public static final int defaultUsersLevel = 0;
+    public static final int defaultEventsLevel = 0;
+    public static final int defaultStateLevel = 50;
+    public static final int defaultActionLevel = 50;
+
+    private static final StringIntMap empty = new StringIntMap(0);
+
+    private int usersDefault = defaultUsersLevel;
+    private int eventsDefault = defaultEventsLevel;
+    private int stateDefault = defaultStateLevel;
+    private int ban = defaultActionLevel;
+    private int kick = defaultActionLevel;
+    private int redact = defaultActionLevel;
+    private int invite = defaultActionLevel;
+
+    private StringIntMap users = empty;
+    private StringIntMap events = empty;
+
+    public static RoomPowerLevels from(JsonObject content) {
+        return new RoomPowerLevels().update(content);
+    }
+
+    public static RoomPowerLevels from(_RoomPowerLevelsEvent ev) {
+        if (ev instanceof MatrixJsonObject) {
+            JsonElement content = ((MatrixJsonObject) ev).getJson().get("content");
+            return from(content != null && content.isJsonObject() ? content.getAsJsonObject() : new JsonObject());
+        }
+
+        RoomPowerLevels levels = new RoomPowerLevels();
+        levels.usersDefault = ev.getUsersDefault().map(Double::intValue).orElse(defaultUsersLevel);
+        levels.eventsDefault = ev.getEventsDefault().map(Double::intValue).orElse(defaultEventsLevel);
+        levels.stateDefault = ev.getStateDefault().map(Double::intValue).orElse(defaultStateLevel);
+        levels.ban = ev.getBan().map(Double::intValue).orElse(defaultActionLevel);
+        levels.kick = ev.getKick().map(Double::intValue).orElse(defaultActionLevel);
+        levels.redact = ev.getRedact().map(Double::intValue).orElse(defaultActionLevel);
+        levels.invite = ev.getInvite().map(Double::intValue).orElse(defaultActionLevel);
+        levels.users = toTable(ev.getUsers());
+        levels.events = toTable(ev.getEvents());
+
+        return levels;
+    }
+
+    private static StringIntMap toTable(Map<String, Double> map) {
+        StringIntMap table = new StringIntMap(map.size());
+        map.forEach((key, value) -> {
+            if (Objects.nonNull(value)) {
+                table.put(key, value.intValue());
+            }
+        });
+        return table;
+    }
+
+    private static StringIntMap toTable(JsonObject obj) {
+        if (Objects.isNull(obj)) {
+            return empty;
+        }
+
+        StringIntMap table = new StringIntMap(obj.size());
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+            Integer level = toLevel(entry.getValue());
+            if (Objects.nonNull(level)) {
+                table.put(entry.getKey(), level);
+            }
+        }
+        return table;
+    }
+
+    // Levels are integers, but older servers and clients send them as strings or with a fractional part
+    private static Integer toLevel(JsonElement el) {
+        if (Objects.isNull(el) || !el.isJsonPrimitive()) {
+            return null;
+        }
+
+        JsonPrimitive p = el.getAsJsonPrimitive();
+        if (p.isNumber()) {
+            return p.getAsNumber().intValue();
+        }
+
+        if (p.isString()) {
+            try {
+                return (int) Double.parseDouble(p.getAsString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private static StringIntMap patch(StringIntMap table, JsonObject obj) {
+        if (Objects.isNull(obj)) {
+            return empty;
+        }
+
+        if (table.size() == 0) {
+            return toTable(obj);
+        }
+
+        StringIntMap patched = table;
+        int kept = 0;
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+            Integer level = toLevel(entry.getValue());
+            if (Objects.isNull(level)) {
+                continue;
+            }
+
+            String key = entry.getKey();
+            int current = table.get(key, Integer.MIN_VALUE);
+            if (current != Integer.MIN_VALUE) {
+                kept++;
+            }
+            if (current != level) {
+                if (patched == table) {
+                    patched = table.copy();
+                }
+                patched.put(key, level);
+            }
+        }
+
+        // Some entries are gone, which is only worth looking for when fewer of them were found
+        if (kept < table.size()) {
+            StringIntMap removed = patched == table ? table.copy() : patched;
+            table.forEach((key, level) -> {
+                if (Objects.isNull(toLevel(obj.get(key)))) {
+                    removed.remove(key);
+                }
+            });
+            patched = removed;
+        }
+
+        return patched;
+    }
+
+    private static int getLevel(JsonObject content, String key, int defaultValue) {
+        Integer level = toLevel(content.get(key));
+        return Objects.isNull(level) ? defaultValue : level;
+    }
+
+    private static JsonObject findObj(JsonObject content, String key) {
+        JsonElement el = content.get(key);
+        return Objects.nonNull(el) && el.isJsonObject() ? el.getAsJsonObject() : null;
+    }
+
+    private RoomPowerLevels() {
+        // use the static builders
+    }
+
+    /**
+     * Build the power levels described by the content of a new m.room.power_levels event.
+     *
+     * Tables which did not change are shared with this instance, and changed ones are copied and patched with the
+     * difference instead of being rebuilt, as rooms tend to have many users but change few at a time.
+     *
+     * @param content
+     *            The content of the new event.
+     * @return The new power levels. This instance is left untouched.
+     */
+    public RoomPowerLevels update(JsonObject content) {
+        RoomPowerLevels next = new RoomPowerLevels();
+        next.usersDefault = getLevel(content, "users_default", defaultUsersLevel);
+        next.eventsDefault = getLevel(content, "events_default", defaultEventsLevel);
+        next.stateDefault = getLevel(content, "state_default", defaultStateLevel);
+        next.ban = getLevel(content, "ban", defaultActionLevel);
+        next.kick = getLevel(content, "kick", defaultActionLevel);
+        next.redact = getLevel(content, "redact", defaultActionLevel);
+        next.invite = getLevel(content, "invite", defaultActionLevel);
+
+        next.events = patch(events, findObj(content, "events"));
+        next.users = patch(users, findObj(content, "users"));
+
+        return next;
+    }
+
+    public int getUserLevel(String userId) {
+        return users.get(userId, usersDefault);
+    }
+
+    public int getEventLevel(String eventType, boolean isState) {
+        return events.get(eventType, isState ? stateDefault : eventsDefault);
+    }
+
+    public boolean canSend(String userId, String eventType, boolean isState) {
+        return getUserLevel(userId) >= getEventLevel(eventType, isState);
+    }
+
+    public boolean canRedact(String userId, String senderId) {
+        // Users can redact their own events as long as they can send redactions at all
+        int level = getUserLevel(userId);
+        return level >= getEventLevel("m.room.redaction", false) && (userId.equals(senderId) || level >= redact);
+    }
+
+    public boolean canInvite(String userId) {
+        return getUserLevel(userId) >= invite;
+    }
+
+    public boolean canKick(String userId, String targetId) {
+        int level = getUserLevel(userId);
+        return level >= kick && level > getUserLevel(targetId);
+    }
+
+    public boolean canBan(String userId, String targetId) {
+        int level = getUserLevel(userId);
+        return level >= ban && level > getUserLevel(targetId);
+    }
+
+    public int getUsersDefault() {
+        return usersDefault;
+    }
+
+    public int getEventsDefault() {
+        return eventsDefault;
+    }
+
+    public int getStateDefault() {
+        return stateDefault;
+    }
+
+    public int getBan() {
+        return ban;
+    }
+
+    public int getKick() {
+        return kick;
+    }
+
+    public int getRedact() {
+        return redact;
+    }
+
+    public int getInvite() {
+        return invite;
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.event._MatrixEphemeralEvent;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Latest read receipt of every user of a room, kept up to date from sync.
+ *
+ * Receipts point to event IDs, which are given a position as they are seen in the timeline so receipts can be
+ * compared. Only the positions of the last events are kept, up to a maximum given at creation. Receipts are stored in
+ * primitive arrays indexed by user, so queries do not allocate. Receipts for events not seen yet wait in lists by
+ * event ID, so adding an event does not go through all the users.
+ */
+public class RoomReceiptIndex {
+
+    public static final int defaultMaxEvents = 10000;
+
+    private static final int unknown = -1;
+
+    private final int maxEvents;
+
+    // Positions of the last events of the timeline, and the ring of their IDs to forget the oldest ones
+    private final StringIntMap positions;
+    private final String[] window;
+    private int nextPosition;
+
+    // Receipts, by the slot of their user
+    private final StringIntMap slots = new StringIntMap(16);
+    private String[] eventIds = new String[16];
+    private long[] timestamps = new long[16];
+    private int[] readPositions = new int[16];
+    private int users;
+
+    // Users whose receipt is for an event not seen yet, as lists linked through their slots, by event ID
+    private final StringIntMap pendingHeads = new StringIntMap(16);
+    private int[] pendingNext = new int[16];
+    private int[] pendingPrevious = new int[16];
+
+    public RoomReceiptIndex() {
+        this(defaultMaxEvents);
+    }
+
+    public RoomReceiptIndex(int maxEvents) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("The maximum number of events must be positive");
+        }
+
+        this.maxEvents = maxEvents;
+        this.positions = new StringIntMap(maxEvents);
+        this.window = new String[maxEvents];
+    }
+
+    /**
+     * Add the timeline events and receipts of a room from a sync batch.
+     *
+     * @param room
+     *            The room, as found in the sync data.
+     */
+    public synchronized void update(_SyncData.JoinedRoom room) {
+        for (_MatrixPersistentEvent ev : room.getTimeline().getEvents()) {
+            addEvent(ev.getId());
+        }
+
+        for (_MatrixEphemeralEvent ev : room.getEphemeral().getEvents()) {
+            if ("m.receipt".equals(ev.getType())) {
+                JsonElement content = ev.getJson().get("content");
+                if (Objects.nonNull(content) && content.isJsonObject()) {
+                    addReceipts(content.getAsJsonObject());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an event at the end of the timeline. Events already in the timeline are ignored.
+     *
+     * @param eventId
+     *            The ID of the event.
+     */
+    public synchronized void addEvent(String eventId) {
+        if (positions.containsKey(eventId)) {
+            return;
+        }
+
+        int position = nextPosition++;
+        int index = position % maxEvents;
+        if (Objects.nonNull(window[index])) {
+            positions.remove(window[index]);
+        }
+        window[index] = eventId;
+        positions.put(eventId, position);
+
+        int slot = pendingHeads.get(eventId, unknown);
+        if (slot != unknown) {
+            pendingHeads.remove(eventId);
+            for (; slot != unknown; slot = pendingNext[slot]) {
+                readPositions[slot] = position;
+            }
+        }
+    }
+
+    private void addPending(int slot) {
+        int head = pendingHeads.get(eventIds[slot], unknown);
+        pendingNext[slot] = head;
+        pendingPrevious[slot] = unknown;
+        if (head != unknown) {
+            pendingPrevious[head] = slot;
+        }
+        pendingHeads.put(eventIds[slot], slot);
+    }
+
+    private void removePending(int slot) {
+        int previous = pendingPrevious[slot];
+        int next = pendingNext[slot];
+        if (next != unknown) {
+            pendingPrevious[next] = previous;
+        }
+        if (previous != unknown) {
+            pendingNext[previous] = next;
+        } else if (next != unknown) {
+            pendingHeads.put(eventIds[slot], next);
+        } else {
+            pendingHeads.remove(eventIds[slot]);
+        }
+    }
+
+    /**
+     * Add the read receipts of the content of a m.receipt event.
+     *
+     * @param content
+     *            The content of the event.
+     */
+    public synchronized void addReceipts(JsonObject content) {
+        for (Map.Entry<String, JsonElement> target : content.entrySet()) {
+            if (!target.getValue().isJsonObject()) {
+                continue;
+            }
+
+            JsonElement read = target.getValue().getAsJsonObject().get("m.read");
+            if (Objects.isNull(read) || !read.isJsonObject()) {
+                continue;
+            }
+
+            for (Map.Entry<String, JsonElement> user : read.getAsJsonObject().entrySet()) {
+                long ts = 0;
+                if (user.getValue().isJsonObject()) {
+                    JsonElement tsEl = user.getValue().getAsJsonObject().get("ts");
+                    if (Objects.nonNull(tsEl) && tsEl.isJsonPrimitive() && tsEl.getAsJsonPrimitive().isNumber()) {
+                        ts = tsEl.getAsLong();
+                    }
+                }
+                setReceipt(user.getKey(), target.getKey(), ts);
+            }
+        }
+    }
+
+    /**
+     * Set the read receipt of a user. Receipts for an event older than the current one of the user are ignored.
+     *
+     * @param userId
+     *            The ID of the user.
+     * @param eventId
+     *            The ID of the event the user has read up to.
+     * @param ts
+     *            The time of the receipt, in milliseconds since the epoch.
+     */
+    public synchronized void setReceipt(String userId, String eventId, long ts) {
+        int position = positions.get(eventId, unknown);
+        int slot = slots.get(userId, unknown);
+        if (slot == unknown) {
+            slot = users++;
+            if (slot == eventIds.length) {
+                int capacity = slot * 2;
+                eventIds = Arrays.copyOf(eventIds, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                readPositions = Arrays.copyOf(readPositions, capacity);
+                pendingNext = Arrays.copyOf(pendingNext, capacity);
+                pendingPrevious = Arrays.copyOf(pendingPrevious, capacity);
+            }
+            slots.put(userId, slot);
+        } else {
+            if (position != unknown && position < readPositions[slot]) {
+                return;
+            }
+
+            if (readPositions[slot] == unknown) {
+                removePending(slot);
+            }
+        }
+
+        eventIds[slot] = eventId;
+        timestamps[slot] = ts;
+        readPositions[slot] = position;
+        if (position == unknown) {
+            addPending(slot);
+        }
+    }
+
+    public synchronized int getUserCount() {
+        return users;
+    }
+
+    public synchronized Optional<String> getReadEventId(String userId) {
+        int slot = slots.get(userId, unknown);
+        return slot == unknown ? Optional.empty() : Optional.of(eventIds[slot]);
+    }
+
+    /**
+     * Time of the read receipt of a user.
+     *
+     * @param userId
+     *            The ID of the user.
+     * @return The time of the receipt in milliseconds since the epoch, or 0 if the user has none.
+     */
+    public synchronized long getReadTimestamp(String userId) {
+        int slot = slots.get(userId, unknown);
+        return slot == unknown ? 0 : timestamps[slot];
+    }
+
+    /**
+     * Number of events of the timeline after the read receipt of a user.
+     *
+     * Users without a receipt, or whose receipt is for an event which is not in the timeline, have not read any of
+     * the kept events.
+     *
+     * @param userId
+     *            The ID of the user.
+     * @return The number of unread events, at most the number of events kept.
+     */
+    public synchronized int getUnreadCount(String userId) {
+        int kept = Math.min(nextPosition, maxEvents);
+        int slot = slots.get(userId, unknown);
+        if (slot == unknown || readPositions[slot] == unknown) {
+            return kept;
+        }
+
+        return Math.min(kept, nextPosition - 1 - readPositions[slot]);
+    }
+
+    /**
+     * Number of users who have read an event, so whose receipt is for it or a later event.
+     *
+     * @param eventId
+     *            The ID of the event.
+     * @return The number of users, or -1 if the event is not in the timeline.
+     */
+    public synchronized int getReadCount(String eventId) {
+        int position = positions.get(eventId, unknown);
+        if (position == unknown) {
+            return -1;
+        }
+
+        int count = 0;
+        for (int i = 0; i < users; i++) {
+            if (readPositions[i] >= position) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
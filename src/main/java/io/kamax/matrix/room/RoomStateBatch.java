@@ -0,0 +1,165 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.MatrixErrorInfo;
+import io.kamax.matrix.client.MatrixClientRequestException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State events to set in a room at once.
+ *
+ * The events are sent concurrently, so their order is not kept: an event which needs another to be set first, like a
+ * change allowed by new power levels, is to be sent in a later batch.
+ *
+ * Every entry gets an outcome, in the order given, whatever happens to the others.
+ */
+public class RoomStateBatch {
+
+    public static class Entry {
+
+        private final String type;
+        private final String key;
+        private final JsonObject content;
+
+        Entry(String type, String key, JsonObject content) {
+            this.type = type;
+            this.key = key;
+            this.content = content;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public JsonObject getContent() {
+            return content;
+        }
+
+    }
+
+    public enum Status {
+
+        /**
+         * The state event was sent.
+         */
+        Sent,
+
+        /**
+         * The room already had this content for the state entry, so nothing was sent.
+         */
+        Unchanged,
+
+        /**
+         * The request failed.
+         */
+        Failed
+
+    }
+
+    public static class Outcome {
+
+        private final Entry entry;
+        private final Status status;
+        private final String eventId;
+        private final RuntimeException failure;
+
+        public Outcome(Entry entry, Status status, String eventId, RuntimeException failure) {
+            this.entry = entry;
+            this.status = status;
+            this.eventId = eventId;
+            this.failure = failure;
+        }
+
+        public Entry getEntry() {
+            return entry;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return The ID of the state event, only if it was sent.
+         */
+        public Optional<String> getEventId() {
+            return Optional.ofNullable(eventId);
+        }
+
+        public Optional<RuntimeException> getFailure() {
+            return Optional.ofNullable(failure);
+        }
+
+        public Optional<MatrixErrorInfo> getError() {
+            if (failure instanceof MatrixClientRequestException) {
+                return ((MatrixClientRequestException) failure).getError();
+            }
+
+            return Optional.empty();
+        }
+
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private int concurrency = 0;
+
+    public RoomStateBatch add(String type, String key, JsonObject content) {
+        entries.add(new Entry(type, key, content));
+
+        return this;
+    }
+
+    public RoomStateBatch add(String type, JsonObject content) {
+        return add(type, "", content);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency
+     *            The number of requests which can be in flight at once, 0 by default to use the maximum number of
+     *            requests per host of the client defaults or, if there is none, the one of the transport dispatcher,
+     *            5 unless changed
+     * @return This batch.
+     */
+    public RoomStateBatch setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+
+        return this;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.event._MatrixEvent;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+import io.kamax.matrix.event._MatrixStateEvent;
+import io.kamax.matrix.json.GsonUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Current state of a room, by event type and state key, kept up to date from sync.
+ *
+ * Only the content of state events is kept, as compact UTF-8 JSON which is parsed again when asked for, so a member
+ * costs a couple hundred bytes instead of the kilobytes of its Gson tree. The usual event types are numbered once for
+ * all the stores and other ones by each store, and state keys are looked up in primitive maps, so many rooms with many
+ * members can be kept in memory.
+ */
+public class RoomStateStore {
+
+    private static final int unknown = -1;
+
+    // The usual event types are numbered once for all the stores. Any member allowed to send state can make up new
+    // types, so the others are numbered by each store, after them.
+    private static final String[] knownTypes = { "m.room.create", "m.room.member", "m.room.power_levels",
+            "m.room.join_rules", "m.room.history_visibility", "m.room.guest_access", "m.room.name", "m.room.topic",
+            "m.room.avatar", "m.room.canonical_alias", "m.room.aliases", "m.room.encryption", "m.room.server_acl",
+            "m.room.pinned_events", "m.room.third_party_invite", "m.room.tombstone", "m.room.related_groups" };
+    private static final StringIntMap knownTypeIds = new StringIntMap(knownTypes.length);
+
+    static {
+        for (int i = 0; i < knownTypes.length; i++) {
+            knownTypeIds.put(knownTypes[i], i);
+        }
+    }
+
+    private StringIntMap otherTypeIds;
+    private String[] otherTypes = new String[0];
+
+    private int findTypeId(String type) {
+        int id = knownTypeIds.get(type, unknown);
+        if (id != unknown || Objects.isNull(otherTypeIds)) {
+            return id;
+        }
+
+        return otherTypeIds.get(type, unknown);
+    }
+
+    private int getTypeId(String type) {
+        int id = findTypeId(type);
+        if (id != unknown) {
+            return id;
+        }
+
+        if (Objects.isNull(otherTypeIds)) {
+            otherTypeIds = new StringIntMap(1);
+        }
+        int index = otherTypeIds.size();
+        if (index == otherTypes.length) {
+            otherTypes = Arrays.copyOf(otherTypes, Math.max(4, index * 2));
+        }
+        otherTypes[index] = type;
+        id = knownTypes.length + index;
+        otherTypeIds.put(type, id);
+        return id;
+    }
+
+    private String getTypeName(int typeId) {
+        return typeId < knownTypes.length ? knownTypes[typeId] : otherTypes[typeId - knownTypes.length];
+    }
+
+    // Slot of each state key, by type ID
+    private StringIntMap[] slots = new StringIntMap[0];
+
+    // State entries, by slot
+    private int[] types = new int[4];
+    private String[] stateKeys = new String[4];
+    private byte[][] contents = new byte[4][];
+    private int size;
+
+    /**
+     * Apply the state changes of a room from a sync batch: the state before the timeline, then the state events of
+     * the timeline, in order.
+     *
+     * @param room
+     *            The room, as found in the sync data.
+     */
+    public synchronized void update(_SyncData.JoinedRoom room) {
+        for (_MatrixStateEvent ev : room.getState().getEvents()) {
+            apply(ev);
+        }
+
+        for (_MatrixPersistentEvent ev : room.getTimeline().getEvents()) {
+            apply(ev);
+        }
+    }
+
+    /**
+     * Apply an event, if it is a state event.
+     *
+     * @param ev
+     *            The event.
+     * @return true if the event was a state event, false if it was ignored.
+     */
+    public synchronized boolean apply(_MatrixEvent ev) {
+        JsonObject json = ev.getJson();
+        Optional<String> stateKey = GsonUtil.findString(json, "state_key");
+        if (!stateKey.isPresent()) {
+            return false;
+        }
+
+        put(ev.getType(), stateKey.get(), GsonUtil.findObj(json, "content").orElseGet(JsonObject::new));
+        return true;
+    }
+
+    /**
+     * Set the content of a state entry.
+     *
+     * @param type
+     *            The event type.
+     * @param stateKey
+     *            The state key.
+     * @param content
+     *            The content of the state event.
+     */
+    public synchronized void put(String type, String stateKey, JsonObject content) {
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        int typeId = getTypeId(type);
+        if (typeId >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(typeId + 1, slots.length * 2));
+        }
+        if (Objects.isNull(slots[typeId])) {
+            slots[typeId] = new StringIntMap(1);
+        }
+
+        int slot = slots[typeId].get(stateKey, unknown);
+        if (slot != unknown) {
+            if (!Arrays.equals(contents[slot], bytes)) {
+                contents[slot] = bytes;
+            }
+            return;
+        }
+
+        slot = size++;
+        if (slot == contents.length) {
+            int capacity = slot * 2;
+            types = Arrays.copyOf(types, capacity);
+            stateKeys = Arrays.copyOf(stateKeys, capacity);
+            contents = Arrays.copyOf(contents, capacity);
+        }
+        types[slot] = typeId;
+        stateKeys[slot] = stateKey;
+        contents[slot] = bytes;
+        slots[typeId].put(stateKey, slot);
+    }
+
+    /**
+     * Remove a state entry.
+     *
+     * @param type
+     *            The event type.
+     * @param stateKey
+     *            The state key.
+     * @return true if the entry was found, false if not.
+     */
+    public synchronized boolean remove(String type, String stateKey) {
+        int slot = findSlot(type, stateKey);
+        if (slot == unknown) {
+            return false;
+        }
+
+        slots[types[slot]].remove(stateKey);
+
+        // Move the last entry in the freed slot, so slots stay packed
+        int last = --size;
+        if (slot != last) {
+            types[slot] = types[last];
+            stateKeys[slot] = stateKeys[last];
+            contents[slot] = contents[last];
+            slots[types[slot]].put(stateKeys[slot], slot);
+        }
+        stateKeys[last] = null;
+        contents[last] = null;
+        return true;
+    }
+
+    private int findSlot(String type, String stateKey) {
+        int typeId = findTypeId(type);
+        if (typeId == unknown || typeId >= slots.length || Objects.isNull(slots[typeId])) {
+            return unknown;
+        }
+
+        return slots[typeId].get(stateKey, unknown);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean contains(String type, String stateKey) {
+        return findSlot(type, stateKey) != unknown;
+    }
+
+    /**
+     * Content of a state entry, as JSON text.
+     *
+     * @param type
+     *            The event type.
+     * @param stateKey
+     *            The state key.
+     * @return The content, if the entry exists.
+     */
+    public synchronized Optional<String> getRawContent(String type, String stateKey) {
+        int slot = findSlot(type, stateKey);
+        return slot == unknown ? Optional.empty() : Optional.of(new String(contents[slot], StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Content of a state entry, parsed again on every call.
+     *
+     * @param type
+     *            The event type.
+     * @param stateKey
+     *            The state key.
+     * @return The content, if the entry exists.
+     */
+    public Optional<JsonObject> getContent(String type, String stateKey) {
+        return getRawContent(type, stateKey).map(GsonUtil::parseObj);
+    }
+
+    /**
+     * State keys of a type, like the user IDs of the members for m.room.member.
+     *
+     * @param type
+     *            The event type.
+     * @return The state keys, in no particular order.
+     */
+    public synchronized List<String> getStateKeys(String type) {
+        int typeId = findTypeId(type);
+        if (typeId == unknown || typeId >= slots.length || Objects.isNull(slots[typeId])) {
+            return Collections.emptyList();
+        }
+
+        List<String> keys = new ArrayList<>(slots[typeId].size());
+        slots[typeId].forEach((key, slot) -> keys.add(key));
+        return keys;
+    }
+
+    /**
+     * Event types with at least one state entry.
+     *
+     * @return The types, in no particular order.
+     */
+    public synchronized List<String> getTypes() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < slots.length; i++) {
+            if (Objects.nonNull(slots[i]) && slots[i].size() > 0) {
+                result.add(getTypeName(i));
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Map of strings to primitive ints, using open addressing with linear probing.
+ *
+ * Lookups do not allocate. Instances are not thread-safe while being changed: they are filled, then only read, and
+ * copied when they have to change.
+ */
+class StringIntMap {
+
+    private String[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    StringIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private StringIntMap(StringIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        size = other.size;
+    }
+
+    StringIntMap copy() {
+        return new StringIntMap(this);
+    }
+
+    private int slotOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int indexOf(String key) {
+        for (int i = slotOf(key);; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    int get(String key, int defaultValue) {
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    void put(String key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+
+        int i = slotOf(key);
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == null) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    void remove(String key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return;
+        }
+
+        // Shift back the next entries of the cluster which would not be found anymore, so no tombstone is needed
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int slot = slotOf(keys[j]);
+            boolean reachable = i <= j ? (i < slot && slot <= j) : (i < slot || slot <= j);
+            if (!reachable) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        values[i] = 0;
+        size--;
+    }
+
+    void forEach(ObjIntConsumer<String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+}
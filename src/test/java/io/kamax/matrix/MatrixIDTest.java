@@ -22,6 +22,13 @@ package io.kamax.matrix;
 
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class MatrixIDTest {
@@ -88,4 +95,61 @@ public class MatrixIDTest {
         new MatrixID(invalidMxId5);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMatrixIDsLineTerminator() {
+        new MatrixID("@john\n.doe:example.org");
+    }
+
+    @Test
+    public void strictValidity() {
+        assertTrue(MatrixID.from(validMxId1).acceptable().isValid());
+        assertFalse(MatrixID.from(validMxId3).acceptable().isValid());
+        assertFalse(MatrixID.from("@:example.org").acceptable().isValid());
+        assertFalse(MatrixID.from("@john doe:example.org").acceptable().isValid());
+        assertTrue(MatrixID.from(validMxId3).acceptable().canonicalize().isValid());
+    }
+
+    @Test
+    public void sameResultAsPatterns() {
+        char[] alphabet = "@:abcXYZ09-.=_ \n\u2028é".toCharArray();
+        Random r = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            char[] raw = new char[r.nextInt(8)];
+            for (int j = 0; j < raw.length; j++) {
+                raw[j] = alphabet[r.nextInt(alphabet.length)];
+            }
+            String id = (r.nextBoolean() ? "@" : "") + new String(raw);
+
+            Matcher m = MatrixID.LAX_PATTERN.matcher(id);
+            if (!m.matches()) {
+                try {
+                    MatrixID.from(id);
+                    throw new AssertionError(id + " should not be accepted");
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+            }
+
+            MatrixID mxId = MatrixID.from(id).acceptable();
+            assertEquals(id, m.group(1), mxId.getLocalPart());
+            assertEquals(id, m.group(2), mxId.getDomain());
+            assertEquals(id, MatrixID.STRICT_PATTERN.matcher(id).matches(), mxId.isValid());
+        }
+    }
+
+    @Test
+    public void internedWithCache() {
+        try {
+            assertNotSame(MatrixID.asAcceptable(validMxId1), MatrixID.asAcceptable(validMxId1));
+
+            MatrixID.enableCache(16);
+            MatrixID mxId = MatrixID.asAcceptable(validMxId1);
+            assertSame(mxId, MatrixID.asAcceptable(validMxId1));
+            assertSame(mxId, MatrixID.asValid(validMxId1));
+            assertEquals(MatrixID.asAcceptable(validMxId2).getId(), validMxId2);
+        } finally {
+            MatrixID.disableCache();
+        }
+    }
+
 }
@@ -20,11 +20,17 @@
 
 package io.kamax.matrix;
 
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class MatrixIdCodecTest {
@@ -51,4 +57,127 @@ public class MatrixIdCodecTest {
         }
     }
 
+    @Test
+    public void plainIsUnchanged() {
+        assertEquals("john.doe", MatrixIdCodec.decode("john.doe"));
+        assertEquals("a@b@c", MatrixIdCodec.decode("a=40b=40c"));
+        assertEquals("=4g=", MatrixIdCodec.decode("=4g="));
+    }
+
+    // Regex-based implementation, used as reference
+    private static String legacyEncode(String decoded) {
+        decoded = decoded.toLowerCase();
+
+        StringBuilder builder = new StringBuilder();
+        for (Character c : decoded.toCharArray()) {
+            String s = c.toString();
+            Matcher lp = MatrixIdCodec.ENCODE_PATTERN.matcher(s);
+            if (!lp.find()) {
+                builder.append(s);
+            } else {
+                for (byte b : c.toString().getBytes(StandardCharsets.UTF_8)) {
+                    builder.append(MatrixIdCodec.DELIMITER);
+                    builder.append(Hex.encodeHexString(new byte[] { b }));
+                }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    // Regex-based implementation, used as reference. Only correct for inputs with a single encoded sequence.
+    private static String legacyDecode(String encoded) {
+        StringBuilder builder = new StringBuilder();
+
+        Matcher m = MatrixIdCodec.DECODE_PATTERN.matcher(encoded);
+        int prevEnd = 0;
+        while (m.find()) {
+            try {
+                int start = m.start();
+                int end = m.end();
+                String sub = encoded.substring(start, end).replaceAll(MatrixIdCodec.DELIMITER, "");
+                String decoded = new String(Hex.decodeHex(sub.toCharArray()), StandardCharsets.UTF_8);
+                builder.append(encoded, prevEnd, start);
+                builder.append(decoded);
+                prevEnd = end - 1;
+            } catch (DecoderException e) {
+                e.printStackTrace();
+            }
+        }
+        prevEnd++;
+        if (prevEnd < encoded.length()) {
+            builder.append(encoded, prevEnd, encoded.length());
+        }
+
+        if (builder.length() == 0) {
+            return encoded;
+        } else {
+            return builder.toString();
+        }
+    }
+
+    private static String randomString(Random r, char[] alphabet, int maxLength) {
+        StringBuilder b = new StringBuilder();
+        int length = r.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            if (r.nextInt(4) == 0) {
+                b.append((char) r.nextInt(Character.MAX_VALUE + 1));
+            } else {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void fuzzEncodingAgainstLegacy() {
+        char[] alphabet = "abcXYZ09-.=_@ :/+áわ\uD83D\uDE00".toCharArray();
+        Random r = new Random(1);
+        for (int i = 0; i < 50000; i++) {
+            String s = randomString(r, alphabet, 24);
+            assertEquals(s, legacyEncode(s), MatrixIdCodec.encode(s));
+        }
+    }
+
+    @Test
+    public void fuzzDecodingAgainstLegacy() {
+        char[] alphabet = "abc09.=_@Gf".toCharArray();
+        Random r = new Random(2);
+        int compared = 0;
+        while (compared < 50000) {
+            String s = randomString(r, alphabet, 24);
+            if (r.nextBoolean()) {
+                s = s + MatrixIdCodec.encode(randomString(r, alphabet, 6)) + s;
+            }
+
+            // The legacy implementation loses characters when there is not exactly one sequence to decode
+            int sequences = 0;
+            Matcher m = MatrixIdCodec.DECODE_PATTERN.matcher(s);
+            while (m.find()) {
+                sequences++;
+            }
+            if (sequences != 1) {
+                continue;
+            }
+
+            assertEquals(s, legacyDecode(s), MatrixIdCodec.decode(s));
+            compared++;
+        }
+    }
+
+    @Test
+    public void fuzzRoundTrip() {
+        char[] alphabet = "abc09-._@ :/+áわ".toCharArray();
+        Random r = new Random(3);
+        for (int i = 0; i < 50000; i++) {
+            String s = randomString(r, alphabet, 24).replace("=", "");
+            // Characters are encoded one at a time, so surrogate pairs cannot survive a round trip
+            if (s.chars().anyMatch(c -> Character.isSurrogate((char) c))) {
+                continue;
+            }
+
+            assertEquals(s, s.toLowerCase(), MatrixIdCodec.decode(MatrixIdCodec.encode(s)));
+        }
+    }
+
 }
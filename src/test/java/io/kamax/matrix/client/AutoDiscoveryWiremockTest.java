@@ -0,0 +1,158 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+
+import okhttp3.HttpUrl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class AutoDiscoveryWiremockTest extends MatrixHttpTest {
+
+    private final String wellKnownUrl = "/.well-known/matrix/client";
+    private final String deadUrl = "http://localhost:1";
+
+    private AutoDiscovery discovery() {
+        return new AutoDiscovery() {
+
+            @Override
+            protected HttpUrl getWellKnownUrl(String hostname) {
+                return HttpUrl.parse(baseUrl + wellKnownUrl);
+            }
+
+        };
+    }
+
+    private void stubServers() {
+        stubFor(get(urlEqualTo(wellKnownUrl)).willReturn(aResponse().withStatus(200).withFixedDelay(200)
+                .withBody("{\"m.homeserver\":{\"base_urls\":[\"" + deadUrl + "\",\"" + baseUrl + "\"]}," +
+                        "\"m.identity_server\":{\"base_urls\":[\"" + deadUrl + "\",\"" + baseUrl + "\"]}}")));
+        stubFor(get(urlEqualTo("/_matrix/client/versions"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"versions\":[\"r0.4.0\"]}")));
+        stubFor(get(urlEqualTo("/_matrix/identity/api/v1"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+    }
+
+    @Test
+    public void firstHealthyCandidateIsUsed() {
+        stubServers();
+
+        AutoDiscovery.Result result = discovery().discover(domain);
+        assertEquals(baseUrl, result.getHsBaseUrl().get().toString());
+        assertEquals(baseUrl, result.getIsBaseUrl().get().toString());
+        assertEquals(2, result.getSettings().get().getHsBaseUrls().size());
+    }
+
+    @Test
+    public void resultsAreCachedAndShared() throws Exception {
+        stubServers();
+
+        AutoDiscovery discovery = discovery();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<AutoDiscovery.Result>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> discovery.discover(domain));
+            }
+
+            List<Future<AutoDiscovery.Result>> results = executor.invokeAll(tasks);
+            for (Future<AutoDiscovery.Result> result : results) {
+                assertSame(results.get(0).get(), result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        discovery.discover(domain);
+        verify(1, getRequestedFor(urlEqualTo(wellKnownUrl)));
+    }
+
+    @Test
+    public void missingDataIsCached() {
+        stubFor(get(urlEqualTo(wellKnownUrl)).willReturn(aResponse().withStatus(404)));
+
+        AutoDiscovery discovery = discovery();
+        assertFalse(discovery.discover(domain).getSettings().isPresent());
+        assertFalse(discovery.discover(domain).getSettings().isPresent());
+        verify(1, getRequestedFor(urlEqualTo(wellKnownUrl)));
+
+        discovery.setTtl(0, 0);
+        discovery.invalidate(domain);
+        discovery.discover(domain);
+        discovery.discover(domain);
+        verify(3, getRequestedFor(urlEqualTo(wellKnownUrl)));
+    }
+
+    @Test
+    public void errorsAreNotCached() {
+        stubServers();
+
+        AtomicBoolean broken = new AtomicBoolean(true);
+        AutoDiscovery discovery = new AutoDiscovery() {
+
+            @Override
+            protected HttpUrl getWellKnownUrl(String hostname) {
+                if (broken.getAndSet(false)) {
+                    throw new Error("Broken");
+                }
+                return HttpUrl.parse(baseUrl + wellKnownUrl);
+            }
+
+        };
+
+        try {
+            discovery.discover(domain);
+            fail("The error should have been thrown");
+        } catch (Error e) {
+            assertEquals("Broken", e.getMessage());
+        }
+
+        // Used to wait forever on the discovery which never completed
+        assertEquals(baseUrl, discovery.discover(domain).getHsBaseUrl().get().toString());
+    }
+
+    @Test
+    public void clientUsesDiscovery() {
+        stubServers();
+
+        MatrixClientContext context = new MatrixClientContext().setDomain(domain);
+        MatrixHttpClient client = new MatrixHttpClient(context, new MatrixClientDefaults().setDiscovery(discovery()));
+        client.discoverSettings();
+        assertEquals(baseUrl, context.getHsBaseUrl().toString());
+        assertEquals(baseUrl, context.getIsBaseUrl().toString());
+    }
+
+}
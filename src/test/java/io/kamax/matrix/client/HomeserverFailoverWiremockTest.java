@@ -0,0 +1,150 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.client;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.hs._MatrixRoom;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HomeserverFailoverWiremockTest extends MatrixHttpTest {
+
+    private final int fallbackPort = 8099;
+    private final String fallbackUrl = "http://" + hostname + ":" + fallbackPort;
+    private final String joinedRoomsUrl = "/_matrix/client/r0/joined_rooms";
+    private final String joinedRoomsBody = "{\"joined_rooms\":[]}";
+
+    @Rule
+    public WireMockRule fallback = new WireMockRule(options().port(fallbackPort));
+
+    private final HomeserverFailover failover = new HomeserverFailover().setBreaker(2, 60 * 1000);
+
+    private MatrixHttpClient client(String primaryUrl) throws MalformedURLException {
+        return client(primaryUrl, new MatrixClientDefaults());
+    }
+
+    private MatrixHttpClient client(String primaryUrl, MatrixClientDefaults defaults) throws MalformedURLException {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, primaryUrl);
+        MatrixClientContext context = new MatrixClientContext(hs, MatrixID.from("bob", domain).valid(), testToken)
+                .setHsFallbackUrls(Collections.singletonList(new URL(fallbackUrl)));
+        return new MatrixHttpClient(context, defaults.setFailover(failover));
+    }
+
+    @Test
+    public void unreachableBaseUrlIsTakenOutOfRotation() throws MalformedURLException {
+        fallback.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        MatrixHttpClient client = client("http://localhost:1");
+
+        client.getJoinedRooms();
+        assertEquals(CircuitBreaker.State.CLOSED, failover.getBreaker(new URL("http://localhost:1")).getState());
+        client.getJoinedRooms();
+        assertEquals(CircuitBreaker.State.OPEN, failover.getBreaker(new URL("http://localhost:1")).getState());
+        client.getJoinedRooms();
+
+        fallback.verify(3, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(CircuitBreaker.State.CLOSED, failover.getBreaker(new URL(fallbackUrl)).getState());
+    }
+
+    @Test
+    public void serverFailuresFailOverOnlyWhenSafe() throws MalformedURLException {
+        wireMockRule.stubFor(any(anyUrl()).willReturn(aResponse().withStatus(503)));
+        fallback.stubFor(any(anyUrl()).willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        MatrixHttpClient client = client(baseUrl);
+
+        assertTrue(client.getJoinedRooms().isEmpty());
+        fallback.verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+
+        // Joining is not idempotent, so it is not sent again after the server got it
+        try {
+            client.joinRoom("!room:" + domain);
+            fail("Join should have failed on the unavailable base URL");
+        } catch (MatrixClientRequestException e) {
+            // expected
+        }
+        fallback.verify(0, postRequestedFor(anyUrl()));
+    }
+
+    @Test
+    public void singleProbeAfterOpenDuration() throws Exception {
+        failover.setBreaker(1, 500);
+        CircuitBreaker breaker = failover.getBreaker(new URL(baseUrl));
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(600);
+
+        wireMockRule.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody).withFixedDelay(1000)));
+        fallback.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        // Both requests must reach the failover, not be merged into one
+        MatrixHttpClient client = client(baseUrl, new MatrixClientDefaults().setCoalescing(false));
+
+        CompletableFuture<List<_MatrixRoom>> probe = CompletableFuture.supplyAsync(client::getJoinedRooms);
+        Thread.sleep(100);
+        CompletableFuture<List<_MatrixRoom>> other = CompletableFuture.supplyAsync(client::getJoinedRooms);
+        CompletableFuture.allOf(probe, other).get(5, TimeUnit.SECONDS);
+
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        fallback.verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void slowReadsAreHedged() throws MalformedURLException {
+        failover.setHedging(true).setHedgeDelay(95, 5);
+        wireMockRule.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        fallback.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        MatrixHttpClient client = client(baseUrl);
+        for (int i = 0; i < 5; i++) {
+            client.getJoinedRooms();
+        }
+        fallback.verify(0, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+
+        wireMockRule.stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody).withFixedDelay(5000)));
+        long start = System.currentTimeMillis();
+        assertTrue(client.getJoinedRooms().isEmpty());
+
+        assertTrue(System.currentTimeMillis() - start < 2500);
+        fallback.verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+    }
+
+}
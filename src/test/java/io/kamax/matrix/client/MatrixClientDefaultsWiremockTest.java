@@ -0,0 +1,153 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MatrixClientDefaultsWiremockTest extends MatrixHttpTest {
+
+    private final String joinedRoomsUrl = "/_matrix/client/r0/joined_rooms";
+
+    private MatrixHttpClient client(MatrixClientDefaults defaults) {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, MatrixID.from("bob", domain).valid(), testToken),
+                defaults);
+    }
+
+    @Test
+    public void transportSettings() {
+        OkHttpClient client = new MatrixClientDefaults()
+                .setConnectTimeout(1000)
+                .setRequestTimeout(2000)
+                .setHttp2(false)
+                .getHttpClient();
+        assertEquals(1000, client.connectTimeoutMillis());
+        assertEquals(2000, client.readTimeoutMillis());
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), client.protocols());
+
+        client = new MatrixClientDefaults().setRequestTimeout(2000).setSocketTimeout(3000).getHttpClient();
+        assertEquals(3000, client.readTimeoutMillis());
+        assertEquals(3000, client.writeTimeoutMillis());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), client.protocols());
+
+        client = new MatrixClientDefaults().setHttp2PriorKnowledge(true).getHttpClient();
+        assertEquals(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE), client.protocols());
+    }
+
+    @Test
+    public void clientsShareTheTransport() {
+        stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody("{\"joined_rooms\":[]}")));
+
+        MatrixClientDefaults defaults = new MatrixClientDefaults();
+        client(defaults).getJoinedRooms();
+        client(defaults).getJoinedRooms();
+        assertEquals(1, defaults.getHttpClient().connectionPool().connectionCount());
+    }
+
+    @Test
+    public void compression() {
+        stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody("{\"joined_rooms\":[]}")));
+
+        client(new MatrixClientDefaults()).getJoinedRooms();
+        verify(getRequestedFor(urlEqualTo(joinedRoomsUrl)).withHeader("Accept-Encoding", equalTo("gzip")));
+
+        client(new MatrixClientDefaults().setCompression(false)).getJoinedRooms();
+        verify(getRequestedFor(urlEqualTo(joinedRoomsUrl)).withHeader("Accept-Encoding", equalTo("identity")));
+    }
+
+    @Test
+    public void requestsPerHostAreLimited() throws Exception {
+        stubFor(get(urlEqualTo(joinedRoomsUrl)).willReturn(aResponse().withStatus(200).withFixedDelay(300)
+                .withBody("{\"joined_rooms\":[]}")));
+
+        MatrixClientDefaults defaults = new MatrixClientDefaults().setMaxRequestsPerHost(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Callable<Object>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                MatrixHttpClient client = client(defaults);
+                calls.add(client::getJoinedRooms);
+            }
+
+            long start = System.nanoTime();
+            for (Future<Object> result : executor.invokeAll(calls)) {
+                result.get();
+            }
+            assertTrue((System.nanoTime() - start) / 1000000 >= 900);
+            assertSame(defaults.getHttpClient(), defaults.getHttpClient());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void hostSlotIsHeldUntilBodyIsClosed() throws Exception {
+        stubFor(get(urlEqualTo(joinedRoomsUrl)).willReturn(aResponse().withStatus(200)
+                .withBody("{\"joined_rooms\":[]}")));
+
+        OkHttpClient http = new MatrixClientDefaults().setMaxRequestsPerHost(1).getHttpClient();
+        Request request = new Request.Builder().url(baseUrl + joinedRoomsUrl).build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Response first = http.newCall(request).execute();
+            Future<Integer> second = executor.submit(() -> {
+                try (Response response = http.newCall(request).execute()) {
+                    return response.code();
+                }
+            });
+
+            Thread.sleep(300);
+            assertFalse(second.isDone());
+            first.close();
+            assertEquals(200, (int) second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -28,7 +28,7 @@ import java.net.URISyntaxException;
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 public class MatrixHttpContentWiremockTest extends AMatrixHttpContentTest {
-    private String downloadUrl = "/_matrix/media/v1/download/" + address.getHost() + address.getPath() + tokenParameter;
+    private String downloadUrl = "/_matrix/media/v1/download/" + address.getHost() + address.getPath();
 
     public MatrixHttpContentWiremockTest() throws URISyntaxException {
     }
@@ -43,94 +43,105 @@ public class MatrixHttpContentWiremockTest extends AMatrixHttpContentTest {
 
     @Test
     public void isValid() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")));
         super.isValid();
     }
 
     @Test
     public void isValidMissingContentType() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
         super.isValidMissingContentType();
     }
 
     @Test
     public void isValidContentNotFound() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
         super.isValidContentNotFound();
     }
 
     @Test
     public void isValidErrorAccessDenied() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl))
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
                 .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
         super.isValidErrorAccessDenied();
     }
 
     @Test
     public void getType() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")));
         super.getType();
     }
 
     @Test
     public void getTypeMissingContentType() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
         super.getTypeMissingContentType();
     }
 
     @Test
     public void getTypeErrorContentNotFound() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
         super.getTypeErrorContentNotFound();
     }
 
     @Test
     public void getTypeErrorAccessDenied() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl))
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
                 .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
         super.getTypeErrorAccessDenied();
     }
 
     @Test
     public void getData() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")));
         super.getData();
     }
 
     @Test
     public void getDataMissingContentType() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)));
         super.getDataMissingContentType();
     }
 
     @Test
     public void getDataErrorContentNotFound() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
         super.getDataErrorContentNotFound();
     }
 
     @Test
     public void getDataErrorAccessDenied() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl))
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
                 .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
         super.getDataErrorAccessDenied();
     }
 
     @Test
     public void getFilename() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")
                         .withHeader("Content-Disposition", String.format("filename=%s;", bodyFilename))));
         super.getFilename();
     }
 
     @Test
     public void getFilename2() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")
                         .withHeader("Content-Disposition", String.format("filename=\"%s\";", bodyFilename))));
         super.getFilename();
     }
@@ -138,36 +149,40 @@ public class MatrixHttpContentWiremockTest extends AMatrixHttpContentTest {
     @Test
     public void getFilename3() throws URISyntaxException, IOException {
 
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")
                         .withHeader("Content-Disposition", String.format("filename=\"%s\"", bodyFilename))));
         super.getFilename();
     }
 
     @Test
     public void getFilename4() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")
                         .withHeader("Content-Disposition", String.format("filename=%s", bodyFilename))));
         super.getFilename();
     }
 
     @Test
     public void getFilenameMissingContentType() throws URISyntaxException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(
-                aResponse().withStatus(200).withBodyFile(bodyFilename).withHeader("Content-Type", "text/plain")));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFilename)
+                        .withHeader("Content-Type", "text/plain")));
         super.getFilenameMissingContentType();
     }
 
     @Test
     public void getFilenameErrorContentNotFound() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl)).willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
         super.getFilenameErrorContentNotFound();
     }
 
     @Test
     public void getFilenameErrorAccessDenied() throws URISyntaxException, IOException {
-        stubFor(get(urlEqualTo(downloadUrl))
+        stubFor(get(urlEqualTo(downloadUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
                 .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
         super.getFilenameErrorAccessDenied();
     }
@@ -0,0 +1,132 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.ThreePid;
+import io.kamax.matrix._ThreePid;
+import io.kamax.matrix._ThreePidMapping;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class MatrixHttpIdentityServerWiremockTest extends MatrixHttpTest {
+
+    private final String bulkUrl = "/_matrix/identity/api/v1/bulk_lookup";
+    private final String lookupUrl = "/_matrix/identity/api/v1/lookup";
+
+    private final List<_ThreePid> threePids = Arrays.asList(
+            new ThreePid("email", "a@example.org"),
+            new ThreePid("email", "b@example.org"),
+            new ThreePid("email", "c@example.org"),
+            new ThreePid("msisdn", "123456789"),
+            new ThreePid("email", "e@example.org"),
+            new ThreePid("email", "a@example.org"));
+
+    private MatrixHttpIdentityServer identityServer() throws MalformedURLException {
+        MatrixClientContext context = new MatrixClientContext(new MatrixHomeserver(domain, baseUrl));
+        context.setIsBaseUrl(new URL(baseUrl));
+        return new MatrixHttpIdentityServer(context);
+    }
+
+    private void stubBulkLookup() {
+        stubFor(post(urlEqualTo(bulkUrl)).willReturn(aResponse().withStatus(200).withBody("{\"threepids\":[" +
+                "[\"email\",\"a@example.org\",\"@a:example.org\"]," +
+                "[\"msisdn\",\"123456789\",\"@phone:example.org\"]]}")));
+    }
+
+    @Test
+    public void bulkLookupIsBatchedAndCached() throws MalformedURLException {
+        stubBulkLookup();
+
+        try (MatrixHttpIdentityServer is = identityServer().setBatchSize(2).setParallelism(2)) {
+            List<_ThreePidMapping> mappings = is.find(threePids);
+            assertEquals(2, mappings.size());
+            assertEquals("@a:example.org", mappings.get(0).getMatrixId().getId());
+            assertEquals(new ThreePid("msisdn", "123456789"), mappings.get(1).getThreePid());
+
+            // Duplicates are looked up once, in batches of at most 2
+            verify(3, postRequestedFor(urlEqualTo(bulkUrl)));
+            verify(postRequestedFor(urlEqualTo(bulkUrl)).withRequestBody(equalToJson(
+                    "{\"threepids\":[[\"email\",\"a@example.org\"],[\"email\",\"b@example.org\"]]}")));
+
+            // Found and not found 3PIDs are both cached
+            assertEquals(2, is.find(threePids).size());
+            assertEquals("@a:example.org", is.find(new ThreePid("email", "a@example.org")).get().getMatrixId()
+                    .getId());
+            assertFalse(is.find(new ThreePid("email", "b@example.org")).isPresent());
+            verify(3, postRequestedFor(urlEqualTo(bulkUrl)));
+            verify(0, getRequestedFor(urlPathEqualTo(lookupUrl)));
+        }
+    }
+
+    @Test
+    public void singleLookup() throws MalformedURLException {
+        stubFor(get(urlPathEqualTo(lookupUrl)).withQueryParam("address", equalTo("f@example.org"))
+                .willReturn(aResponse().withStatus(200).withBody(
+                        "{\"medium\":\"email\",\"address\":\"f@example.org\",\"mxid\":\"@f:example.org\"}")));
+        stubFor(get(urlPathEqualTo(lookupUrl)).withQueryParam("address", equalTo("g@example.org"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+
+        try (MatrixHttpIdentityServer is = identityServer()) {
+            assertEquals(MatrixID.asAcceptable("@f:example.org"),
+                    is.find(new ThreePid("email", "f@example.org")).get().getMatrixId());
+            assertFalse(is.find(new ThreePid("email", "g@example.org")).isPresent());
+            is.find(new ThreePid("email", "f@example.org"));
+            is.find(new ThreePid("email", "g@example.org"));
+            verify(2, getRequestedFor(urlPathEqualTo(lookupUrl)));
+        }
+    }
+
+    @Test
+    public void expiredResultsAreLookedUpAgain() throws MalformedURLException {
+        stubBulkLookup();
+
+        try (MatrixHttpIdentityServer is = identityServer().setTtl(0, 0)) {
+            is.find(threePids);
+            is.find(threePids);
+            verify(2, postRequestedFor(urlEqualTo(bulkUrl)));
+        }
+    }
+
+    @Test
+    public void batchErrorsAreThrown() throws MalformedURLException {
+        stubFor(post(urlEqualTo(bulkUrl)).willReturn(aResponse().withStatus(500).withBody("{}")));
+
+        try (MatrixHttpIdentityServer is = identityServer().setBatchSize(2)) {
+            is.find(threePids);
+            fail("Lookup should have failed");
+        } catch (MatrixClientRequestException e) {
+            // expected
+        }
+    }
+
+}
@@ -47,7 +47,6 @@ import static org.junit.Assert.assertTrue;
 
 public class MatrixHttpTest {
     protected String testToken = "testToken";
-    protected String tokenParameter = "?access_token=" + testToken;
     protected int port = 8098;
     protected String resourcePath = "src/test/resources/wiremock";
 
@@ -141,6 +140,10 @@ public class MatrixHttpTest {
         }
     }
 
+    protected String getAuthorizationHeader() {
+        return "Bearer " + testToken;
+    }
+
     protected void checkErrorInfoAccessDenied(MatrixClientRequestException e) {
         checkErrorInfo(errcodeForbidden, errorAccessDenied, e.getError());
     }
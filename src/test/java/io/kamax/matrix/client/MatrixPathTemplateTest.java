@@ -0,0 +1,80 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client;
+
+import okhttp3.HttpUrl;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class MatrixPathTemplateTest {
+
+    private final HttpUrl base = HttpUrl.parse("https://example.org:8448");
+
+    @Test
+    public void noParameter() {
+        MatrixPathTemplate t = MatrixPathTemplate.client("sync");
+        assertThat(t.getTemplate(), is("/_matrix/client/r0/sync"));
+        assertThat(t.expand(base).build().toString(), is("https://example.org:8448/_matrix/client/r0/sync"));
+    }
+
+    @Test
+    public void emptyVersion() {
+        MatrixPathTemplate t = new MatrixPathTemplate("client", "", "versions");
+        assertThat(t.expand(base).build().encodedPath(), is("/_matrix/client/versions"));
+    }
+
+    @Test
+    public void leadingSlash() {
+        assertThat(MatrixPathTemplate.client("/register").expand(base).build().encodedPath(),
+                is("/_matrix/client/r0/register"));
+    }
+
+    @Test
+    public void baseWithPath() {
+        HttpUrl base = HttpUrl.parse("https://example.org/matrix/");
+        assertThat(MatrixPathTemplate.client("sync").expand(base).build().encodedPath(),
+                is("/matrix/_matrix/client/r0/sync"));
+    }
+
+    @Test
+    public void parameters() {
+        MatrixPathTemplate t = MatrixPathTemplate.client("rooms/{roomId}/state/{eventType}/{stateKey}");
+        assertArrayEquals(new String[] { "roomId", "eventType", "stateKey" }, t.getParameters());
+        assertThat(t.expand(base, "!a:b.c", "m.room.member", "@john:b.c").build().encodedPath(),
+                is("/_matrix/client/r0/rooms/!a:b.c/state/m.room.member/@john:b.c"));
+    }
+
+    @Test
+    public void parametersAreEncoded() {
+        MatrixPathTemplate t = MatrixPathTemplate.client("rooms/{roomId}/send/{eventType}/{txnId}");
+        assertThat(t.expand(base, "!a:b.c", "com.example/a b#?", "1").build().encodedPath(),
+                is("/_matrix/client/r0/rooms/!a:b.c/send/com.example%2Fa%20b%23%3F/1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingParameter() {
+        MatrixPathTemplate.client("rooms/{roomId}/join").expand(base);
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.client;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.regular.MatrixHttpClient;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+
+public class ResponseCacheInterceptorWiremockTest extends MatrixHttpTest {
+
+    private final _MatrixID bob = MatrixID.from("bob", domain).valid();
+    private final String nameUrl = "/_matrix/client/r0/profile/" + bob.getId() + "/displayname";
+    private final String nameBody = "{\"displayname\":\"Bob\"}";
+
+    private final ResponseCacheInterceptor cache = new ResponseCacheInterceptor();
+
+    private MatrixHttpClient client() {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, bob, testToken),
+                new MatrixClientDefaults().setResponseCache(cache));
+    }
+
+    private void stubName(String header, String value) {
+        stubFor(get(urlEqualTo(nameUrl))
+                .willReturn(aResponse().withStatus(200).withHeader(header, value).withBody(nameBody)));
+    }
+
+    @Test
+    public void ttlAppliesWithoutServerHeaders() {
+        stubFor(get(urlEqualTo(nameUrl)).willReturn(aResponse().withStatus(200).withBody(nameBody)));
+        cache.setTtl(ResponseCacheInterceptor.profile, TimeUnit.MINUTES.toMillis(1));
+        MatrixHttpClient client = client();
+
+        assertEquals("Bob", client.getUser(bob).getName().get());
+        assertEquals("Bob", client.getUser(bob).getName().get());
+
+        verify(1, getRequestedFor(urlEqualTo(nameUrl)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(nameBody.length(), cache.getSize());
+    }
+
+    @Test
+    public void nothingIsKeptWithoutTtlOrValidators() {
+        stubFor(get(urlEqualTo(nameUrl)).willReturn(aResponse().withStatus(200).withBody(nameBody)));
+        MatrixHttpClient client = client();
+
+        client.getUser(bob).getName();
+        client.getUser(bob).getName();
+
+        verify(2, getRequestedFor(urlEqualTo(nameUrl)));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void maxAgeIsHonoured() {
+        stubName("Cache-Control", "max-age=60");
+        MatrixHttpClient client = client();
+
+        client.getUser(bob).getName();
+        assertEquals("Bob", client.getUser(bob).getName().get());
+
+        verify(1, getRequestedFor(urlEqualTo(nameUrl)));
+    }
+
+    @Test
+    public void noStoreIsHonoured() {
+        stubName("Cache-Control", "no-cache, no-store, must-revalidate");
+        cache.setTtl(ResponseCacheInterceptor.profile, TimeUnit.MINUTES.toMillis(1));
+        MatrixHttpClient client = client();
+
+        client.getUser(bob).getName();
+        client.getUser(bob).getName();
+
+        verify(2, getRequestedFor(urlEqualTo(nameUrl)));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void staleResponsesAreRevalidated() {
+        // The server can change the ETag when it compresses the response, so only its start is checked
+        stubName("ETag", "\"v1\"");
+        stubFor(get(urlEqualTo(nameUrl)).withHeader("If-None-Match", matching("\"v1.*")).atPriority(1)
+                .willReturn(aResponse().withStatus(304)));
+        MatrixHttpClient client = client();
+
+        assertEquals("Bob", client.getUser(bob).getName().get());
+        assertEquals("Bob", client.getUser(bob).getName().get());
+
+        verify(2, getRequestedFor(urlEqualTo(nameUrl)));
+        verify(1, getRequestedFor(urlEqualTo(nameUrl)).withHeader("If-None-Match", matching("\"v1.*")));
+        assertEquals(1, cache.getRevalidated());
+    }
+
+    @Test
+    public void writesDropKeptResponses() {
+        stubName("Cache-Control", "max-age=60");
+        stubFor(put(urlEqualTo(nameUrl)).willReturn(aResponse().withStatus(200).withBody("{}")));
+        MatrixHttpClient client = client();
+
+        client.getUser(bob).getName();
+        client.setDisplayName("Robert");
+        client.getUser(bob).getName();
+
+        verify(2, getRequestedFor(urlEqualTo(nameUrl)));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        stubName("Cache-Control", "max-age=60");
+        String aliceUrl = "/_matrix/client/r0/profile/@alice:" + domain + "/displayname";
+        stubFor(get(urlEqualTo(aliceUrl))
+                .willReturn(aResponse().withStatus(200).withHeader("Cache-Control", "max-age=60").withBody(nameBody)));
+        cache.setMaxSize(nameBody.length());
+        MatrixHttpClient client = client();
+
+        client.getUser(bob).getName();
+        client.getUser(MatrixID.from("alice", domain).valid()).getName();
+        client.getUser(bob).getName();
+
+        verify(2, getRequestedFor(urlEqualTo(nameUrl)));
+        assertEquals(nameBody.length(), cache.getSize());
+    }
+
+}
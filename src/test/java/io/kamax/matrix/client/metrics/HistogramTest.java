@@ -0,0 +1,87 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        assertEquals(0, Histogram.indexOf(0));
+        assertEquals(63, Histogram.indexOf(63));
+        assertEquals(64, Histogram.indexOf(64));
+        assertEquals(64, Histogram.indexOf(65));
+        assertEquals(Long.MAX_VALUE, Histogram.highestValueOf(Histogram.indexOf(Long.MAX_VALUE)));
+
+        for (int i = 0; i < Histogram.indexOf(Long.MAX_VALUE); i++) {
+            assertEquals(Histogram.highestValueOf(i) + 1, Histogram.lowestValueOf(i + 1));
+            assertEquals(i, Histogram.indexOf(Histogram.lowestValueOf(i)));
+            assertEquals(i, Histogram.indexOf(Histogram.highestValueOf(i)));
+        }
+    }
+
+    @Test
+    public void relativeErrorIsBounded() {
+        Random r = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = r.nextLong() >>> (1 + r.nextInt(63));
+            int index = Histogram.indexOf(value);
+            long width = Histogram.highestValueOf(index) - Histogram.lowestValueOf(index);
+            assertTrue(value >= Histogram.lowestValueOf(index));
+            assertTrue(value <= Histogram.highestValueOf(index));
+            assertTrue(width <= Math.max(1, value / 32));
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getValueAtPercentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(1000000, h.getMax());
+        assertEquals(500500, h.getMean(), 0.1);
+        assertEquals(500000, h.getValueAtPercentile(50), 500000 / 32);
+        assertEquals(990000, h.getValueAtPercentile(99), 990000 / 32);
+        assertEquals(1000000, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesAreZero() {
+        Histogram h = new Histogram();
+        h.record(-5);
+        assertEquals(1, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+
+}
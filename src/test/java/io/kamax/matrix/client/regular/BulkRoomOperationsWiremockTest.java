@@ -0,0 +1,121 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix._MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkRoomOperationsWiremockTest extends MatrixHttpTest {
+
+    private final String roomUrl = "/_matrix/client/r0/rooms/!room:localhost";
+
+    private MatrixHttpClient client() {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, user, testToken));
+    }
+
+    private static _MatrixID user(String localpart) {
+        return MatrixID.from(localpart, "localhost").valid();
+    }
+
+    private static <T> List<BulkRoomOperations.Status> statuses(List<BulkRoomOperations.Outcome<T>> outcomes) {
+        return outcomes.stream().map(BulkRoomOperations.Outcome::getStatus).collect(Collectors.toList());
+    }
+
+    @Test
+    public void invite() throws InterruptedException {
+        stubFor(get(urlEqualTo(roomUrl + "/joined_members"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"joined\":{\"@b:localhost\":{}}}")));
+        stubFor(post(urlEqualTo(roomUrl + "/invite")).willReturn(aResponse().withStatus(200).withBody("{}")));
+        stubFor(post(urlEqualTo(roomUrl + "/invite")).withRequestBody(containing("@f:localhost"))
+                .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
+        stubFor(post(urlEqualTo(roomUrl + "/invite")).withRequestBody(containing("@l:localhost"))
+                .inScenario("limited").whenScenarioStateIs(Scenario.STARTED).willSetStateTo("done")
+                .willReturn(aResponse().withStatus(429).withBody(
+                        "{\"errcode\":\"M_LIMIT_EXCEEDED\",\"error\":\"Too many\",\"retry_after_ms\":300}")));
+
+        long start = System.nanoTime();
+        List<BulkRoomOperations.Outcome<_MatrixID>> outcomes;
+        try (BulkRoomOperations bulk = new BulkRoomOperations(2)) {
+            outcomes = bulk.invite(client().getRoom("!room:localhost"),
+                    Arrays.asList(user("a"), user("b"), user("f"), user("l")));
+        }
+
+        assertEquals(Arrays.asList(BulkRoomOperations.Status.Success, BulkRoomOperations.Status.AlreadyMember,
+                BulkRoomOperations.Status.Forbidden, BulkRoomOperations.Status.Success), statuses(outcomes));
+        assertEquals("M_FORBIDDEN", outcomes.get(2).getError().get().getErrcode());
+        assertEquals(user("l"), outcomes.get(3).getTarget());
+        assertTrue(System.nanoTime() - start >= 300000000L);
+        verify(4, postRequestedFor(urlEqualTo(roomUrl + "/invite")));
+        verify(0, postRequestedFor(urlEqualTo(roomUrl + "/invite")).withRequestBody(containing("@b:localhost")));
+    }
+
+    @Test
+    public void rateLimitedUntilMaxRetries() throws InterruptedException {
+        stubFor(post(urlEqualTo(roomUrl + "/kick")).willReturn(aResponse().withStatus(429)
+                .withBody("{\"errcode\":\"M_LIMIT_EXCEEDED\",\"error\":\"Too many\",\"retry_after_ms\":10}")));
+
+        List<BulkRoomOperations.Outcome<_MatrixID>> outcomes;
+        try (BulkRoomOperations bulk = new BulkRoomOperations(4).setMaxRetries(2)) {
+            outcomes = bulk.kick(client().getRoom("!room:localhost"), Arrays.asList(user("a"), user("b")), "Bye");
+        }
+
+        assertEquals(Arrays.asList(BulkRoomOperations.Status.RateLimited, BulkRoomOperations.Status.RateLimited),
+                statuses(outcomes));
+        verify(6, postRequestedFor(urlEqualTo(roomUrl + "/kick")).withRequestBody(containing("\"reason\":\"Bye\"")));
+    }
+
+    @Test
+    public void joinAndLeave() throws InterruptedException {
+        stubFor(get(urlEqualTo("/_matrix/client/r0/joined_rooms"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"joined_rooms\":[\"!a:localhost\"]}")));
+        stubFor(post(urlEqualTo("/_matrix/client/r0/join/!b:localhost"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"room_id\":\"!b:localhost\"}")));
+        stubFor(post(urlEqualTo("/_matrix/client/r0/join/%23c:localhost"))
+                .willReturn(aResponse().withStatus(500).withBody("{\"errcode\":\"M_UNKNOWN\",\"error\":\"Oops\"}")));
+        stubFor(post(urlEqualTo("/_matrix/client/r0/rooms/!a:localhost/leave"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+
+        try (BulkRoomOperations bulk = new BulkRoomOperations(2)) {
+            assertEquals(Arrays.asList(BulkRoomOperations.Status.AlreadyMember, BulkRoomOperations.Status.Success,
+                    BulkRoomOperations.Status.Failed),
+                    statuses(bulk.join(client(), Arrays.asList("!a:localhost", "!b:localhost", "#c:localhost"))));
+            assertEquals(Arrays.asList(BulkRoomOperations.Status.Success),
+                    statuses(bulk.leave(client(), Arrays.asList("!a:localhost"))));
+        }
+    }
+
+}
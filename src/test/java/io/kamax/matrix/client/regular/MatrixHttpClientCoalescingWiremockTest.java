@@ -0,0 +1,145 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client.MatrixClientRequestException;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.client.metrics.InMemoryMatrixHttpMetrics;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.hs._MatrixRoom;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MatrixHttpClientCoalescingWiremockTest extends MatrixHttpTest {
+
+    private static final int callers = 8;
+
+    private final String joinedRoomsUrl = "/_matrix/client/r0/joined_rooms";
+    private final String roomId = "!id:" + domain;
+    private final InMemoryMatrixHttpMetrics metrics = new InMemoryMatrixHttpMetrics();
+
+    private MatrixHttpClient client(MatrixClientDefaults defaults) {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        MatrixClientContext context = new MatrixClientContext(hs, MatrixID.from("bob", domain).valid(), testToken);
+        return new MatrixHttpClient(context, defaults.setMetrics(metrics));
+    }
+
+    private void stubJoinedRooms(int status, String body) {
+        stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(status).withBody(body).withFixedDelay(1000)));
+    }
+
+    // Run the same call from several threads at once
+    private List<Future<List<_MatrixRoom>>> callAtOnce(MatrixHttpClient client) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<_MatrixRoom>>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return client.getJoinedRooms();
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private long getCoalesced() {
+        return metrics.getEndpoint(joinedRoomsUrl, "GET").get().getCoalesced();
+    }
+
+    @Test
+    public void identicalGetsShareACall() throws Exception {
+        stubJoinedRooms(200, "{\"joined_rooms\":[\"" + roomId + "\"]}");
+
+        for (Future<List<_MatrixRoom>> result : callAtOnce(client(new MatrixClientDefaults()))) {
+            List<_MatrixRoom> rooms = result.get();
+            assertEquals(1, rooms.size());
+            assertEquals(roomId, rooms.get(0).getAddress());
+        }
+
+        verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(callers - 1, getCoalesced());
+        assertEquals(callers - 1, metrics.toJson().getAsJsonObject("endpoints")
+                .getAsJsonObject("GET " + joinedRoomsUrl).get("coalesced").getAsLong());
+    }
+
+    @Test
+    public void errorsAreShared() throws Exception {
+        stubJoinedRooms(403, errorAccessDeniedResponse);
+
+        for (Future<List<_MatrixRoom>> result : callAtOnce(client(new MatrixClientDefaults()))) {
+            try {
+                result.get();
+                fail("Forbidden call should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MatrixClientRequestException);
+            }
+        }
+
+        verify(1, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(callers - 1, getCoalesced());
+    }
+
+    @Test
+    public void callsAreNotSharedOnceOver() {
+        stubFor(get(urlEqualTo(joinedRoomsUrl))
+                .willReturn(aResponse().withStatus(200).withBody("{\"joined_rooms\":[]}")));
+        MatrixHttpClient client = client(new MatrixClientDefaults());
+
+        client.getJoinedRooms();
+        client.getJoinedRooms();
+
+        verify(2, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(0, getCoalesced());
+    }
+
+    @Test
+    public void coalescingCanBeTurnedOff() throws Exception {
+        stubJoinedRooms(200, "{\"joined_rooms\":[]}");
+
+        for (Future<List<_MatrixRoom>> result : callAtOnce(client(new MatrixClientDefaults().setCoalescing(false)))) {
+            result.get();
+        }
+
+        verify(callers, getRequestedFor(urlEqualTo(joinedRoomsUrl)));
+        assertEquals(0, getCoalesced());
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.client.filter.EventFilter;
+import io.kamax.matrix.client.filter.SyncFilter;
+import io.kamax.matrix.client.filter.SyncFilterFileStore;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class MatrixHttpClientFilterWiremockTest extends MatrixHttpTest {
+
+    private final String userId = "@bob:" + domain;
+    private final String filterUrl = "/_matrix/client/r0/user/" + userId + "/filter";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SyncFilter filter(String... types) {
+        return SyncFilter.build()
+                .setPresence(EventFilter.build().setNotTypes(Collections.singletonList("*")).get())
+                .setTimeline(EventFilter.build().setTypes(Arrays.asList(types)).setLimit(10).get())
+                .setIncludeLeave(false)
+                .get();
+    }
+
+    private MatrixHttpClient client(MatrixClientDefaults defaults) {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        MatrixClientContext context = new MatrixClientContext(hs, MatrixID.asAcceptable(userId), testToken);
+        return new MatrixHttpClient(context, defaults);
+    }
+
+    @Test
+    public void filtersAreCanonical() {
+        List<String> types = Collections.singletonList("m.room.message");
+        SyncFilter a = SyncFilter.build()
+                .setTimeline(EventFilter.build().setLimit(10).setTypes(types).get())
+                .setIncludeLeave(false)
+                .get();
+        SyncFilter b = SyncFilter.build()
+                .setIncludeLeave(false)
+                .setTimeline(EventFilter.build().setTypes(types).setLimit(10).get())
+                .get();
+
+        assertEquals(a, b);
+        assertEquals(a.getHash(), b.getHash());
+        assertEquals("{\"room\":{\"include_leave\":false,\"timeline\":{\"limit\":10,\"types\":[\"m.room.message\"]}}}",
+                a.toCanonicalJson());
+        assertEquals(a, SyncFilter.from(a.toJson()));
+        assertNotEquals(a.getHash(), filter("m.room.member").getHash());
+    }
+
+    @Test
+    public void filterIdIsCached() {
+        stubFor(post(urlEqualTo(filterUrl)).willReturn(aResponse().withStatus(200).withBody("{\"filter_id\":\"1\"}")));
+
+        MatrixHttpClient client = client(new MatrixClientDefaults());
+        assertEquals("1", client.getFilterId(filter("m.room.message")));
+        assertEquals("1", client.getFilterId(filter("m.room.message")));
+
+        verify(1, postRequestedFor(urlEqualTo(filterUrl))
+                .withRequestBody(equalToJson(filter("m.room.message").toCanonicalJson())));
+    }
+
+    @Test
+    public void filterIdIsPersisted() throws Exception {
+        stubFor(post(urlEqualTo(filterUrl)).willReturn(aResponse().withStatus(200).withBody("{\"filter_id\":\"2\"}")));
+        String path = new File(folder.getRoot(), "filters.properties").getPath();
+
+        assertEquals("2", client(new MatrixClientDefaults().setFilterStore(new SyncFilterFileStore(path)))
+                .getFilterId(filter("m.room.message")));
+
+        // A new client, as after a restart, finds the filter in the file
+        assertEquals("2", client(new MatrixClientDefaults().setFilterStore(new SyncFilterFileStore(path)))
+                .getFilterId(filter("m.room.message")));
+        verify(1, postRequestedFor(urlEqualTo(filterUrl)));
+    }
+
+    @Test
+    public void getFilter() {
+        stubFor(get(urlEqualTo(filterUrl + "/3"))
+                .willReturn(aResponse().withStatus(200).withBody(filter("m.room.message").toCanonicalJson())));
+
+        assertEquals(filter("m.room.message"), client(new MatrixClientDefaults()).getFilter("3"));
+    }
+
+}
@@ -27,7 +27,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 public class MatrixHttpClientLoginWiremockTest extends AMatrixHttpClientLoginTest {
     private String loginUrl = "/_matrix/client/r0/login";
-    private String logoutUrl = "/_matrix/client/r0/logout" + tokenParameter;
+    private String logoutUrl = "/_matrix/client/r0/logout";
     private String deviceId = "testDeviceId_892377";
 
     @Test
@@ -43,7 +43,7 @@ public class MatrixHttpClientLoginWiremockTest extends AMatrixHttpClientLoginTes
                                 "\"home_server\": \"" + hostname + "\"," + //
                                 "\"device_id\": \"" + deviceId + "\"}")));
 
-        stubFor(post(urlEqualTo(logoutUrl)));
+        stubFor(post(urlEqualTo(logoutUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader())));
 
         super.loginAndLogout();
     }
@@ -61,7 +61,7 @@ public class MatrixHttpClientLoginWiremockTest extends AMatrixHttpClientLoginTes
                                 "\"home_server\": \"" + hostname + "\"," + //
                                 "\"device_id\": \"" + deviceId + "\"}")));
 
-        stubFor(post(urlEqualTo(logoutUrl)));
+        stubFor(post(urlEqualTo(logoutUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader())));
 
         stubFor(post(urlEqualTo(loginUrl))
                 .withRequestBody(equalToJson("{\"type\": \"m.login.password\"," + //
@@ -91,7 +91,7 @@ public class MatrixHttpClientLoginWiremockTest extends AMatrixHttpClientLoginTes
                                 "\"home_server\": \"" + hostname + "\"," + //
                                 "\"device_id\": \"" + deviceId + "\"}")));
 
-        stubFor(post(urlEqualTo(logoutUrl)));
+        stubFor(post(urlEqualTo(logoutUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader())));
 
         stubFor(post(urlEqualTo(loginUrl))
                 .withRequestBody(equalToJson("{\"type\": \"m.login.password\"," + //
@@ -0,0 +1,117 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client.MatrixClientRequestException;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.client.metrics.EndpointMetrics;
+import io.kamax.matrix.client.metrics.InMemoryMatrixHttpMetrics;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MatrixHttpClientMetricsWiremockTest extends MatrixHttpTest {
+
+    private final String roomId = "!id:" + domain;
+    private final String joinedRoomsBody = "{\"joined_rooms\":[\"" + roomId + "\"]}";
+
+    @Test
+    public void callsAreRecordedPerEndpoint() {
+        stubFor(get(urlEqualTo("/_matrix/client/r0/joined_rooms"))
+                .willReturn(aResponse().withStatus(200).withBody(joinedRoomsBody)));
+        stubFor(post(urlPathEqualTo("/_matrix/client/r0/rooms/" + roomId + "/invite"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+        stubFor(post(urlPathEqualTo("/_matrix/client/r0/join/" + roomId))
+                .willReturn(aResponse().withStatus(429).withBody(errorRateLimitedResponse)));
+
+        InMemoryMatrixHttpMetrics metrics = new InMemoryMatrixHttpMetrics();
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        MatrixClientContext context = new MatrixClientContext(hs, MatrixID.from("bob", domain).valid(), testToken);
+        MatrixHttpClient client = new MatrixHttpClient(context, new MatrixClientDefaults().setMetrics(metrics));
+
+        client.getJoinedRooms();
+        client.getJoinedRooms();
+        client.getRoom(roomId).invite(MatrixID.from("alice", domain).valid());
+        try {
+            client.joinRoom(roomId);
+            fail("Rate limited call should have failed");
+        } catch (MatrixClientRequestException e) {
+            checkErrorInfoRateLimited(e);
+        }
+
+        EndpointMetrics joinedRooms = metrics.getEndpoint("/_matrix/client/r0/joined_rooms", "GET").get();
+        assertEquals(2, joinedRooms.getLatency().getCount());
+        assertTrue(joinedRooms.getLatency().getMin() > 0);
+        assertEquals(2L, (long) joinedRooms.getStatuses().get(200));
+        assertEquals(0, joinedRooms.getBytesSent());
+        assertEquals(2 * joinedRoomsBody.length(), joinedRooms.getBytesReceived());
+
+        // Rooms share the metrics of the client they come from
+        EndpointMetrics invite = metrics.getEndpoint("/_matrix/client/r0/rooms/{roomId}/invite", "POST").get();
+        assertEquals(1, invite.getLatency().getCount());
+        assertTrue(invite.getBytesSent() > 0);
+
+        EndpointMetrics join = metrics.getEndpoint("/_matrix/client/r0/join/{roomIdOrAlias}", "POST").get();
+        assertEquals(1L, (long) join.getStatuses().get(429));
+        assertEquals(1, join.getRateLimited());
+        assertEquals(0, join.getFailures());
+
+        assertEquals(3, metrics.getEndpoints().size());
+        assertTrue(metrics.getPoolConnections() > 0);
+
+        JsonObject json = metrics.toJson();
+        JsonObject joinedRoomsJson = json.getAsJsonObject("endpoints")
+                .getAsJsonObject("GET /_matrix/client/r0/joined_rooms");
+        assertEquals(2, joinedRoomsJson.getAsJsonObject("status").get("200").getAsInt());
+        assertTrue(joinedRoomsJson.getAsJsonObject("latency").get("p99").getAsDouble() > 0);
+        assertTrue(json.getAsJsonObject("pool").get("connections").getAsInt() > 0);
+    }
+
+    @Test
+    public void failuresAreRecorded() {
+        InMemoryMatrixHttpMetrics metrics = new InMemoryMatrixHttpMetrics();
+        MatrixHomeserver hs = new MatrixHomeserver(domain, "http://localhost:1");
+        MatrixClientContext context = new MatrixClientContext(hs, MatrixID.from("bob", domain).valid(), testToken);
+        MatrixHttpClient client = new MatrixHttpClient(context, new MatrixClientDefaults().setMetrics(metrics));
+
+        try {
+            client.getJoinedRooms();
+            fail("Call to a closed port should have failed");
+        } catch (MatrixClientRequestException e) {
+            // expected
+        }
+
+        EndpointMetrics joinedRooms = metrics.getEndpoint("/_matrix/client/r0/joined_rooms", "GET").get();
+        assertEquals(1, joinedRooms.getFailures());
+        assertTrue(joinedRooms.getStatuses().isEmpty());
+    }
+
+}
@@ -66,7 +66,7 @@ public class MatrixHttpClientSyncWiremockTest extends AMatrixHttpClientSyncTest
     @Override
     public void getSeveralSync() throws Exception {
         stubFor(get(urlPathEqualTo(syncPath)).willReturn(aResponse().withStatus(200).withBody(getJson())));
-        stubFor(get(urlPathEqualTo(syncPath)).withQueryParam("access_token", equalTo("test"))
+        stubFor(get(urlPathEqualTo(syncPath)).withHeader("Authorization", equalTo("Bearer test"))
                 .withQueryParam("timeout", equalTo("0")).willReturn(aResponse().withStatus(200).withBody(getJson())));
 
         MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
@@ -78,6 +78,7 @@ public class MatrixHttpClientSyncWiremockTest extends AMatrixHttpClientSyncTest
 
         verify(getRequestedFor(urlPathEqualTo(syncPath)));
         verify(getRequestedFor(urlPathEqualTo(syncPath)).withQueryParam("timeout", equalTo("0")));
+        verify(getRequestedFor(urlPathEqualTo(syncPath)).withQueryParam("access_token", absent()));
     }
 
 }
@@ -28,7 +28,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 public class MatrixHttpClientWiremockTest extends AMatrixHttpClientTest {
     private String setDisplaynameUrl = String.format("/_matrix/client/r0/profile/%s/displayname",
-            getOrCreateClientContext().getUser().get().getId()) + tokenParameter;
+            getOrCreateClientContext().getUser().get().getId());
 
     public MatrixHttpClientWiremockTest() throws URISyntaxException {
     }
@@ -43,7 +43,8 @@ public class MatrixHttpClientWiremockTest extends AMatrixHttpClientTest {
 
     @Test
     public void setDisplayName() throws URISyntaxException {
-        stubFor(put(urlEqualTo(setDisplaynameUrl)).willReturn(aResponse().withStatus(200)));
+        stubFor(put(urlEqualTo(setDisplaynameUrl)).withHeader("Authorization", equalTo(getAuthorizationHeader()))
+                .willReturn(aResponse().withStatus(200)));
         super.setDisplayName();
     }
 
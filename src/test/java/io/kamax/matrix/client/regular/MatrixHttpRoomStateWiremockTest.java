@@ -0,0 +1,172 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import com.github.dmstocking.optional.java.util.Optional;
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixClientDefaults;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.hs._MatrixRoom;
+import io.kamax.matrix.room.RoomStateBatch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MatrixHttpRoomStateWiremockTest extends MatrixHttpTest {
+
+    private final String stateUrl = "/_matrix/client/r0/rooms/!room:localhost/state";
+
+    private MatrixHttpClient client(MatrixClientDefaults defaults) {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, user, testToken), defaults);
+    }
+
+    private _MatrixRoom room() {
+        return client(new MatrixClientDefaults()).getRoom("!room:localhost");
+    }
+
+    private static JsonObject content(String key, String value) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty(key, value);
+        return obj;
+    }
+
+    @Test
+    public void unchangedStateIsNotSent() {
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.topic"))
+                .willReturn(aResponse().withStatus(200).withBody("{ \"topic\" : \"Hello\" }")));
+
+        _MatrixRoom room = room();
+        assertFalse(room.setState("m.room.topic", content("topic", "Hello")).isPresent());
+        assertFalse(room.setState("m.room.topic", content("topic", "Hello")).isPresent());
+        verify(0, putRequestedFor(urlMatching(stateUrl + "/.*")));
+    }
+
+    @Test
+    public void stateChangedByOthersIsSent() {
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.topic"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"topic\":\"Hello\"}")));
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.topic"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$1:localhost\"}")));
+
+        _MatrixRoom room = room();
+        assertEquals("Hello", room.getTopic().get());
+
+        // Another user changes the topic
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.topic"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"topic\":\"World\"}")));
+        assertEquals("$1:localhost", room.setState("m.room.topic", content("topic", "Hello")).get());
+
+        verify(2, getRequestedFor(urlEqualTo(stateUrl + "/m.room.topic")));
+        verify(1, putRequestedFor(urlEqualTo(stateUrl + "/m.room.topic")));
+    }
+
+    @Test
+    public void snapshotKeptFromSync() {
+        stubFor(get(urlMatching(stateUrl + "/.*"))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(put(urlMatching(stateUrl + "/.*"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$1:localhost\"}")));
+
+        MatrixHttpClient client = client(new MatrixClientDefaults().setMaxStateSnapshots(1));
+        _MatrixRoom room = client.getRoom("!room:localhost");
+        // As sync would do
+        client.getStateSnapshot("!room:localhost").get().put("m.room.topic", "", content("topic", "Hello"));
+
+        assertFalse(room.setState("m.room.topic", content("topic", "Hello")).isPresent());
+        assertEquals("$1:localhost", room.setState("m.room.topic", content("topic", "World")).get());
+        assertFalse(room.setState("m.room.topic", content("topic", "World")).isPresent());
+        verify(0, getRequestedFor(urlMatching(stateUrl + "/.*")));
+        verify(1, putRequestedFor(urlMatching(stateUrl + "/.*")));
+
+        // Only the most recently used room is kept
+        client.getStateSnapshot("!other:localhost");
+        assertFalse(client.getStateSnapshot("!room:localhost").get().contains("m.room.topic", ""));
+        assertFalse(client(new MatrixClientDefaults()).getStateSnapshot("!room:localhost").isPresent());
+    }
+
+    @Test
+    public void changedStateIsSent() {
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.member/@a:localhost"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"membership\":\"invite\"}")));
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.member/@a:localhost"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$1:localhost\"}")));
+
+        Optional<String> id = room().setState("m.room.member", "@a:localhost", content("membership", "join"));
+
+        assertEquals("$1:localhost", id.get());
+        verify(putRequestedFor(urlEqualTo(stateUrl + "/m.room.member/@a:localhost"))
+                .withRequestBody(equalToJson("{\"membership\":\"join\"}")));
+    }
+
+    @Test
+    public void missingStateIsSent() {
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.name"))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.name"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$2:localhost\"}")));
+
+        assertEquals("$2:localhost", room().setState("m.room.name", "", content("name", "Room")).get());
+    }
+
+    @Test
+    public void batch() {
+        stubFor(get(urlMatching(stateUrl + "/.*"))
+                .willReturn(aResponse().withStatus(404).withBody(errorNotFoundResponse)));
+        stubFor(get(urlEqualTo(stateUrl + "/m.room.topic"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"topic\":\"Hello\"}")));
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.name"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$name:localhost\"}")));
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.member/@a:localhost"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"event_id\":\"$member:localhost\"}")));
+
+        stubFor(put(urlEqualTo(stateUrl + "/m.room.avatar"))
+                .willReturn(aResponse().withStatus(403).withBody(errorAccessDeniedResponse)));
+
+        List<RoomStateBatch.Outcome> outcomes = room().setStates(new RoomStateBatch()
+                .add("m.room.name", content("name", "Room"))
+                .add("m.room.topic", content("topic", "Hello"))
+                .add("m.room.avatar", content("url", "mxc://localhost/a"))
+                .add("m.room.member", "@a:localhost", content("membership", "join"))
+                .setConcurrency(2));
+
+        assertEquals(Arrays.asList(RoomStateBatch.Status.Sent, RoomStateBatch.Status.Unchanged,
+                RoomStateBatch.Status.Failed, RoomStateBatch.Status.Sent),
+                outcomes.stream().map(RoomStateBatch.Outcome::getStatus).collect(Collectors.toList()));
+        assertEquals("$name:localhost", outcomes.get(0).getEventId().get());
+        assertFalse(outcomes.get(1).getEventId().isPresent());
+        assertEquals("M_FORBIDDEN", outcomes.get(2).getError().get().getErrcode());
+        assertEquals("m.room.avatar", outcomes.get(2).getEntry().getType());
+        assertEquals("$member:localhost", outcomes.get(3).getEventId().get());
+        verify(3, putRequestedFor(urlMatching(stateUrl + "/.*")));
+    }
+
+}
@@ -45,6 +45,7 @@ public class SyncDataJsonTest {
         assertTrue(!data.getRooms().getInvited().isEmpty());
         assertTrue(!data.getRooms().getJoined().isEmpty());
         assertTrue(data.getRooms().getLeft().isEmpty());
+        assertTrue(data.getRooms().getJoined().stream().anyMatch(room -> room.getTimeline().isLimited()));
     }
 
 }
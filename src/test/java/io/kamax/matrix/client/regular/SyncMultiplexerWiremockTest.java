@@ -0,0 +1,127 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.MatrixID;
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.client._SyncOptions;
+import io.kamax.matrix.hs.MatrixHomeserver;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyncMultiplexerWiremockTest extends MatrixHttpTest {
+
+    private final String syncUrl = "/_matrix/client/r0/sync";
+
+    private MatrixHttpClient client(String token) {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, MatrixID.from(token, domain).valid(), token));
+    }
+
+    private void stubSync(String token) {
+        stubFor(get(urlPathEqualTo(syncUrl)).withHeader("Authorization", equalTo("Bearer " + token))
+                .willReturn(aResponse().withStatus(200).withBody("{\"next_batch\":\"" + token + "_next\"}")));
+    }
+
+    @Test
+    public void accountsShareThreads() throws InterruptedException {
+        stubSync("a");
+        stubSync("b");
+        stubSync("c");
+        stubFor(get(urlPathEqualTo(syncUrl)).withHeader("Authorization", equalTo("Bearer failing"))
+                .willReturn(aResponse().withStatus(429).withBody(
+                        "{\"errcode\":\"M_LIMIT_EXCEEDED\",\"error\":\"Too many\",\"retry_after_ms\":60000}")));
+
+        try (SyncMultiplexer mux = new SyncMultiplexer(1).setBusyTimeout(0)) {
+            mux.add("a", client("a"));
+            mux.add("b", client("b"));
+            mux.add("c", client("c"), "1", "c_since");
+            mux.add("failing", client("failing"));
+            mux.start();
+
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < 30; i++) {
+                SyncMultiplexer.Batch batch = mux.poll(10, TimeUnit.SECONDS);
+                assertNotNull(batch);
+                assertEquals(batch.getAccount() + "_next", batch.getData().nextBatchToken());
+                counts.merge(batch.getAccount(), 1, Integer::sum);
+            }
+
+            // Accounts take turns on the single thread
+            assertEquals(3, counts.size());
+            assertTrue(counts.values().stream().allMatch(count -> count >= 9 && count <= 11));
+            assertFalse(counts.containsKey("failing"));
+            assertEquals("a_next", mux.getSince("a").get());
+
+            mux.remove("b");
+            assertFalse(mux.getAccounts().contains("b"));
+        }
+
+        // The rate limited account waits as long as it is told to
+        verify(1, getRequestedFor(urlPathEqualTo(syncUrl)).withHeader("Authorization", equalTo("Bearer failing")));
+        verify(getRequestedFor(urlPathEqualTo(syncUrl)).withHeader("Authorization", equalTo("Bearer c"))
+                .withQueryParam("since", equalTo("c_since")).withQueryParam("filter", equalTo("1")));
+        verify(getRequestedFor(urlPathEqualTo(syncUrl)).withHeader("Authorization", equalTo("Bearer a"))
+                .withQueryParam("timeout", equalTo("0")));
+    }
+
+    @Test
+    public void errorsDoNotStopSyncing() throws InterruptedException {
+        stubSync("a");
+        AtomicBoolean broken = new AtomicBoolean(true);
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        MatrixHttpClient client = new MatrixHttpClient(new MatrixClientContext(hs, MatrixID.from("a", domain).valid(),
+                "a")) {
+
+            @Override
+            public _SyncData sync(_SyncOptions options) {
+                if (broken.getAndSet(false)) {
+                    throw new StackOverflowError();
+                }
+                return super.sync(options);
+            }
+
+        };
+
+        try (SyncMultiplexer mux = new SyncMultiplexer(1).setBackoff(10, 10)) {
+            mux.add("a", client);
+            mux.start();
+
+            SyncMultiplexer.Batch batch = mux.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertEquals("a_next", batch.getData().nextBatchToken());
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.client.regular;
+
+import io.kamax.matrix.client.MatrixClientContext;
+import io.kamax.matrix.client.MatrixHttpTest;
+import io.kamax.matrix.event._MatrixPersistentEvent;
+import io.kamax.matrix.hs.MatrixHomeserver;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineBackfillerWiremockTest extends MatrixHttpTest {
+
+    private final String messagesUrl = "/_matrix/client/r0/rooms/!a:localhost/messages";
+
+    private MatrixHttpClient client() {
+        MatrixHomeserver hs = new MatrixHomeserver(domain, baseUrl);
+        return new MatrixHttpClient(new MatrixClientContext(hs, user, testToken));
+    }
+
+    private static String event(String id) {
+        return "{\"event_id\":\"$" + id + "\",\"type\":\"m.room.message\",\"sender\":\"@a:localhost\","
+                + "\"origin_server_ts\":1,\"content\":{}}";
+    }
+
+    private static String events(String... ids) {
+        return Arrays.stream(ids).map(TimelineBackfillerWiremockTest::event).collect(Collectors.joining(","));
+    }
+
+    private static SyncDataJson sync(String roomId, boolean limited, String... ids) {
+        return new SyncDataJson(GsonUtil.parseObj("{\"next_batch\":\"n\",\"rooms\":{\"join\":{\"" + roomId
+                + "\":{\"timeline\":{\"limited\":" + limited + ",\"prev_batch\":\"p" + ids[0] + "\",\"events\":["
+                + events(ids) + "]}}}}}"));
+    }
+
+    private void stubMessages(String from, String end, String... ids) {
+        stubFor(get(urlPathEqualTo(messagesUrl)).withQueryParam("from", equalTo(from))
+                .withQueryParam("dir", equalTo("b"))
+                .willReturn(aResponse().withStatus(200).withBody(
+                        "{\"start\":\"" + from + "\",\"end\":\"" + end + "\",\"chunk\":[" + events(ids) + "]}")));
+    }
+
+    private static List<String> ids(List<_MatrixPersistentEvent> events) {
+        return events.stream().map(_MatrixPersistentEvent::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void gapIsFilledBeforeNewerEvents() throws InterruptedException {
+        stubMessages("p6", "t1", "5", "4");
+        stubMessages("t1", "t2", "3", "2", "1");
+
+        List<String> received = new ArrayList<>();
+        try (TimelineBackfiller backfiller = new TimelineBackfiller(client(), 2,
+                (roomId, events) -> received.addAll(ids(events))).setPageSize(2)) {
+            backfiller.accept(sync("!a:localhost", false, "1", "2"));
+            backfiller.accept(sync("!a:localhost", true, "6"));
+            backfiller.accept(sync("!a:localhost", false, "7"));
+            assertTrue(backfiller.await(10000));
+        }
+
+        // Paging stopped at $2, which was known
+        assertEquals(Arrays.asList("$1", "$2", "$3", "$4", "$5", "$6", "$7"), received);
+        verify(2, getRequestedFor(urlPathEqualTo(messagesUrl)));
+    }
+
+    @Test
+    public void unknownRoomIsNotBackfilled() throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        try (TimelineBackfiller backfiller = new TimelineBackfiller(client(), 1,
+                (roomId, events) -> received.addAll(ids(events)))) {
+            backfiller.accept(sync("!a:localhost", true, "1"));
+            assertTrue(backfiller.await(10000));
+        }
+
+        assertEquals(Arrays.asList("$1"), received);
+        verify(0, getRequestedFor(urlPathEqualTo(messagesUrl)));
+    }
+
+    @Test
+    public void failedBackfillKeepsTimeline() throws InterruptedException {
+        stubFor(get(urlPathEqualTo(messagesUrl)).willReturn(aResponse().withStatus(403)
+                .withBody(String.format(errorResponseTemplate, "M_FORBIDDEN", "Denied"))));
+
+        List<String> received = new ArrayList<>();
+        try (TimelineBackfiller backfiller = new TimelineBackfiller(client(), 1,
+                (roomId, events) -> received.addAll(ids(events)))) {
+            backfiller.addKnown("!a:localhost", "$1");
+            backfiller.accept(sync("!a:localhost", true, "5", "6"));
+            assertTrue(backfiller.await(10000));
+        }
+
+        assertEquals(Arrays.asList("$5", "$6"), received);
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.kamax.matrix.event;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.json.event.MatrixJsonPersistentEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventDeduplicatorTest {
+
+    private static _MatrixPersistentEvent event(String id) {
+        JsonObject json = new JsonObject();
+        json.addProperty("event_id", id);
+        json.addProperty("type", "m.room.message");
+        json.addProperty("sender", "@alice:example.org");
+        json.addProperty("origin_server_ts", 0);
+        return new MatrixJsonPersistentEvent(json);
+    }
+
+    @Test
+    public void duplicatesAreDropped() {
+        EventDeduplicator dedup = new EventDeduplicator(10);
+        List<_MatrixPersistentEvent> sync = Arrays.asList(event("$1"), event("$2"), event("$2"));
+        List<_MatrixPersistentEvent> backfill = Arrays.asList(event("$0"), event("$1"));
+
+        assertEquals(Arrays.asList("$1", "$2"), ids(dedup.filter(sync)));
+        assertEquals(Collections.singletonList("$0"), ids(dedup.filter(backfill)));
+        assertEquals(3, dedup.size());
+        assertTrue(dedup.contains("$0"));
+        assertFalse(dedup.contains("$3"));
+    }
+
+    @Test
+    public void leastRecentlySeenIsForgotten() {
+        EventDeduplicator dedup = new EventDeduplicator(3);
+        dedup.add("$1");
+        dedup.add("$2");
+        dedup.add("$3");
+        assertFalse(dedup.add("$1"));
+
+        // $2 is now the least recently seen
+        assertTrue(dedup.add("$4"));
+        assertFalse(dedup.contains("$2"));
+        assertTrue(dedup.contains("$1"));
+        assertTrue(dedup.contains("$3"));
+        assertEquals(3, dedup.size());
+
+        dedup.clear();
+        assertEquals(0, dedup.size());
+        assertTrue(dedup.add("$1"));
+    }
+
+    // Same answers as a reference LRU set, with and without a Bloom filter
+    private void checkAgainstReference(boolean bloomFilter) {
+        int capacity = 1000;
+        EventDeduplicator dedup = new EventDeduplicator(capacity, bloomFilter);
+        Set<String> reference = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+
+        });
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            String id = "$" + random.nextInt(3 * capacity) + ":example.org";
+            boolean isNew = !reference.contains(id);
+            reference.add(id);
+            assertEquals(id, isNew, dedup.add(id));
+        }
+        assertEquals(reference.size(), dedup.size());
+    }
+
+    @Test
+    public void matchesAnLruSet() {
+        checkAgainstReference(false);
+    }
+
+    @Test
+    public void matchesAnLruSetWithBloomFilter() {
+        checkAgainstReference(true);
+    }
+
+    private static List<String> ids(List<_MatrixPersistentEvent> events) {
+        List<String> ids = new ArrayList<>();
+        events.forEach(ev -> ids.add(ev.getId()));
+        return ids;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.json.event.*;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class BoundEventAdapterFactoryTest {
+
+    private static final String roomId = "!room:example.org";
+    private static final String alice = "@alice:example.org";
+
+    private static String event(String type, String stateKey, String content) {
+        return "{\"content\":" + content + ",\"event_id\":\"$1:example.org\",\"origin_server_ts\":1500000000000,"
+                + "\"room_id\":\"" + roomId + "\",\"sender\":\"" + alice + "\","
+                + (stateKey == null ? "" : "\"state_key\":\"" + stateKey + "\",") + "\"type\":\"" + type + "\","
+                + "\"unsigned\":{\"age\":10,\"prev_content\":{\"membership\":\"invite\"}}}";
+    }
+
+    private static <T> T bind(String json, Class<T> c) {
+        return BoundEventAdapterFactory.get().fromJson(json, c);
+    }
+
+    @Test
+    public void membershipMatchesTree() {
+        String json = event("m.room.member", alice,
+                "{\"avatar_url\":\"mxc://example.org/a\",\"displayname\":\"Alice\",\"membership\":\"join\","
+                        + "\"is_direct\":false,\"extra\":{\"nested\":[1,2]}}");
+        MatrixJsonRoomMembershipEvent tree = new MatrixJsonRoomMembershipEvent(GsonUtil.parseObj(json));
+        BoundRoomMembershipEvent bound = bind(json, BoundRoomMembershipEvent.class);
+
+        assertEquals(tree.getId(), bound.getId());
+        assertEquals(tree.getType(), bound.getType());
+        assertEquals(tree.getRoomId(), bound.getRoomId());
+        assertEquals(tree.getTime(), bound.getTime());
+        assertEquals(tree.getSender(), bound.getSender());
+        assertEquals(tree.getMembership(), bound.getMembership());
+        assertEquals(tree.getAvatarUrl().get(), bound.getAvatarUrl().get());
+        assertEquals(tree.getDisplayName().get(), bound.getDisplayName().get());
+        assertEquals(tree.getInvitee(), bound.getInvitee());
+    }
+
+    @Test
+    public void messageMatchesTree() {
+        String json = event("m.room.message", null,
+                "{\"body\":\"Hello\",\"format\":\"org.matrix.custom.html\",\"formatted_body\":\"<b>Hello</b>\","
+                        + "\"msgtype\":\"m.text\"}");
+        MatrixJsonRoomMessageEvent tree = new MatrixJsonRoomMessageEvent(GsonUtil.parseObj(json));
+        BoundRoomMessageEvent bound = bind(json, BoundRoomMessageEvent.class);
+
+        assertEquals(tree.getBody(), bound.getBody());
+        assertEquals(tree.getBodyType(), bound.getBodyType());
+        assertEquals(tree.getFormat().get(), bound.getFormat().get());
+        assertEquals(tree.getFormattedBody().get(), bound.getFormattedBody().get());
+    }
+
+    @Test
+    public void nameAndTopic() {
+        assertEquals("Room", bind(event("m.room.name", "", "{\"name\":\"Room\"}"), BoundRoomNameEvent.class)
+                .getName().get());
+        assertEquals("About", bind(event("m.room.topic", "", "{\"topic\":\"About\"}"), BoundRoomTopicEvent.class)
+                .getTopic().get());
+        assertFalse(bind(event("m.room.topic", "", "{\"topic\":null}"), BoundRoomTopicEvent.class).getTopic()
+                .isPresent());
+    }
+
+    @Test
+    public void powerLevelsMatchTree() throws IOException {
+        InputStream is = new FileInputStream("src/test/resources/json/powerLevels.json");
+        String json = IOUtils.toString(is, StandardCharsets.UTF_8);
+        MatrixJsonRoomPowerLevelsEvent tree = new MatrixJsonRoomPowerLevelsEvent(GsonUtil.parseObj(json));
+        BoundRoomPowerLevelsEvent bound = bind(json, BoundRoomPowerLevelsEvent.class);
+
+        assertEquals(tree.getBan().get(), bound.getBan().get());
+        assertEquals(tree.getEvents(), bound.getEvents());
+        assertEquals(tree.getEventsDefault().get(), bound.getEventsDefault().get());
+        assertEquals(tree.getInvite().get(), bound.getInvite().get());
+        assertEquals(tree.getKick().get(), bound.getKick().get());
+        assertEquals(tree.getRedact().get(), bound.getRedact().get());
+        assertEquals(tree.getStateDefault().get(), bound.getStateDefault().get());
+        assertEquals(tree.getUsers(), bound.getUsers());
+        assertEquals(tree.getUsersDefault().get(), bound.getUsersDefault().get());
+    }
+
+    @Test
+    public void jsonKeepsKnownFields() {
+        String json = event("m.room.member", alice, "{\"membership\":\"leave\",\"reason\":\"Bye\"}");
+        BoundRoomMembershipEvent bound = bind(json, BoundRoomMembershipEvent.class);
+
+        JsonObject obj = bound.getJson();
+        assertEquals("leave", obj.getAsJsonObject("content").get("membership").getAsString());
+        assertEquals(alice, obj.get("state_key").getAsString());
+        assertEquals(1500000000000L, obj.get("origin_server_ts").getAsLong());
+        assertNull(obj.getAsJsonObject("content").get("reason"));
+        assertNull(obj.get("unsigned"));
+
+        BoundRoomMembershipEvent again = bind(bound.toJson(), BoundRoomMembershipEvent.class);
+        assertEquals(bound.getId(), again.getId());
+        assertEquals(bound.getMembership(), again.getMembership());
+        assertEquals(bound.getInvitee(), again.getInvitee());
+
+        obj.addProperty("bridged", true);
+        assertEquals(obj, GsonUtil.parseObj(bound.toJson()));
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.json;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.client.regular.SyncDataJson;
+import io.kamax.matrix.event._MatrixEvent;
+import io.kamax.matrix.json.event.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class MatrixJsonEventFactoryTest {
+
+    private JsonObject event(String type, boolean withTimestamp, boolean withRoomId) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("type", type);
+        obj.addProperty("event_id", "$1:example.org");
+        obj.addProperty("sender", "@john:example.org");
+        if (withTimestamp) {
+            obj.addProperty("origin_server_ts", 1500000000000L);
+        }
+        if (withRoomId) {
+            obj.addProperty("room_id", "!room:example.org");
+        }
+        obj.add("content", new JsonObject());
+        return obj;
+    }
+
+    @Test
+    public void knownTypes() {
+        assertThat(MatrixJsonEventFactory.get(event("m.room.message", true, true)),
+                instanceOf(MatrixJsonRoomMessageEvent.class));
+        assertThat(MatrixJsonEventFactory.get(event("m.room.name", true, true)),
+                instanceOf(MatrixJsonRoomNameEvent.class));
+        assertThat(MatrixJsonEventFactory.get(event("m.room.topic", true, true)),
+                instanceOf(MatrixJsonRoomTopicEvent.class));
+    }
+
+    @Test
+    public void unknownTypes() {
+        assertThat(MatrixJsonEventFactory.get(event("m.bridge", true, true)), instanceOf(MatrixJsonRoomEvent.class));
+        assertThat(MatrixJsonEventFactory.get(event("m.bridge", true, false)),
+                instanceOf(MatrixJsonPersistentEvent.class));
+        assertThat(MatrixJsonEventFactory.get(event("m.typing", false, true)),
+                instanceOf(MatrixJsonEphemeralEvent.class));
+    }
+
+    @Test
+    public void customDecoder() {
+        String type = "com.example.custom";
+        try {
+            MatrixJsonEventFactory.register(type, obj -> new MatrixJsonEphemeralEvent(obj) {
+
+                @Override
+                public String getType() {
+                    return "decoded:" + super.getType();
+                }
+
+            });
+
+            _MatrixEvent event = MatrixJsonEventFactory.get(event(type, true, true));
+            assertEquals("decoded:" + type, event.getType());
+        } finally {
+            MatrixJsonEventFactory.unregister(type);
+        }
+
+        assertThat(MatrixJsonEventFactory.get(event(type, true, true)), instanceOf(MatrixJsonRoomEvent.class));
+    }
+
+    @Test
+    public void toJsonGivesOriginalText() throws IOException {
+        // Spacing, key order and escapes which encoding the tree again would change
+        String json = "{ \"type\": \"m.room.message\", \"event_id\": \"$1:example.org\", "
+                + "\"sender\": \"@john:example.org\", \"origin_server_ts\": 1.5E12, "
+                + "\"room_id\": \"!room:example.org\", \"content\": { \"body\": \"caf\\u00e9\" } }";
+        _MatrixEvent event = MatrixJsonEventFactory.get(json);
+        assertEquals(json, event.toJson());
+
+        StringWriter out = new StringWriter();
+        event.writeJson(out);
+        assertEquals(json, out.toString());
+    }
+
+    @Test
+    public void toJsonFollowsChangesToTheTree() throws IOException {
+        String json = "{ \"type\": \"m.room.message\", \"event_id\": \"$1:example.org\", "
+                + "\"sender\": \"@john:example.org\", \"origin_server_ts\": 1, "
+                + "\"room_id\": \"!room:example.org\", \"content\": { \"body\": \"Hi\" } }";
+        _MatrixEvent event = MatrixJsonEventFactory.get(json);
+        JsonObject tree = event.getJson();
+        tree.addProperty("bridged", true);
+        assertEquals(tree, GsonUtil.parseObj(event.toJson()));
+
+        tree.addProperty("again", true);
+        StringWriter out = new StringWriter();
+        event.writeJson(out);
+        assertEquals(tree.toString(), out.toString());
+        assertEquals(tree.toString(), event.toJson());
+    }
+
+    @Test
+    public void toJsonGivesEventNotWrapper() throws IOException {
+        JsonObject obj = event("m.room.message", true, true);
+        obj.getAsJsonObject("content").addProperty("body", "<b>Hi</b>");
+        _MatrixEvent event = MatrixJsonEventFactory.get(obj);
+        assertEquals(obj, GsonUtil.parseObj(event.toJson()));
+
+        StringWriter out = new StringWriter();
+        event.writeJson(out);
+        assertEquals(obj.toString(), out.toString());
+
+        SyncDataJson data = new SyncDataJson(GsonUtil.parseObj("{\"next_batch\":\"n\",\"rooms\":{\"join\":{"
+                + "\"!room:example.org\":{\"timeline\":{\"events\":[" + obj + "]}}}}}"));
+        _MatrixEvent synced = data.getRooms().getJoined().iterator().next().getTimeline().getEvents().get(0);
+        // Streamed from the tree, then encoded once and kept
+        out = new StringWriter();
+        synced.writeJson(out);
+        assertEquals(obj.toString(), out.toString());
+        assertEquals(obj.toString(), synced.toJson());
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.json.GsonUtil;
+import io.kamax.matrix.json.event.MatrixJsonRoomPowerLevelsEvent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoomPowerLevelsTest {
+
+    private static final String admin = "@admin:example.org";
+    private static final String mod = "@mod:example.org";
+    private static final String user = "@user:example.org";
+    private static final String other = "@other:example.org";
+
+    private static JsonObject content() {
+        return GsonUtil.parseObj("{\"ban\":50,\"kick\":\"60\",\"redact\":50,\"invite\":0,\"events_default\":0," +
+                "\"state_default\":50,\"users_default\":0,\"events\":{\"m.room.name\":50," +
+                "\"m.room.power_levels\":100,\"m.room.redaction\":10,\"m.room.message\":0}," +
+                "\"users\":{\"" + admin + "\":100,\"" + mod + "\":50.0,\"" + user + "\":10}}");
+    }
+
+    @Test
+    public void defaultsWhenEmpty() {
+        RoomPowerLevels levels = RoomPowerLevels.from(new JsonObject());
+        assertEquals(0, levels.getUserLevel(user));
+        assertEquals(0, levels.getEventLevel("m.room.message", false));
+        assertEquals(50, levels.getEventLevel("m.room.name", true));
+        assertTrue(levels.canSend(user, "m.room.message", false));
+        assertFalse(levels.canSend(user, "m.room.topic", true));
+        assertFalse(levels.canBan(user, other));
+        assertFalse(levels.canKick(user, other));
+        assertFalse(levels.canInvite(user));
+        assertTrue(levels.canRedact(user, user));
+        assertFalse(levels.canRedact(user, other));
+    }
+
+    @Test
+    public void checks() {
+        RoomPowerLevels levels = RoomPowerLevels.from(content());
+        assertEquals(100, levels.getUserLevel(admin));
+        assertEquals(50, levels.getUserLevel(mod));
+        assertEquals(0, levels.getUserLevel(other));
+        assertEquals(60, levels.getKick());
+
+        assertTrue(levels.canSend(mod, "m.room.name", true));
+        assertFalse(levels.canSend(mod, "m.room.power_levels", true));
+        assertTrue(levels.canSend(admin, "m.room.power_levels", true));
+        assertTrue(levels.canSend(other, "m.room.message", false));
+        assertFalse(levels.canSend(other, "m.room.topic", true));
+
+        assertTrue(levels.canBan(mod, user));
+        assertFalse(levels.canBan(mod, admin));
+        assertFalse(levels.canBan(mod, mod));
+        assertFalse(levels.canKick(mod, user));
+        assertTrue(levels.canKick(admin, mod));
+        assertTrue(levels.canInvite(other));
+
+        assertTrue(levels.canRedact(user, user));
+        assertFalse(levels.canRedact(other, other));
+        assertFalse(levels.canRedact(user, other));
+        assertTrue(levels.canRedact(mod, other));
+    }
+
+    @Test
+    public void fromEvent() {
+        JsonObject ev = new JsonObject();
+        ev.addProperty("type", "m.room.power_levels");
+        ev.addProperty("event_id", "$a:example.org");
+        ev.addProperty("room_id", "!a:example.org");
+        ev.addProperty("sender", admin);
+        ev.addProperty("origin_server_ts", 1);
+        ev.addProperty("state_key", "");
+        ev.add("content", content());
+
+        RoomPowerLevels levels = RoomPowerLevels.from(new MatrixJsonRoomPowerLevelsEvent(ev));
+        assertEquals(100, levels.getUserLevel(admin));
+        assertEquals(100, levels.getEventLevel("m.room.power_levels", true));
+        assertEquals(60, levels.getKick());
+    }
+
+    @Test
+    public void update() {
+        RoomPowerLevels levels = RoomPowerLevels.from(content());
+
+        JsonObject next = content();
+        next.getAsJsonObject("users").remove(user);
+        next.getAsJsonObject("users").addProperty(mod, 75);
+        next.getAsJsonObject("users").addProperty(other, 20);
+        next.addProperty("ban", 80);
+        RoomPowerLevels updated = levels.update(next);
+
+        assertEquals(0, updated.getUserLevel(user));
+        assertEquals(75, updated.getUserLevel(mod));
+        assertEquals(20, updated.getUserLevel(other));
+        assertEquals(100, updated.getUserLevel(admin));
+        assertFalse(updated.canBan(mod, other));
+
+        // The previous levels stay as they were
+        assertEquals(10, levels.getUserLevel(user));
+        assertEquals(50, levels.getUserLevel(mod));
+        assertEquals(0, levels.getUserLevel(other));
+
+        // Dropping the users altogether falls back to the default level
+        next.remove("users");
+        next.addProperty("users_default", 5);
+        assertEquals(5, updated.update(next).getUserLevel(admin));
+    }
+
+    @Test
+    public void tableMatchesHashMap() {
+        Random r = new Random(42);
+        StringIntMap table = new StringIntMap(0);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            String key = "@u" + r.nextInt(500) + ":example.org";
+            if (r.nextInt(3) == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                int value = r.nextInt(101);
+                table.put(key, value);
+                expected.put(key, value);
+            }
+
+            if (i % 1000 == 0) {
+                assertEquals(expected.size(), table.size());
+                for (int j = 0; j < 500; j++) {
+                    String k = "@u" + j + ":example.org";
+                    assertEquals((int) expected.getOrDefault(k, -1), table.get(k, -1));
+                }
+            }
+        }
+    }
+
+}
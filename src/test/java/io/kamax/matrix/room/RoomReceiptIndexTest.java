@@ -0,0 +1,162 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import io.kamax.matrix.client._SyncData;
+import io.kamax.matrix.client.regular.SyncDataJson;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RoomReceiptIndexTest {
+
+    private static final String alice = "@alice:example.org";
+    private static final String bob = "@bob:example.org";
+    private static final String carol = "@carol:example.org";
+
+    private static RoomReceiptIndex withEvents(int maxEvents, int count) {
+        RoomReceiptIndex index = new RoomReceiptIndex(maxEvents);
+        for (int i = 0; i < count; i++) {
+            index.addEvent("$" + i);
+        }
+        return index;
+    }
+
+    @Test
+    public void receipts() {
+        RoomReceiptIndex index = withEvents(100, 10);
+        index.setReceipt(alice, "$9", 1000);
+        index.setReceipt(bob, "$4", 2000);
+
+        assertEquals(2, index.getUserCount());
+        assertEquals("$9", index.getReadEventId(alice).get());
+        assertEquals(2000, index.getReadTimestamp(bob));
+        assertEquals(0, index.getReadTimestamp(carol));
+        assertFalse(index.getReadEventId(carol).isPresent());
+
+        assertEquals(0, index.getUnreadCount(alice));
+        assertEquals(5, index.getUnreadCount(bob));
+        assertEquals(10, index.getUnreadCount(carol));
+
+        assertEquals(2, index.getReadCount("$4"));
+        assertEquals(1, index.getReadCount("$5"));
+        assertEquals(-1, index.getReadCount("$unknown"));
+
+        // Receipts do not go backwards
+        index.setReceipt(alice, "$2", 3000);
+        assertEquals("$9", index.getReadEventId(alice).get());
+        index.setReceipt(bob, "$6", 3000);
+        assertEquals(3, index.getUnreadCount(bob));
+    }
+
+    @Test
+    public void receiptBeforeEvent() {
+        RoomReceiptIndex index = withEvents(100, 3);
+        index.setReceipt(alice, "$3", 1000);
+        assertEquals(3, index.getUnreadCount(alice));
+
+        index.addEvent("$3");
+        index.addEvent("$4");
+        assertEquals(1, index.getUnreadCount(alice));
+        assertEquals(1, index.getReadCount("$3"));
+    }
+
+    @Test
+    public void pendingReceipts() {
+        RoomReceiptIndex index = withEvents(100, 3);
+        index.setReceipt(alice, "$5", 1000);
+        index.setReceipt(bob, "$5", 1000);
+        index.setReceipt(carol, "$5", 1000);
+        // Moves from the middle of the users waiting for $5
+        index.setReceipt(bob, "$4", 2000);
+
+        index.addEvent("$3");
+        index.addEvent("$4");
+        assertEquals(0, index.getUnreadCount(bob));
+        assertEquals(5, index.getUnreadCount(alice));
+        index.addEvent("$5");
+        index.addEvent("$6");
+        assertEquals(1, index.getUnreadCount(alice));
+        assertEquals(1, index.getUnreadCount(carol));
+        assertEquals(2, index.getUnreadCount(bob));
+        assertEquals(2, index.getReadCount("$5"));
+    }
+
+    @Test
+    public void window() {
+        RoomReceiptIndex index = withEvents(5, 3);
+        index.setReceipt(alice, "$1", 1000);
+        for (int i = 3; i < 10; i++) {
+            index.addEvent("$" + i);
+        }
+
+        assertEquals(-1, index.getReadCount("$1"));
+        assertEquals(0, index.getReadCount("$5"));
+        assertEquals(5, index.getUnreadCount(alice));
+        assertEquals(5, index.getUnreadCount(bob));
+
+        // Receipts for forgotten events can't be placed
+        index.setReceipt(bob, "$0", 1000);
+        assertEquals(5, index.getUnreadCount(bob));
+        index.setReceipt(bob, "$8", 1000);
+        assertEquals(1, index.getUnreadCount(bob));
+    }
+
+    @Test
+    public void manyUsers() {
+        RoomReceiptIndex index = withEvents(1000, 1000);
+        for (int i = 0; i < 5000; i++) {
+            index.setReceipt("@user" + i + ":example.org", "$" + (i % 1000), i);
+        }
+
+        assertEquals(5000, index.getUserCount());
+        assertEquals(999, index.getUnreadCount("@user0:example.org"));
+        assertEquals(0, index.getUnreadCount("@user4999:example.org"));
+        assertEquals(2500, index.getReadCount("$500"));
+    }
+
+    @Test
+    public void fromSync() {
+        _SyncData data = new SyncDataJson(GsonUtil.parseObj("{\"next_batch\":\"s1\",\"rooms\":{\"join\":{" +
+                "\"!a:example.org\":{\"timeline\":{\"events\":[" +
+                "{\"event_id\":\"$1\",\"type\":\"m.room.message\",\"sender\":\"" + bob + "\"," +
+                "\"origin_server_ts\":1,\"content\":{}}," +
+                "{\"event_id\":\"$2\",\"type\":\"m.room.message\",\"sender\":\"" + bob + "\"," +
+                "\"origin_server_ts\":2,\"content\":{}}]}," +
+                "\"ephemeral\":{\"events\":[{\"type\":\"m.typing\",\"content\":{\"user_ids\":[]}}," +
+                "{\"type\":\"m.receipt\",\"content\":{" +
+                "\"$1\":{\"m.read\":{\"" + alice + "\":{\"ts\":1234}}}," +
+                "\"$2\":{\"m.read\":{\"" + bob + "\":{}}}}}]}}}}}"));
+
+        RoomReceiptIndex index = new RoomReceiptIndex();
+        index.update(data.getRooms().getJoined().iterator().next());
+
+        assertEquals(2, index.getUserCount());
+        assertEquals(1234, index.getReadTimestamp(alice));
+        assertEquals(1, index.getUnreadCount(alice));
+        assertEquals(0, index.getUnreadCount(bob));
+        assertEquals(2, index.getReadCount("$1"));
+    }
+
+}
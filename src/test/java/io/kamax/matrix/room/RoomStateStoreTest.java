@@ -0,0 +1,138 @@
+/*
+ * matrix-java-sdk - Matrix Client SDK for Java
+ * Copyright (C) 2018 Kamax Sarl
+ *
+ * https://www.kamax.io/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.kamax.matrix.room;
+
+import com.google.gson.JsonObject;
+
+import io.kamax.matrix.client.regular.SyncDataJson;
+import io.kamax.matrix.json.GsonUtil;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoomStateStoreTest {
+
+    private static final String member = "m.room.member";
+    private static final String alice = "@alice:example.org";
+    private static final String bob = "@bob:example.org";
+    private static final String carol = "@carol:example.org";
+
+    private static JsonObject membership(String membership) {
+        return GsonUtil.makeObj("membership", membership);
+    }
+
+    @Test
+    public void putAndGet() {
+        RoomStateStore store = new RoomStateStore();
+        store.put(member, alice, membership("join"));
+        store.put("m.room.name", "", GsonUtil.makeObj("name", "Café"));
+
+        assertEquals(2, store.size());
+        assertEquals("join", store.getContent(member, alice).get().get("membership").getAsString());
+        assertEquals("{\"name\":\"Café\"}", store.getRawContent("m.room.name", "").get());
+        assertFalse(store.contains(member, bob));
+        assertFalse(store.getContent("m.room.never_seen", "").isPresent());
+        assertEquals(new HashSet<>(Arrays.asList(member, "m.room.name")), new HashSet<>(store.getTypes()));
+    }
+
+    @Test
+    public void putReplaces() {
+        RoomStateStore store = new RoomStateStore();
+        store.put(member, alice, membership("join"));
+        store.put(member, alice, membership("leave"));
+
+        assertEquals(1, store.size());
+        assertEquals("leave", store.getContent(member, alice).get().get("membership").getAsString());
+    }
+
+    @Test
+    public void removeKeepsOtherEntries() {
+        RoomStateStore store = new RoomStateStore();
+        store.put(member, alice, membership("join"));
+        store.put(member, bob, membership("invite"));
+        store.put(member, carol, membership("ban"));
+
+        assertTrue(store.remove(member, alice));
+        assertFalse(store.remove(member, alice));
+        assertEquals(2, store.size());
+        assertFalse(store.contains(member, alice));
+        assertEquals("invite", store.getContent(member, bob).get().get("membership").getAsString());
+        assertEquals("ban", store.getContent(member, carol).get().get("membership").getAsString());
+        assertEquals(new HashSet<>(Arrays.asList(bob, carol)), new HashSet<>(store.getStateKeys(member)));
+
+        store.remove(member, bob);
+        store.remove(member, carol);
+        assertEquals(Collections.emptyList(), store.getStateKeys(member));
+        assertEquals(Collections.emptyList(), store.getTypes());
+    }
+
+    @Test
+    public void customTypesStayInTheirStore() {
+        RoomStateStore store = new RoomStateStore();
+        for (int i = 0; i < 100; i++) {
+            store.put("org.example.type" + i, "", GsonUtil.makeObj("index", i));
+        }
+        store.put(member, alice, membership("join"));
+
+        assertEquals(101, store.size());
+        assertEquals(42, store.getContent("org.example.type42", "").get().get("index").getAsInt());
+        assertTrue(store.getTypes().contains("org.example.type99"));
+        assertTrue(store.getTypes().contains(member));
+
+        RoomStateStore other = new RoomStateStore();
+        other.put("org.example.other", "", new JsonObject());
+        other.put(member, bob, membership("join"));
+        assertFalse(other.contains("org.example.type42", ""));
+        assertEquals(new HashSet<>(Arrays.asList("org.example.other", member)), new HashSet<>(other.getTypes()));
+    }
+
+    @Test
+    public void updateFromSync() {
+        String roomId = "!room:example.org";
+        SyncDataJson data = new SyncDataJson(GsonUtil.parseObj("{\"next_batch\":\"n\",\"rooms\":{\"join\":{\""
+                + roomId + "\":{\"state\":{\"events\":["
+                + "{\"type\":\"m.room.member\",\"state_key\":\"" + alice + "\",\"sender\":\"" + alice + "\","
+                + "\"event_id\":\"$1\",\"origin_server_ts\":1,\"content\":{\"membership\":\"join\"}},"
+                + "{\"type\":\"m.room.name\",\"state_key\":\"\",\"sender\":\"" + alice + "\","
+                + "\"event_id\":\"$2\",\"origin_server_ts\":2,\"content\":{\"name\":\"Old\"}}"
+                + "]},\"timeline\":{\"events\":["
+                + "{\"type\":\"m.room.message\",\"sender\":\"" + alice + "\","
+                + "\"event_id\":\"$3\",\"origin_server_ts\":3,\"content\":{\"body\":\"hi\"}},"
+                + "{\"type\":\"m.room.name\",\"state_key\":\"\",\"sender\":\"" + alice + "\","
+                + "\"event_id\":\"$4\",\"origin_server_ts\":4,\"content\":{\"name\":\"New\"}}"
+                + "]}}}}}"));
+
+        RoomStateStore store = new RoomStateStore();
+        data.getRooms().getJoined().forEach(store::update);
+
+        assertEquals(2, store.size());
+        assertEquals("{\"membership\":\"join\"}", store.getRawContent(member, alice).get());
+        assertEquals("{\"name\":\"New\"}", store.getRawContent("m.room.name", "").get());
+    }
+
+}